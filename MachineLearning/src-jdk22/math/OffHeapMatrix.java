@@ -0,0 +1,459 @@
+package math;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.DoubleConsumer;
+
+import math.exceptions.DifferentLengthsException;
+
+/**
+ * Matrix stored off the heap, as doubles in a MemorySegment (Foreign Function & Memory API)
+ *
+ * Meant for very large weight matrices: the elements are neither Number objects nor a double[] the garbage
+ * collector has to scan or move, so multi-GB matrices don't cause full GC pauses. Laid out like FlatMatrix:
+ * major vector i, element j is at index {@code i * minors + j} of the segment, and the orientation decides
+ * whether the major vectors are rows (ROW_COL, the default, so (r, c) is at {@code r * cols + c}) or cols.
+ * transpose() only flips the orientation; reorient() moves the data inside the segment.
+ *
+ * The segment either comes from an Arena this matrix owns (free it with close()), or is handed in from outside,
+ * e.g. a region of a memory-mapped model file from map(), in which case whoever owns that Arena frees it.
+ *
+ * The Foreign Function & Memory API is final from JDK 22, so this class lives in its own source root,
+ * src-jdk22, compiled with JDK 22 or newer on top of src. Nothing in src depends on it, so src still builds
+ * without it on older JDKs. Run its test with this class's main.
+ *
+ * @author Benito
+ *
+ */
+public class OffHeapMatrix extends Matrix<Double> implements AutoCloseable {
+	private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+
+	private final Arena arena; // null if the segment belongs to someone else
+	private final MemorySegment segment;
+	private int majors, minors; // swapped by reorient
+
+	/**
+	 * Allocates a {@code rows} by {@code cols} matrix in a new shared Arena. All values start at 0.
+	 *
+	 * @param rows
+	 * @param cols
+	 */
+	public OffHeapMatrix(int rows, int cols) {
+		this.arena = Arena.ofShared();
+		this.segment = arena.allocate(DOUBLE.byteSize() * rows * cols, DOUBLE.byteAlignment());
+		this.majors = rows;
+		this.minors = cols;
+		orientation = ROW_COL;
+	}
+
+	/**
+	 * Views an existing segment as a {@code rows} by {@code cols} matrix. Doesn't own the segment.
+	 *
+	 * @param segment
+	 * @param rows
+	 * @param cols
+	 */
+	public OffHeapMatrix(MemorySegment segment, int rows, int cols) {
+		if (segment.byteSize() < DOUBLE.byteSize() * rows * cols)
+			throw new DifferentLengthsException("Segment too small for a " + rows + " by " + cols + " matrix");
+		this.arena = null;
+		this.segment = segment;
+		this.majors = rows;
+		this.minors = cols;
+		orientation = ROW_COL;
+	}
+
+	/**
+	 * Memory-maps a {@code rows} by {@code cols} matrix from {@code file}, starting {@code offset} bytes in.
+	 * The mapping lives as long as {@code arena}, so a model loader can map a whole file once and share it.
+	 *
+	 * @param file
+	 * @param offset byte offset of the matrix in the file, a multiple of 8
+	 * @param rows
+	 * @param cols
+	 * @param arena
+	 * @return
+	 * @throws IOException
+	 */
+	public static OffHeapMatrix map(Path file, long offset, int rows, int cols, Arena arena) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MemorySegment segment = channel.map(MapMode.READ_WRITE, offset, DOUBLE.byteSize() * rows * cols, arena);
+			return new OffHeapMatrix(segment, rows, cols);
+		}
+	}
+
+	public MemorySegment getSegment() {
+		return segment;
+	}
+
+	/**
+	 * Frees the memory, if this matrix owns it. The matrix can't be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (arena != null)
+			arena.close();
+	}
+
+	public int size() {
+		return majors * minors;
+	}
+
+	/**
+	 * @return index of (r, c) in the segment
+	 */
+	private long index(int r, int c) {
+		return orientation == ROW_COL ? (long) r * minors + c : (long) c * minors + r;
+	}
+
+	@Override
+	public void set(int r, int c, Double val) {
+		segment.setAtIndex(DOUBLE, index(r, c), val);
+	}
+
+	public void set(int r, int c, double val) {
+		segment.setAtIndex(DOUBLE, index(r, c), val);
+	}
+
+	@Override
+	public Double get(int r, int c) {
+		return segment.getAtIndex(DOUBLE, index(r, c));
+	}
+
+	public double getDouble(int r, int c) {
+		return segment.getAtIndex(DOUBLE, index(r, c));
+	}
+
+	@Override
+	public int numRows() {
+		return orientation == ROW_COL ? majors : minors;
+	}
+
+	@Override
+	public int numCols() {
+		return orientation == ROW_COL ? minors : majors;
+	}
+
+	@Override
+	public int maxMajorLen() {
+		return minors;
+	}
+
+	@Override
+	public int maxMinorLen() {
+		return majors;
+	}
+
+	@Override
+	public void addTo(int r, int c, Number x) {
+		long i = index(r, c);
+		segment.setAtIndex(DOUBLE, i, segment.getAtIndex(DOUBLE, i) + x.doubleValue());
+	}
+
+	/**
+	 * Dot product of each major vector with {@code x}
+	 */
+	private double[] majorDots(double[] x) {
+		double[] ans = new double[majors];
+		for (int i = 0; i < majors; i++) {
+			long major = (long) i * minors;
+			double sum = 0;
+			for (int j = 0; j < minors; j++) {
+				sum += segment.getAtIndex(DOUBLE, major + j) * x[j];
+			}
+			ans[i] = sum;
+		}
+		return ans;
+	}
+
+	/**
+	 * Sum of the major vectors, each scaled by its element of {@code x}
+	 */
+	private double[] majorSums(double[] x) {
+		double[] sums = new double[minors];
+		for (int i = 0; i < majors; i++) {
+			long major = (long) i * minors;
+			double xi = x[i];
+			for (int j = 0; j < minors; j++) {
+				sums[j] += segment.getAtIndex(DOUBLE, major + j) * xi;
+			}
+		}
+		return sums;
+	}
+
+	private static double[] unbox(Number[] vector) {
+		double[] x = new double[vector.length];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = vector[i].doubleValue();
+		}
+		return x;
+	}
+
+	private static Double[] box(double[] x) {
+		Double[] ans = new Double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			ans[i] = x[i];
+		}
+		return ans;
+	}
+
+	@Override
+	protected double[] dots(Number[] vector) {
+		if (vector.length != numCols())
+			throw new DifferentLengthsException("Vector lengths differ");
+		double[] x = unbox(vector);
+		return orientation == ROW_COL ? majorDots(x) : majorSums(x);
+	}
+
+	@Override
+	public Double[] mult(VectorView vector) {
+		if (vector.length() != numCols())
+			throw new DifferentLengthsException("Vector lengths differ");
+		double[] x = new double[vector.length()];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = vector.getDouble(i);
+		}
+		return box(orientation == ROW_COL ? majorDots(x) : majorSums(x));
+	}
+
+	@Override
+	public Double[] transposeMult(Number[] vector) {
+		if (vector.length != numRows())
+			throw new DifferentLengthsException("Vector lengths differ");
+		double[] x = unbox(vector);
+		return box(orientation == ROW_COL ? majorSums(x) : majorDots(x));
+	}
+
+	@Override
+	public void setRow(int r, Double[] row) {
+		if (row.length != numCols())
+			throw new DifferentLengthsException("Row length differs from number of cols");
+		for (int c = 0; c < row.length; c++) {
+			set(r, c, row[c].doubleValue());
+		}
+	}
+
+	@Override
+	public void setCol(int c, Double[] col) {
+		if (col.length != numRows())
+			throw new DifferentLengthsException("Col length differs from number of rows");
+		for (int r = 0; r < col.length; r++) {
+			set(r, c, col[r].doubleValue());
+		}
+	}
+
+	@Override
+	public void setMajorVector(int major, Double[] majorVector) {
+		if (majorVector.length != minors)
+			throw new DifferentLengthsException("Major vector length differs from the matrix's");
+		VectorView<Double> view = majorView(major);
+		for (int j = 0; j < minors; j++) {
+			view.set(j, majorVector[j]);
+		}
+	}
+
+	@Override
+	public void setMinorVector(int minor, Double[] minorVector) {
+		if (minorVector.length != majors)
+			throw new DifferentLengthsException("Minor vector length differs from the matrix's");
+		VectorView<Double> view = minorView(minor);
+		for (int i = 0; i < majors; i++) {
+			view.set(i, minorVector[i]);
+		}
+	}
+
+	@Override
+	public Double[] getRow(int r) {
+		Double[] row = new Double[numCols()];
+		for (int c = 0; c < row.length; c++) {
+			row[c] = getDouble(r, c);
+		}
+		return row;
+	}
+
+	@Override
+	public Double[] getCol(int c) {
+		Double[] col = new Double[numRows()];
+		for (int r = 0; r < col.length; r++) {
+			col[r] = getDouble(r, c);
+		}
+		return col;
+	}
+
+	@Override
+	public Double[] getMajorVector(int major) {
+		return majorView(major).toArray();
+	}
+
+	@Override
+	public Double[] getMinorVector(int minor) {
+		return minorView(minor).toArray();
+	}
+
+	/**
+	 * View of major vector {@code major}: consecutive doubles in the segment
+	 */
+	@Override
+	public VectorView<Double> majorView(int major) {
+		return new SegmentView((long) major * minors, 1, minors);
+	}
+
+	/**
+	 * View of minor vector {@code minor}: every {@code minors}-th double in the segment
+	 */
+	@Override
+	public VectorView<Double> minorView(int minor) {
+		return new SegmentView(minor, minors, majors);
+	}
+
+	/**
+	 * Moves the data to the other orientation, keeping the rows and cols. Square matrices are transposed in
+	 * place, others through a temporary off-heap copy.
+	 */
+	@Override
+	public void reorient() {
+		if (majors == minors) {
+			for (long i = 0; i < majors; i++) {
+				for (long j = i + 1; j < minors; j++) {
+					long a = i * minors + j, b = j * minors + i;
+					double t = segment.getAtIndex(DOUBLE, a);
+					segment.setAtIndex(DOUBLE, a, segment.getAtIndex(DOUBLE, b));
+					segment.setAtIndex(DOUBLE, b, t);
+				}
+			}
+		} else {
+			long bytes = DOUBLE.byteSize() * size();
+			try (Arena scratch = Arena.ofConfined()) {
+				MemorySegment copy = scratch.allocate(bytes, DOUBLE.byteAlignment());
+				copy.copyFrom(segment.asSlice(0, bytes));
+				for (long i = 0; i < majors; i++) {
+					for (long j = 0; j < minors; j++) {
+						segment.setAtIndex(DOUBLE, j * majors + i, copy.getAtIndex(DOUBLE, i * minors + j));
+					}
+				}
+			}
+		}
+		int majors = this.majors;
+		this.majors = minors;
+		this.minors = majors;
+		orientation = orientation.flip();
+	}
+
+	/**
+	 * Strided window onto the segment: element i is at index {@code start + i * stride}
+	 */
+	private class SegmentView extends VectorView<Double> {
+		private final long start, stride;
+
+		SegmentView(long start, long stride, int length) {
+			super(null, 0, false, 0, 0, length);
+			this.start = start;
+			this.stride = stride;
+		}
+
+		@Override
+		public Double get(int i) {
+			return segment.getAtIndex(DOUBLE, start + i * stride);
+		}
+
+		@Override
+		public double getDouble(int i) {
+			return segment.getAtIndex(DOUBLE, start + i * stride);
+		}
+
+		@Override
+		public void set(int i, Double val) {
+			segment.setAtIndex(DOUBLE, start + i * stride, val);
+		}
+
+		@Override
+		public VectorView<Double> slice(int from, int step, int len) {
+			return new SegmentView(start + from * stride, stride * step, len);
+		}
+	}
+
+	@Override
+	public Spliterator.OfDouble doubleSpliterator() {
+		return new Spliterators.AbstractDoubleSpliterator(size(), Spliterator.ORDERED | Spliterator.SIZED) {
+			private long i = 0;
+
+			@Override
+			public boolean tryAdvance(DoubleConsumer action) {
+				if (i >= size())
+					return false;
+				action.accept(segment.getAtIndex(DOUBLE, i++));
+				return true;
+			}
+		};
+	}
+
+	@Override
+	public Iterator<Double> iterator() {
+		return new Iterator<Double>() {
+			private long i = 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < size();
+			}
+
+			@Override
+			public Double next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return segment.getAtIndex(DOUBLE, i++);
+			}
+		};
+	}
+
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+		for (int r = 0; r < numRows(); r++) {
+			for (int c = 0; c < numCols(); c++) {
+				ret.append(getDouble(r, c));
+				ret.append("  ");
+			}
+			ret.append("\n");
+		}
+		return ret.toString();
+	}
+
+	public static void main(String[] args) {
+		test();
+	}
+
+	public static void test() {
+		System.out.println("Testing OffHeapMatrix");
+		System.out.println("---------------------");
+		try (OffHeapMatrix M = new OffHeapMatrix(2, 3)) {
+			M.setRow(0, new Double[] { 1., 2., 3. });
+			M.setRow(1, new Double[] { 4., 5., 6. });
+			System.out.println(M);
+			System.out.println("Multiplying by {1, 1, 1}");
+			Matrix raw = M; // mult builds a Number[], so don't let the compiler cast it to Double[]
+			Number[] ans = raw.mult(new Double[] { 1., 1., 1. });
+			System.out.println(ans[0] + "  " + ans[1]);
+			System.out.println("Col 1 through a view: " + M.getColView(1));
+			M.transpose();
+			System.out.println("Transposed, " + M.numRows() + " by " + M.numCols() + ":\n" + M);
+			M.transpose();
+			System.out.println("Reorienting to COL_ROW, should print the same");
+			M.reorient();
+			System.out.println(M.getOrientation() + "\n" + M);
+			Number[] reoriented = raw.mult(new Double[] { 1., 1., 1. });
+			if (ans[0].doubleValue() != reoriented[0].doubleValue()
+					|| ans[1].doubleValue() != reoriented[1].doubleValue())
+				throw new AssertionError("Reorienting changed the matrix");
+		}
+	}
+}
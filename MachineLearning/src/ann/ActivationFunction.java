@@ -1,11 +1,34 @@
-package ann;
-
-/**
- * Activation function for ANN
- * 
- * @author Benito
- *
- */
-public interface ActivationFunction {
-	public Number func(Number z);
-}
+package ann;
+
+/**
+ * Activation function for ANN
+ * 
+ * @author Benito
+ *
+ */
+public interface ActivationFunction {
+	public Number func(Number z);
+
+	/**
+	 * Derivative at {@code z}, for gradient-based training. Defaults to a central difference, so any function
+	 * works; override it when there is a closed form.
+	 * 
+	 * @param z
+	 * @return
+	 */
+	public default double derivative(double z) {
+		double h = 1e-6;
+		return (func(z + h).doubleValue() - func(z - h).doubleValue()) / (2 * h);
+	}
+
+	/**
+	 * Java source of a double expression computing this function of the double expression {@code z}, so
+	 * CompiledANN can inline it. Null by default, and then compiled code calls func instead.
+	 * 
+	 * @param z
+	 * @return
+	 */
+	public default String javaSource(String z) {
+		return null;
+	}
+}
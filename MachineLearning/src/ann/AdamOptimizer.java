@@ -0,0 +1,74 @@
+package ann;
+
+/**
+ * Adam: momentum on the gradient plus RMSProp-style scaling, both bias corrected
+ * 
+ * m = beta1 * m + (1 - beta1) * gradient
+ * v = beta2 * v + (1 - beta2) * gradient^2
+ * params -= learningRate * (m / (1 - beta1^t)) / (sqrt(v / (1 - beta2^t)) + epsilon)
+ * 
+ * t counts calls to update, so a training algorithm that updates the weights and the biases in separate calls
+ * advances it twice per step. That only changes how fast the bias correction fades.
+ * 
+ * @author Benito
+ *
+ */
+public class AdamOptimizer implements Optimizer {
+	private final double learningRate;
+	private final double beta1, beta2;
+	private final double epsilon;
+	private double[] m = new double[0];
+	private double[] v = new double[0];
+	private double beta1Power = 1, beta2Power = 1; // beta^t
+
+	public AdamOptimizer(double learningRate) {
+		this(learningRate, 0.9, 0.999, 1e-8);
+	}
+
+	public AdamOptimizer(double learningRate, double beta1, double beta2, double epsilon) {
+		this.learningRate = learningRate;
+		this.beta1 = beta1;
+		this.beta2 = beta2;
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public Optimizer copy() {
+		AdamOptimizer copy = new AdamOptimizer(learningRate, beta1, beta2, epsilon);
+		copy.setState(getState());
+		return copy;
+	}
+
+	@Override
+	public double[][] getState() {
+		return new double[][] { m.clone(), v.clone(), { beta1Power, beta2Power } };
+	}
+
+	@Override
+	public void setState(double[][] state) {
+		m = state[0].clone();
+		v = state[1].clone();
+		beta1Power = state[2][0];
+		beta2Power = state[2][1];
+	}
+
+	@Override
+	public void update(double[] params, double[] gradient, double[] target, int from, int to) {
+		if (m.length != params.length) {
+			m = new double[params.length];
+			v = new double[params.length];
+		}
+		beta1Power *= beta1;
+		beta2Power *= beta2;
+		double stepSize = learningRate / (1 - beta1Power); // folds the first moment's bias correction in
+		double vCorrection = 1 / (1 - beta2Power);
+		for (int i = from; i < to; i++) {
+			double g = gradient[i];
+			double mi = beta1 * m[i] + (1 - beta1) * g;
+			double vi = beta2 * v[i] + (1 - beta2) * g * g;
+			m[i] = mi;
+			v[i] = vi;
+			target[i] = params[i] - stepSize * mi / (Math.sqrt(vi * vCorrection) + epsilon);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package ann;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the bytes a MatrixANN allocates on the heap per call of its main operations
+ *
+ * Uses the JVM's per-thread allocation counter (com.sun.management.ThreadMXBean): each counted call reads the
+ * calling thread's allocated bytes before and after, so other threads' allocations never show up. Calls nest,
+ * e.g. a training step's bytes include those of the processLayers it makes, which are also counted on their own.
+ *
+ * Opt-in: build the ANN with countAllocations(). Without it the ANN only pays a null check per call.
+ *
+ * @author Benito
+ *
+ */
+public class AllocationCounter {
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	public enum Operation {
+		TRAIN_ONE, TRAIN_BATCH, PROCESS_LAYERS, PREDICT
+	}
+
+	private final LongAdder[] calls = new LongAdder[Operation.values().length];
+	private final LongAdder[] bytes = new LongAdder[Operation.values().length];
+	private final LongAccumulator[] maxBytes = new LongAccumulator[Operation.values().length];
+
+	/**
+	 * @throws UnsupportedOperationException if the JVM can't count allocations per thread
+	 */
+	public AllocationCounter() {
+		if (!THREADS.isThreadAllocatedMemorySupported())
+			throw new UnsupportedOperationException("This JVM doesn't count allocated bytes per thread");
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+		for (int op = 0; op < calls.length; op++) {
+			calls[op] = new LongAdder();
+			bytes[op] = new LongAdder();
+			maxBytes[op] = new LongAccumulator(Math::max, 0);
+		}
+	}
+
+	/**
+	 * @return bytes the current thread has allocated so far, to hand to stop()
+	 */
+	public long start() {
+		return THREADS.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * Counts one call of {@code op} that started at {@code start}
+	 *
+	 * @param op
+	 * @param start what start() returned on this thread when the call began
+	 */
+	public void stop(Operation op, long start) {
+		long allocated = THREADS.getCurrentThreadAllocatedBytes() - start;
+		calls[op.ordinal()].increment();
+		bytes[op.ordinal()].add(allocated);
+		maxBytes[op.ordinal()].accumulate(allocated);
+	}
+
+	public long getCalls(Operation op) {
+		return calls[op.ordinal()].sum();
+	}
+
+	/**
+	 * @return bytes allocated by every call of {@code op} so far
+	 */
+	public long getBytes(Operation op) {
+		return bytes[op.ordinal()].sum();
+	}
+
+	/**
+	 * @return most bytes allocated by one call of {@code op}
+	 */
+	public long getMaxBytes(Operation op) {
+		return maxBytes[op.ordinal()].get();
+	}
+
+	/**
+	 * @return mean bytes allocated per call of {@code op}, 0 if there were none
+	 */
+	public double bytesPerCall(Operation op) {
+		long n = getCalls(op);
+		return n == 0 ? 0 : (double) getBytes(op) / n;
+	}
+
+	/**
+	 * Forgets every call so far, e.g. after warming up
+	 */
+	public void reset() {
+		for (int op = 0; op < calls.length; op++) {
+			calls[op].reset();
+			bytes[op].reset();
+			maxBytes[op].reset();
+		}
+	}
+
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+		for (Operation op : Operation.values()) {
+			if (getCalls(op) > 0)
+				ret.append(String.format("%-14s %10d calls %12.1f bytes/call %10d max%n", op, getCalls(op),
+						bytesPerCall(op), getMaxBytes(op)));
+		}
+		return ret.toString();
+	}
+}
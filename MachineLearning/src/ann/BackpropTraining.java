@@ -0,0 +1,333 @@
+package ann;
+
+import java.util.Arrays;
+
+import math.ArrayConversionUtils;
+import math.LogicalAND;
+
+/**
+ * Gradient descent with exact gradients from backpropagation, with optional activation checkpointing
+ * 
+ * Works on whole batches: the forward pass pushes every sample through each layer, and the backward pass
+ * walks the layers in reverse, needing each layer's values (and pre-activation values) for every sample.
+ * Keeping all of them costs batch size * total nodes, which dominates memory for deep networks and big
+ * batches.
+ * 
+ * With {@code checkpointEvery} = k > 1, the forward pass only keeps layers 0, k, 2k, ... (and the output
+ * layer). The backward pass then handles one segment between checkpoints at a time, recomputing that segment's
+ * layers from the checkpoint at its start and dropping them once done. That is about one extra forward pass
+ * of compute in exchange for keeping roughly L/k + k layers instead of L. k = 1 keeps everything and recomputes
+ * nothing; k around sqrt(L) keeps the fewest.
+ * 
+ * The activation function needs a derivative (ActivationFunction.derivative falls back to a numerical one),
+ * and so does the error function. The gradient goes to the ANN's Optimizer if it has one, otherwise it is
+ * applied as plain gradient descent with {@code learningRate}.
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class BackpropTraining<E extends Number> implements TrainingAlgorithm<E> {
+	private final int checkpointEvery;
+	private final Optimizer sgd;
+	private double[] gradient = new double[0];
+	private long liveDoubles, peakDoubles;
+
+	public BackpropTraining() {
+		this(0.5, 1);
+	}
+
+	/**
+	 * @param learningRate step size for plain gradient descent, when the ANN has no Optimizer
+	 * @param checkpointEvery keep the values of every k-th layer during the forward pass, recompute the rest
+	 */
+	public BackpropTraining(double learningRate, int checkpointEvery) {
+		this.sgd = new SGDOptimizer(learningRate);
+		this.checkpointEvery = Math.max(1, checkpointEvery);
+	}
+
+	@Override
+	public void trainOne(MatrixANN<E> ann, E[] input, E[] correctOutput) {
+		trainBatch(ann, (E[][]) new Number[][] { input }, (E[][]) new Number[][] { correctOutput });
+	}
+
+	@Override
+	public void trainBatch(MatrixANN<E> ann, E[][] inputBatch, E[][] outputLabels) {
+		computeGradient(ann, inputBatch, outputLabels);
+		apply(ann, 0, ann.getArena().size());
+	}
+
+	@Override
+	public void trainOne(MatrixANN<E> ann, double[] input, double[] correctOutput) {
+		trainBatch(ann, input, correctOutput, 1);
+	}
+
+	@Override
+	public void trainBatch(MatrixANN<E> ann, double[] inputs, double[] labels, int n) {
+		computeGradient(ann, inputs, labels, n);
+		apply(ann, 0, ann.getArena().size());
+	}
+
+	/**
+	 * Gradient step on the weights only, for the inputs already set
+	 */
+	@Override
+	public void adjustWeights(MatrixANN<E> ann, E[] correctOutput) {
+		computeGradient(ann, (E[][]) new Number[][] { ann.getInputs() }, (E[][]) new Number[][] { correctOutput });
+		apply(ann, 0, ann.getArena().biasOffset(0));
+	}
+
+	/**
+	 * Gradient step on the biases only, for the inputs already set
+	 */
+	@Override
+	public void adjustBiases(MatrixANN<E> ann, E[] correctOutput) {
+		computeGradient(ann, (E[][]) new Number[][] { ann.getInputs() }, (E[][]) new Number[][] { correctOutput });
+		apply(ann, ann.getArena().biasOffset(0), ann.getArena().size());
+	}
+
+	private void apply(MatrixANN<E> ann, int from, int to) {
+		ann.applyGradient(gradient, from, to, ann.getOptimizer() != null ? ann.getOptimizer() : sgd);
+	}
+
+	/**
+	 * @return most layer values (doubles) held at once during the last computeGradient
+	 */
+	public long getPeakActivationDoubles() {
+		return peakDoubles;
+	}
+
+	/**
+	 * Gradient of the error summed over the batch, for every parameter in ParameterArena layout. The returned
+	 * array is reused by the next call.
+	 * 
+	 * @param ann
+	 * @param inputs
+	 * @param labels
+	 * @return
+	 */
+	public double[] computeGradient(MatrixANN<E> ann, E[][] inputs, E[][] labels) {
+		double[] flatInputs = new double[inputs.length * inputs[0].length];
+		double[] flatLabels = new double[labels.length * labels[0].length];
+		for (int s = 0; s < inputs.length; s++) {
+			for (int i = 0; i < inputs[s].length; i++) {
+				flatInputs[s * inputs[s].length + i] = inputs[s][i].doubleValue();
+			}
+			for (int i = 0; i < labels[s].length; i++) {
+				flatLabels[s * labels[s].length + i] = labels[s][i].doubleValue();
+			}
+		}
+		return computeGradient(ann, flatInputs, flatLabels, inputs.length);
+	}
+
+	/**
+	 * Like computeGradient for boxed batches, for {@code n} samples laid out one after another in {@code inputs}
+	 * and {@code labels}
+	 * 
+	 * @param ann
+	 * @param inputs
+	 * @param labels
+	 * @param n
+	 * @return
+	 */
+	public double[] computeGradient(MatrixANN<E> ann, double[] inputs, double[] labels, int n) {
+		ParameterArena arena = ann.getArena();
+		double[] params = arena.getParams();
+		ActivationFunction func = ann.getActivationFunction();
+		int[] sizes = ann.getLayerSizes();
+		int last = sizes.length - 1;
+		if (gradient.length != params.length)
+			gradient = new double[params.length];
+		Arrays.fill(gradient, 0);
+		liveDoubles = peakDoubles = 0;
+
+		// forward, keeping only the checkpoint layers
+		double[][] a = new double[sizes.length][];
+		double[][] z = new double[sizes.length][];
+		a[0] = inputs;
+		track(n * sizes[0]);
+		double[] prevA = a[0];
+		for (int l = 1; l <= last; l++) {
+			double[] zl = new double[n * sizes[l]];
+			double[] al = new double[zl.length];
+			track(2 * zl.length);
+			forwardLayer(params, arena, func, sizes, l, prevA, n, zl, al);
+			ann.countLayers(n);
+			if (prevA != a[l - 1])
+				track(-2 * prevA.length); // the previous layer wasn't a checkpoint, drop it
+			if (l % checkpointEvery == 0 || l == last) {
+				a[l] = al;
+				z[l] = zl;
+			}
+			prevA = al;
+		}
+
+		// output delta: dError/dOutput * f'(z)
+		double[] delta = new double[n * sizes[last]];
+		track(delta.length);
+		double[] expected = new double[sizes[last]];
+		double[] actual = new double[sizes[last]];
+		double[] grad = new double[sizes[last]];
+		for (int s = 0; s < n; s++) {
+			for (int i = 0; i < expected.length; i++) {
+				expected[i] = labels[s * sizes[last] + i];
+				actual[i] = a[last][s * sizes[last] + i];
+			}
+			ann.getErrorFunction().gradient(expected, actual, grad);
+			for (int i = 0; i < grad.length; i++) {
+				int idx = s * sizes[last] + i;
+				delta[idx] = grad[i] * derivative(func, z[last][idx]);
+			}
+		}
+
+		// backward, one segment between checkpoints at a time, last segment first
+		int start = (last - 1) / checkpointEvery * checkpointEvery;
+		int end = last;
+		while (end > 0) {
+			for (int l = start + 1; l < end; l++) { // recompute this segment from its checkpoint
+				z[l] = new double[n * sizes[l]];
+				a[l] = new double[z[l].length];
+				track(2 * z[l].length);
+				forwardLayer(params, arena, func, sizes, l, a[l - 1], n, z[l], a[l]);
+				ann.countLayers(n);
+			}
+			for (int l = end; l > start; l--) {
+				int w = l - 1;
+				accumulate(arena, sizes, w, delta, a[w], n);
+				if (w > 0) {
+					double[] prevDelta = backLayer(params, arena, sizes, w, delta, n);
+					track(prevDelta.length - delta.length);
+					for (int idx = 0; idx < prevDelta.length; idx++) {
+						prevDelta[idx] *= derivative(func, z[w][idx]);
+					}
+					delta = prevDelta;
+				}
+				if (l != last) { // done with layer l
+					track(-a[l].length - z[l].length);
+					a[l] = z[l] = null;
+				}
+			}
+			end = start;
+			start = Math.max(0, start - checkpointEvery);
+		}
+		return gradient;
+	}
+
+	private void track(long doubles) {
+		liveDoubles += doubles;
+		peakDoubles = Math.max(peakDoubles, liveDoubles);
+	}
+
+	private static double derivative(ActivationFunction func, double z) {
+		return func == null ? 1 : func.derivative(z);
+	}
+
+	/**
+	 * z = W a + b and a' = f(z) for layer {@code l}, for every sample
+	 */
+	private static void forwardLayer(double[] params, ParameterArena arena, ActivationFunction func, int[] sizes,
+			int l, double[] aIn, int n, double[] zOut, double[] aOut) {
+		int rows = sizes[l], cols = sizes[l - 1];
+		int offset = arena.weightOffset(l - 1);
+		double bias = params[arena.biasOffset(l - 1)];
+		for (int s = 0; s < n; s++) {
+			for (int r = 0; r < rows; r++) {
+				double sum = bias;
+				int row = offset + r * cols;
+				for (int c = 0; c < cols; c++) {
+					sum += params[row + c] * aIn[s * cols + c];
+				}
+				zOut[s * rows + r] = sum;
+				aOut[s * rows + r] = func == null ? sum : func.func(sum).doubleValue();
+			}
+		}
+	}
+
+	/**
+	 * Adds the gradient of weight matrix {@code w} (delta times the layer below) and of its bias (sum of delta)
+	 */
+	private void accumulate(ParameterArena arena, int[] sizes, int w, double[] delta, double[] aBelow, int n) {
+		int rows = sizes[w + 1], cols = sizes[w];
+		int offset = arena.weightOffset(w);
+		double biasGrad = 0;
+		for (int s = 0; s < n; s++) {
+			for (int r = 0; r < rows; r++) {
+				double d = delta[s * rows + r];
+				biasGrad += d;
+				int row = offset + r * cols;
+				for (int c = 0; c < cols; c++) {
+					gradient[row + c] += d * aBelow[s * cols + c];
+				}
+			}
+		}
+		gradient[arena.biasOffset(w)] += biasGrad;
+	}
+
+	/**
+	 * W^T delta for weight matrix {@code w}, for every sample
+	 */
+	private static double[] backLayer(double[] params, ParameterArena arena, int[] sizes, int w, double[] delta,
+			int n) {
+		int rows = sizes[w + 1], cols = sizes[w];
+		int offset = arena.weightOffset(w);
+		double[] ret = new double[n * cols];
+		for (int s = 0; s < n; s++) {
+			for (int r = 0; r < rows; r++) {
+				double d = delta[s * rows + r];
+				int row = offset + r * cols;
+				for (int c = 0; c < cols; c++) {
+					ret[s * cols + c] += params[row + c] * d;
+				}
+			}
+		}
+		return ret;
+	}
+
+	public static void test() {
+		System.out.println("Testing BackpropTraining with activation checkpointing");
+		System.out.println("------------------------------------------------------");
+		int[] layerSizes = { 2, 8, 8, 8, 8, 8, 8, 8, 1 };
+		Double[][] inputs = new Double[LogicalAND.possibleInputs.length][];
+		Double[][] labels = new Double[inputs.length][];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i]);
+			labels[i] = ArrayConversionUtils.numbersToDoubles(LogicalAND.output(inputs[i]));
+		}
+		MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.weightInitializer(new XavierInitializer()).seed(1).build(layerSizes);
+		BackpropTraining<Double> keepAll = new BackpropTraining<>(0.5, 1);
+		double[] full = keepAll.computeGradient(ann, inputs, labels).clone();
+		for (int k : new int[] { 1, 2, 3, 8 }) {
+			BackpropTraining<Double> alg = new BackpropTraining<>(0.5, k);
+			double[] grad = alg.computeGradient(ann, inputs, labels);
+			double maxDiff = 0;
+			for (int i = 0; i < grad.length; i++) {
+				maxDiff = Math.max(maxDiff, Math.abs(grad[i] - full[i]));
+			}
+			System.out.println("checkpointEvery " + k + ": peak layer values held " + alg.getPeakActivationDoubles()
+					+ ", max difference from keeping everything " + maxDiff);
+			if (maxDiff != 0)
+				throw new AssertionError("checkpointEvery " + k + " changed the gradient by " + maxDiff);
+			if (alg.getPeakActivationDoubles() > keepAll.getPeakActivationDoubles())
+				throw new AssertionError("checkpointEvery " + k + " held more layer values than keeping everything");
+		}
+		ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(new BackpropTraining<Double>(0.5, 3)).optimizer(new AdamOptimizer(0.05))
+				.weightInitializer(new XavierInitializer()).seed(1).build(layerSizes);
+		for (int i = 0; i < 300; i++) {
+			ann.train(inputs, labels);
+		}
+		for (int i = 0; i < inputs.length; i++) {
+			ann.setInputs(inputs[i]);
+			ann.processLayers();
+			System.out.println(inputs[i][0] + " AND " + inputs[i][1] + " = " + ann.getOutput()[0]);
+		}
+		MatrixANN<Double> copy = ann.copy();
+		ann.train(inputs, labels);
+		copy.train(inputs, labels);
+		boolean same = Arrays.equals(ann.getArena().snapshot(), copy.getArena().snapshot());
+		System.out.println("copy trains like the original, with its own Adam state: " + same);
+		if (!same)
+			throw new AssertionError("The copy shares the optimizer's state");
+	}
+}
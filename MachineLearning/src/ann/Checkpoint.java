@@ -0,0 +1,254 @@
+package ann;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot of a MatrixANN's weights, biases, optimizer state and training algorithm state at one training step
+ * 
+ * File format (big-endian): int MAGIC, long step, int numLayers, the layer sizes, int numParams, the parameters
+ * in ParameterArena layout, int numStateArrays, then each optimizer state array as int length and doubles, then
+ * int length and the training algorithm's state as longs. Files without that last part (from before it was
+ * saved) read as an empty training state.
+ * 
+ * Files are written to a temporary name, forced to disk, then renamed into place atomically, and the directory
+ * is forced too, so a crash never leaves a half-written checkpoint under a real name or loses the rename. Both
+ * directions go through a fixed-size buffer, so checkpoints can be bigger than 2 GB.
+ * 
+ * @author Benito
+ *
+ */
+public class Checkpoint {
+	public static final int MAGIC = 0x4d414e4e; // "MANN"
+	public static final String SUFFIX = ".ckpt";
+
+	private final long step;
+	private final int[] layerSizes;
+	private final double[] params;
+	private final double[][] optimizerState;
+	private final long[] trainingState;
+
+	public Checkpoint(long step, int[] layerSizes, double[] params, double[][] optimizerState,
+			long[] trainingState) {
+		this.step = step;
+		this.layerSizes = layerSizes;
+		this.params = params;
+		this.optimizerState = optimizerState;
+		this.trainingState = trainingState;
+	}
+
+	/**
+	 * Copies the ANN's parameters, optimizer state and training algorithm state. Do this between training steps.
+	 * 
+	 * @param ann
+	 * @param step
+	 * @return
+	 */
+	public static Checkpoint of(MatrixANN<?> ann, long step) {
+		Optimizer optimizer = ann.getOptimizer();
+		return new Checkpoint(step, ann.getLayerSizes(), ann.getArena().snapshot(),
+				optimizer == null ? new double[0][] : optimizer.getState(), ann.getTrainingAlgorithm().getState());
+	}
+
+	public long getStep() {
+		return step;
+	}
+
+	public int[] getLayerSizes() {
+		return layerSizes.clone();
+	}
+
+	/**
+	 * Puts the saved weights, biases, optimizer state and training algorithm state back into {@code ann}, which
+	 * must have the same layer sizes and the same kinds of optimizer and training algorithm
+	 * 
+	 * @param ann
+	 */
+	public void restore(MatrixANN<?> ann) {
+		if (!Arrays.equals(layerSizes, ann.getLayerSizes()))
+			throw new IllegalArgumentException("Checkpoint has layer sizes " + Arrays.toString(layerSizes));
+		ann.getArena().restore(params);
+		if (ann.getOptimizer() != null && optimizerState.length > 0)
+			ann.getOptimizer().setState(optimizerState);
+		if (trainingState.length > 0)
+			ann.getTrainingAlgorithm().setState(trainingState);
+	}
+
+	public static Path fileFor(Path dir, long step) {
+		return dir.resolve(String.format("checkpoint-%019d%s", step, SUFFIX));
+	}
+
+	/**
+	 * @return number of bytes write() puts on disk
+	 */
+	public long byteSize() {
+		long size = 4 + 8 + 4 + 4L * layerSizes.length + 4 + 8L * params.length + 4;
+		for (double[] state : optimizerState) {
+			size += 4 + 8L * state.length;
+		}
+		return size + 4 + 8L * trainingState.length;
+	}
+
+	/**
+	 * Writes this checkpoint into {@code dir} atomically
+	 * 
+	 * @param dir
+	 * @return the file written
+	 * @throws IOException
+	 */
+	public Path write(Path dir) throws IOException {
+		Path file = fileFor(dir, step);
+		Path tmp = dir.resolve(file.getFileName() + ".tmp");
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(byteSize(), 1 << 20));
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			buffer.putInt(MAGIC).putLong(step).putInt(layerSizes.length);
+			for (int size : layerSizes) {
+				put(channel, buffer, 4).putInt(size);
+			}
+			putDoubles(channel, buffer, params);
+			put(channel, buffer, 4).putInt(optimizerState.length);
+			for (double[] state : optimizerState) {
+				putDoubles(channel, buffer, state);
+			}
+			put(channel, buffer, 4).putInt(trainingState.length);
+			for (long value : trainingState) {
+				put(channel, buffer, 8).putLong(value);
+			}
+			drain(channel, buffer);
+			channel.force(true);
+		}
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		forceDirectory(dir);
+		return file;
+	}
+
+	/**
+	 * Forces the directory entry of the rename to disk. Some platforms (Windows) can't open a directory; there
+	 * the rename is as durable as the file system makes it.
+	 */
+	private static void forceDirectory(Path dir) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(dir, StandardOpenOption.READ);
+		} catch (IOException e) {
+			return;
+		}
+		try (channel) {
+			channel.force(true);
+		}
+	}
+
+	private static void putDoubles(FileChannel channel, ByteBuffer buffer, double[] values) throws IOException {
+		put(channel, buffer, 4).putInt(values.length);
+		for (double value : values) {
+			put(channel, buffer, 8).putDouble(value);
+		}
+	}
+
+	/**
+	 * Makes room for {@code bytes} more bytes in the buffer, writing it out if needed
+	 */
+	private static ByteBuffer put(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			drain(channel, buffer);
+		return buffer;
+	}
+
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	public static Checkpoint read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.max(64, Math.min(channel.size(), 1 << 20)));
+			buffer.flip(); // empty, ready to read from
+			if (get(channel, buffer, 16).getInt() != MAGIC)
+				throw new IOException(file + " is not a checkpoint");
+			long step = buffer.getLong();
+			int[] layerSizes = new int[buffer.getInt()];
+			for (int i = 0; i < layerSizes.length; i++) {
+				layerSizes[i] = get(channel, buffer, 4).getInt();
+			}
+			double[] params = getDoubles(channel, buffer);
+			double[][] optimizerState = new double[get(channel, buffer, 4).getInt()][];
+			for (int i = 0; i < optimizerState.length; i++) {
+				optimizerState[i] = getDoubles(channel, buffer);
+			}
+			long[] trainingState = new long[0];
+			if (buffer.hasRemaining() || channel.position() < channel.size()) {
+				trainingState = new long[get(channel, buffer, 4).getInt()];
+				for (int i = 0; i < trainingState.length; i++) {
+					trainingState[i] = get(channel, buffer, 8).getLong();
+				}
+			}
+			return new Checkpoint(step, layerSizes, params, optimizerState, trainingState);
+		}
+	}
+
+	private static double[] getDoubles(FileChannel channel, ByteBuffer buffer) throws IOException {
+		double[] values = new double[get(channel, buffer, 4).getInt()];
+		for (int i = 0; i < values.length;) {
+			get(channel, buffer, 8);
+			int n = Math.min(values.length - i, buffer.remaining() / 8);
+			buffer.asDoubleBuffer().get(values, i, n);
+			buffer.position(buffer.position() + 8 * n);
+			i += n;
+		}
+		return values;
+	}
+
+	/**
+	 * Makes sure at least {@code bytes} more bytes are in the buffer, reading more if needed
+	 */
+	private static ByteBuffer get(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			buffer.compact();
+			while (buffer.position() < bytes) {
+				if (channel.read(buffer) < 0)
+					throw new EOFException("Checkpoint ends early");
+			}
+			buffer.flip();
+		}
+		return buffer;
+	}
+
+	/**
+	 * @param dir
+	 * @return every checkpoint file in {@code dir}, oldest first
+	 * @throws IOException
+	 */
+	public static List<Path> list(Path dir) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted(Comparator.naturalOrder())
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * @param dir
+	 * @return the checkpoint with the highest step in {@code dir}, or null if there is none
+	 * @throws IOException
+	 */
+	public static Checkpoint latest(Path dir) throws IOException {
+		if (!Files.isDirectory(dir))
+			return null;
+		List<Path> files = list(dir);
+		return files.isEmpty() ? null : read(files.get(files.size() - 1));
+	}
+}
@@ -0,0 +1,185 @@
+package ann;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import math.ArrayConversionUtils;
+import math.LogicalAND;
+
+/**
+ * Checkpoints a MatrixANN while it trains, without making the trainer wait for the disk
+ * 
+ * checkpoint() is called by the trainer between steps. It only copies the parameters (one array copy of the
+ * arena) and queues the copy. A background thread writes it with Checkpoint.write, which renames the file into
+ * place atomically. If a write is still running when the next checkpoint comes in, the queued one is replaced
+ * by the newer one, so a slow disk drops checkpoints instead of piling up snapshots.
+ * 
+ * Keeps the newest {@code keep} checkpoint files and deletes older ones. Resume with Checkpoint.latest(dir).
+ * 
+ * The time the trainer spends inside checkpoint() is its stall time, reported by getStallNanos and
+ * getMaxStallNanos, next to the background write time.
+ * 
+ * @author Benito
+ *
+ */
+public class Checkpointer implements AutoCloseable {
+	private final Path dir;
+	private final int keep;
+	private final ThreadPoolExecutor writer;
+	private final AtomicLong stallNanos = new AtomicLong(), maxStallNanos = new AtomicLong();
+	private final AtomicLong writeNanos = new AtomicLong(), bytesWritten = new AtomicLong();
+	private final AtomicLong requested = new AtomicLong(), written = new AtomicLong(), failed = new AtomicLong();
+
+	public Checkpointer(Path dir, int keep) throws IOException {
+		this.dir = Files.createDirectories(dir);
+		this.keep = keep;
+		this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), runnable -> {
+			Thread thread = new Thread(runnable, "checkpoint-writer");
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.DiscardOldestPolicy());
+	}
+
+	/**
+	 * Snapshots {@code ann} now and writes it in the background. Call between training steps.
+	 * 
+	 * @param ann
+	 * @param step
+	 */
+	public void checkpoint(MatrixANN<?> ann, long step) {
+		long start = System.nanoTime();
+		Checkpoint checkpoint = Checkpoint.of(ann, step);
+		requested.incrementAndGet();
+		writer.execute(() -> write(checkpoint));
+		long stall = System.nanoTime() - start;
+		stallNanos.addAndGet(stall);
+		maxStallNanos.accumulateAndGet(stall, Math::max);
+	}
+
+	private void write(Checkpoint checkpoint) {
+		long start = System.nanoTime();
+		try {
+			checkpoint.write(dir);
+			bytesWritten.addAndGet(checkpoint.byteSize());
+			written.incrementAndGet();
+			List<Path> files = Checkpoint.list(dir);
+			for (int i = 0; i < files.size() - keep; i++) {
+				Files.deleteIfExists(files.get(i));
+			}
+		} catch (IOException e) {
+			failed.incrementAndGet();
+			e.printStackTrace();
+		}
+		writeNanos.addAndGet(System.nanoTime() - start);
+	}
+
+	/**
+	 * Waits for queued checkpoints to be written, then stops the writer. If interrupted, stops waiting and
+	 * keeps the thread's interrupt status; the writer still finishes in the background.
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public Path getDir() {
+		return dir;
+	}
+
+	/**
+	 * @return total time the trainer spent in checkpoint()
+	 */
+	public long getStallNanos() {
+		return stallNanos.get();
+	}
+
+	/**
+	 * @return longest single checkpoint() call
+	 */
+	public long getMaxStallNanos() {
+		return maxStallNanos.get();
+	}
+
+	/**
+	 * @return total time spent writing on the background thread
+	 */
+	public long getWriteNanos() {
+		return writeNanos.get();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public long getRequested() {
+		return requested.get();
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return checkpoints replaced by newer ones before they were written
+	 */
+	public long getDropped() {
+		return requested.get() - written.get() - failed.get() - writer.getQueue().size() - writer.getActiveCount();
+	}
+
+	public static void test() throws IOException {
+		System.out.println("Testing Checkpointer");
+		System.out.println("--------------------");
+		Path dir = Files.createTempDirectory("checkpoints");
+		MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(new SPSATraining<Double>()).optimizer(new AdamOptimizer(0.1))
+				.weightInitializer(new XavierInitializer()).seed(1).build(new int[] { 2, 3, 1 });
+		Checkpointer checkpointer = new Checkpointer(dir, 2);
+		try (checkpointer) {
+			for (int step = 1; step <= 1000; step++) {
+				train(ann, step);
+				if (step % 100 == 0)
+					checkpointer.checkpoint(ann, step);
+			}
+		}
+		System.out.println("Requested " + checkpointer.getRequested() + ", written " + checkpointer.getWritten()
+				+ ", stalled " + checkpointer.getStallNanos() / 1000 + " us in total, max "
+				+ checkpointer.getMaxStallNanos() / 1000 + " us");
+		Checkpoint latest = Checkpoint.latest(dir);
+		MatrixANN<Double> resumed = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(new SPSATraining<Double>()).optimizer(new AdamOptimizer(0.1))
+				.build(new int[] { 2, 3, 1 });
+		latest.restore(resumed);
+		System.out.println("Resumed from step " + latest.getStep() + ", same parameters: "
+				+ Arrays.equals(ann.getArena().getParams(), resumed.getArena().getParams()));
+		for (int step = 1001; step <= 1100; step++) {
+			train(ann, step);
+			train(resumed, step);
+		}
+		boolean exact = Arrays.equals(ann.getArena().getParams(), resumed.getArena().getParams());
+		System.out.println("100 more steps on both, still the same: " + exact);
+		if (!exact)
+			throw new AssertionError("Resuming from a checkpoint didn't continue the same training");
+		System.out.println("Files kept: " + Checkpoint.list(dir).size());
+	}
+
+	private static void train(MatrixANN<Double> ann, int step) {
+		Double[] input = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[step % 4]);
+		ann.train(input, ArrayConversionUtils.numbersToDoubles(LogicalAND.output(input)));
+	}
+}
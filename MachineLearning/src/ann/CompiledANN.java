@@ -0,0 +1,311 @@
+package ann;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import math.exceptions.DifferentLengthsException;
+
+/**
+ * Forward pass compiled at runtime for one MatrixANN's topology
+ * 
+ * Once an ANN is built its layer sizes and activation function never change, so compile() writes Java source
+ * for exactly that network: every dimension and parameter offset is a constant, small layers are unrolled into
+ * straight-line code with their values in local variables, larger layers become loops with constant bounds,
+ * and the activation function is inlined when it can give its own source (ActivationFunction.javaSource). The
+ * source is compiled in memory with javax.tools and loaded as a hidden class, which can be unloaded once this
+ * object is garbage.
+ * 
+ * Only the shape is baked in: each call reads the weights and biases from the arena's current buffer, so the
+ * compiled pass stays valid while the ANN keeps training. The arithmetic happens in the same order as
+ * MatrixANN.predict, so both give the same results.
+ * 
+ * If no compiler is available (e.g. running on a JRE), compile() falls back to the generic loops; see
+ * isSpecialized and getDiagnostics.
+ * 
+ * @author Benito
+ *
+ */
+public class CompiledANN {
+	public static final int UNROLL_LAYER_LIMIT = 128; // unroll layers with at most this many weights
+	public static final int UNROLL_TOTAL_LIMIT = 512; // keep the method small enough for the JIT to compile
+
+	private static final AtomicInteger classCount = new AtomicInteger();
+
+	/**
+	 * What the generated class implements
+	 */
+	public interface Kernel {
+		void forward(double[] params, double[] input, double[] output, double[] scratch, ActivationFunction func);
+	}
+
+	private final ParameterArena arena;
+	private final int[] layerSizes;
+	private final ActivationFunction func;
+	private final String source;
+	private final Kernel kernel;
+	private final boolean specialized;
+	private final String diagnostics;
+	private final ThreadLocal<double[]> scratch;
+
+	private CompiledANN(MatrixANN<?> ann) {
+		this.arena = ann.getArena();
+		this.layerSizes = ann.getLayerSizes();
+		this.func = ann.getActivationFunction();
+		String className = "CompiledForward" + classCount.incrementAndGet();
+		this.source = generate(className, layerSizes, arena, func);
+		DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+		Kernel compiled;
+		String problems;
+		try {
+			compiled = load(className, source, collector);
+			problems = compiled == null && collector.getDiagnostics().isEmpty() ? "No Java compiler available"
+					: collector.getDiagnostics().toString();
+		} catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+			compiled = null;
+			problems = e.toString();
+		}
+		this.specialized = compiled != null;
+		this.kernel = compiled != null ? compiled : (params, input, output, scratch, func) -> ann.predict(input, output);
+		this.diagnostics = problems;
+		int maxLayerSize = Arrays.stream(layerSizes).max().getAsInt();
+		this.scratch = ThreadLocal.withInitial(() -> new double[2 * maxLayerSize]);
+	}
+
+	/**
+	 * Compiles a forward pass for {@code ann}'s layer sizes and activation function
+	 * 
+	 * @param ann
+	 * @return
+	 */
+	public static CompiledANN compile(MatrixANN<?> ann) {
+		return new CompiledANN(ann);
+	}
+
+	/**
+	 * Output for {@code input}, written into {@code output}. Thread safe; allocates nothing once each thread has
+	 * its scratch array.
+	 * 
+	 * @param input
+	 * @param output
+	 */
+	public void predict(double[] input, double[] output) {
+		if (input.length != layerSizes[0] || output.length != layerSizes[layerSizes.length - 1])
+			throw new DifferentLengthsException("Expected " + layerSizes[0] + " inputs and "
+					+ layerSizes[layerSizes.length - 1] + " outputs");
+		kernel.forward(arena.current(), input, output, scratch.get(), func);
+	}
+
+	public double[] predict(double[] input) {
+		double[] output = new double[layerSizes[layerSizes.length - 1]];
+		predict(input, output);
+		return output;
+	}
+
+	/**
+	 * @return whether the generated class is in use, rather than the generic fallback
+	 */
+	public boolean isSpecialized() {
+		return specialized;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * @return compiler messages, or why compiling failed
+	 */
+	public String getDiagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * Java source for a Kernel specialized to {@code layerSizes}, {@code arena}'s layout and {@code func}
+	 */
+	static String generate(String className, int[] layerSizes, ParameterArena arena, ActivationFunction func) {
+		int last = layerSizes.length - 1;
+		int maxLayerSize = Arrays.stream(layerSizes).max().getAsInt();
+		boolean[] unrolled = new boolean[layerSizes.length]; // whether layer l's values are local variables
+		int budget = UNROLL_TOTAL_LIMIT;
+		for (int l = 1; l <= last; l++) {
+			int size = layerSizes[l] * layerSizes[l - 1];
+			unrolled[l] = size <= UNROLL_LAYER_LIMIT && size <= budget;
+			if (unrolled[l])
+				budget -= size;
+		}
+
+		StringBuilder src = new StringBuilder();
+		src.append("package ann;\n\n");
+		src.append("final class ").append(className).append(" implements CompiledANN.Kernel {\n");
+		src.append("\tpublic void forward(double[] p, double[] in, double[] out, double[] s, ActivationFunction f) {\n");
+		for (int l = 1; l <= last; l++) {
+			int rows = layerSizes[l], cols = layerSizes[l - 1];
+			int offset = arena.weightOffset(l - 1);
+			int bias = arena.biasOffset(l - 1);
+			src.append("\t\t// layer ").append(l).append(": ").append(rows).append(" x ").append(cols).append('\n');
+			if (unrolled[l]) {
+				for (int r = 0; r < rows; r++) {
+					StringBuilder sum = new StringBuilder("p[" + bias + "]");
+					for (int c = 0; c < cols; c++) {
+						sum.append(" + p[").append(offset + r * cols + c).append("] * ")
+								.append(value(l - 1, c, unrolled, maxLayerSize));
+					}
+					src.append("\t\t").append(l == last ? "out[" + r + "]" : "double v" + l + "_" + r).append(" = ")
+							.append(activate(func, sum.toString())).append(";\n");
+				}
+				continue;
+			}
+			String in = l == 1 ? "in" : "s";
+			int inOffset = l == 1 ? 0 : (l - 1) % 2 * maxLayerSize;
+			if (l > 1 && unrolled[l - 1]) { // loops need the layer below in an array
+				for (int c = 0; c < cols; c++) {
+					src.append("\t\ts[").append(inOffset + c).append("] = v").append(l - 1).append('_').append(c)
+							.append(";\n");
+				}
+			}
+			String out = l == last ? "out" : "s";
+			int outOffset = l == last ? 0 : l % 2 * maxLayerSize;
+			src.append("\t\tfor (int r = 0; r < ").append(rows).append("; r++) {\n");
+			src.append("\t\t\tdouble sum = p[").append(bias).append("];\n");
+			src.append("\t\t\tint row = ").append(offset).append(" + r * ").append(cols).append(";\n");
+			src.append("\t\t\tfor (int c = 0; c < ").append(cols).append("; c++) {\n");
+			src.append("\t\t\t\tsum += p[row + c] * ").append(in).append('[').append(inOffset).append(" + c];\n");
+			src.append("\t\t\t}\n");
+			src.append("\t\t\t").append(out).append('[').append(outOffset).append(" + r] = ")
+					.append(activate(func, "sum")).append(";\n");
+			src.append("\t\t}\n");
+		}
+		src.append("\t}\n}\n");
+		return src.toString();
+	}
+
+	/**
+	 * Expression for the value of node {@code i} of layer {@code l}
+	 */
+	private static String value(int l, int i, boolean[] unrolled, int maxLayerSize) {
+		if (l == 0)
+			return "in[" + i + "]";
+		if (unrolled[l])
+			return "v" + l + "_" + i;
+		return "s[" + (l % 2 * maxLayerSize + i) + "]";
+	}
+
+	private static String activate(ActivationFunction func, String z) {
+		if (func == null)
+			return z;
+		String inlined = func.javaSource(z);
+		return inlined != null ? inlined : "f.func(" + z + ").doubleValue()";
+	}
+
+	/**
+	 * Compiles {@code source} in memory and defines it as a hidden class next to this one
+	 * 
+	 * @return a new instance, or null if it didn't compile
+	 */
+	private static Kernel load(String className, String source, DiagnosticCollector<JavaFileObject> diagnostics)
+			throws ReflectiveOperationException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null)
+			return null;
+		Map<String, ByteArrayOutputStream> classFiles = new HashMap<>();
+		JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(
+				compiler.getStandardFileManager(diagnostics, null, null)) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, String name, Kind kind,
+					FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension),
+						kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+						classFiles.put(name, bytes);
+						return bytes;
+					}
+				};
+			}
+		};
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///ann/" + className + ".java"),
+				Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		List<String> options = List.of("-classpath", System.getProperty("java.class.path"), "-proc:none");
+		if (!compiler.getTask(null, files, diagnostics, options, null, List.of(file)).call())
+			return null;
+		byte[] bytes = classFiles.get("ann." + className).toByteArray();
+		MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+		try {
+			return (Kernel) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+		} catch (Throwable e) { // invoke declares Throwable; a no-arg constructor that does nothing won't throw
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static void test() {
+		System.out.println("Testing CompiledANN");
+		System.out.println("-------------------");
+		for (int[] layerSizes : new int[][] { { 2, 4, 1 }, { 8, 16, 16, 4 }, { 32, 64, 8 } }) {
+			MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>()
+					.activationFunction(new SigmoidFunction()).weightInitializer(new XavierInitializer()).seed(1)
+					.build(layerSizes);
+			CompiledANN compiled = CompiledANN.compile(ann);
+			if (!compiled.isSpecialized())
+				System.out.println("Not specialized: " + compiled.getDiagnostics());
+			double[][] inputs = new double[64][layerSizes[0]];
+			SplittableRandom random = new SplittableRandom(1);
+			for (double[] input : inputs) {
+				for (int i = 0; i < input.length; i++) {
+					input[i] = random.nextDouble();
+				}
+			}
+			double[] expected = new double[layerSizes[layerSizes.length - 1]];
+			double[] output = new double[expected.length];
+			double maxDiff = 0;
+			for (double[] input : inputs) {
+				ann.predict(input, expected);
+				compiled.predict(input, output);
+				for (int i = 0; i < output.length; i++) {
+					maxDiff = Math.max(maxDiff, Math.abs(output[i] - expected[i]));
+				}
+			}
+			int calls = 2000000 / layerSizes[1];
+			long genericNanos = 0, compiledNanos = 0;
+			for (int round = 0; round < 3; round++) { // the first round warms up both
+				long start = System.nanoTime();
+				for (int i = 0; i < calls; i++) {
+					ann.predict(inputs[i & 63], output);
+				}
+				genericNanos = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int i = 0; i < calls; i++) {
+					compiled.predict(inputs[i & 63], output);
+				}
+				compiledNanos = System.nanoTime() - start;
+			}
+			System.out.println(Arrays.toString(layerSizes) + ": specialized " + compiled.isSpecialized()
+					+ ", max difference " + maxDiff + ", generic " + genericNanos / calls + " ns/call, compiled "
+					+ compiledNanos / calls + " ns/call");
+		}
+	}
+}
@@ -0,0 +1,339 @@
+package ann;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import math.ArrayConversionUtils;
+import math.LogicalAND;
+
+/**
+ * Watches a MatrixANN train and stops it once the validation loss stops improving, instead of running a fixed
+ * number of steps
+ *
+ * The training loop calls poll() between steps and stops when it returns false. Every {@code intervalMillis}
+ * the controller asks for a snapshot, which the next poll() takes (one array copy of the arena, like
+ * Checkpointer) and hands off. Scoring the snapshot on the validation set happens on the controller's own
+ * thread, on a copy of the ANN, so the trainer never waits for it.
+ *
+ * Rules, applied after each score:
+ * <ul>
+ * <li>A loss more than {@code minDelta} below the best so far becomes the best, and its snapshot is kept.</li>
+ * <li>A loss more than {@code divergence} times the best (or NaN) means training diverged: the best snapshot is
+ * restored and the step sizes reduced.</li>
+ * <li>After {@code patience} scores without a new best, the step sizes are reduced.</li>
+ * <li>Reducing means multiplying the ANN's stepFactor and testStepSize by {@code decay}. Once that has happened
+ * {@code maxReductions} times, the next reduction stops training instead.</li>
+ * </ul>
+ * Every change to the ANN (restoring, new step sizes) is made by poll(), on the trainer's thread. When
+ * training stops, poll() restores the best snapshot before returning false. A loop that ends on its own can
+ * call restoreBest().
+ *
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class ConvergenceController<E extends Number> implements AutoCloseable {
+	private final MatrixANN<E> ann;
+	private final MatrixANN<E> scorer; // the snapshots are scored on this copy, which has its own counters
+	private final double[][] inputs, labels;
+	private final Evaluator evaluator;
+	private final BlockingQueue<Candidate> snapshots = new ArrayBlockingQueue<>(1);
+	private long intervalMillis = 100;
+	private int patience = 5;
+	private double minDelta = 0;
+	private double decay = 0.5;
+	private int maxReductions = 3;
+	private double divergence = 2;
+	private Thread thread;
+	private volatile boolean closed;
+	private volatile RuntimeException error;
+
+	// trainer's side
+	private long steps;
+	private volatile boolean snapshotDue;
+	private volatile boolean pending; // the controller decided something poll() has to apply
+	private boolean stopped;
+
+	// decided by the controller, guarded by this
+	private double pendingScale = 1;
+	private double[] pendingRestore;
+	private boolean stopRequested;
+	private double bestLoss = Double.POSITIVE_INFINITY;
+	private double[] bestParams;
+	private long bestStep;
+	private int sinceImprovement, reductions;
+	private final List<Double> history = new ArrayList<>();
+
+	private static class Candidate {
+		final double[] params;
+		final long step;
+
+		Candidate(double[] params, long step) {
+			this.params = params;
+			this.step = step;
+		}
+	}
+
+	/**
+	 * @param ann the ANN being trained
+	 * @param inputs held-out validation inputs, not trained on
+	 * @param labels their labels
+	 */
+	public ConvergenceController(MatrixANN<E> ann, double[][] inputs, double[][] labels) {
+		this.ann = ann;
+		this.scorer = ann.predictionCopy();
+		this.inputs = inputs;
+		this.labels = labels;
+		this.evaluator = new Evaluator(inputs.length); // one chunk: scoring stays on the controller's thread
+	}
+
+	/**
+	 * How often to take and score a snapshot
+	 */
+	public ConvergenceController<E> intervalMillis(long intervalMillis) {
+		this.intervalMillis = intervalMillis;
+		return this;
+	}
+
+	/**
+	 * Scores without a new best before reducing the step sizes
+	 */
+	public ConvergenceController<E> patience(int patience) {
+		this.patience = patience;
+		return this;
+	}
+
+	/**
+	 * How much lower than the best a loss must be to count as an improvement
+	 */
+	public ConvergenceController<E> minDelta(double minDelta) {
+		this.minDelta = minDelta;
+		return this;
+	}
+
+	/**
+	 * What to multiply stepFactor and testStepSize by on each reduction
+	 */
+	public ConvergenceController<E> decay(double decay) {
+		this.decay = decay;
+		return this;
+	}
+
+	/**
+	 * Reductions before the next one stops training
+	 */
+	public ConvergenceController<E> maxReductions(int maxReductions) {
+		this.maxReductions = maxReductions;
+		return this;
+	}
+
+	/**
+	 * A loss this many times the best counts as diverging. 0 turns the rule off.
+	 */
+	public ConvergenceController<E> divergence(double divergence) {
+		this.divergence = divergence;
+		return this;
+	}
+
+	/**
+	 * Starts the controller's thread. Call once the rules are set.
+	 *
+	 * @return
+	 */
+	public ConvergenceController<E> start() {
+		thread = new Thread(this::run, "convergence-controller");
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+
+	/**
+	 * Call from the training loop between steps
+	 *
+	 * @return false once training should stop, after restoring the best snapshot
+	 */
+	public boolean poll() {
+		if (stopped)
+			return false;
+		steps++;
+		if (snapshotDue) {
+			snapshotDue = false;
+			snapshots.offer(new Candidate(ann.getArena().snapshot(), steps));
+		}
+		if (pending)
+			apply();
+		return !stopped;
+	}
+
+	private synchronized void apply() {
+		pending = false;
+		if (pendingRestore != null) {
+			ann.getArena().restore(pendingRestore);
+			pendingRestore = null;
+		}
+		if (pendingScale != 1) {
+			ann.setStepFactor(ann.getStepFactor() * pendingScale);
+			ann.setTestStepSize(ann.getTestStepSize() * pendingScale);
+			pendingScale = 1;
+		}
+		if (stopRequested) {
+			restoreBest();
+			stopped = true;
+			closed = true;
+		}
+	}
+
+	/**
+	 * Sets the ANN's parameters to the best snapshot so far, if there is one. Call on the trainer's thread.
+	 */
+	public synchronized void restoreBest() {
+		if (bestParams != null)
+			ann.getArena().restore(bestParams);
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				Thread.sleep(intervalMillis);
+				snapshotDue = true;
+				Candidate candidate;
+				while ((candidate = snapshots.poll(intervalMillis, TimeUnit.MILLISECONDS)) == null) {
+					if (closed)
+						return;
+				}
+				score(candidate);
+			}
+		} catch (InterruptedException e) {
+			// closed
+		} catch (RuntimeException e) {
+			error = e;
+		}
+	}
+
+	private void score(Candidate candidate) {
+		scorer.getArena().restore(candidate.params);
+		double loss = evaluator.evaluate(scorer, inputs, labels).getMeanLoss();
+		if (Double.isNaN(loss))
+			loss = Double.POSITIVE_INFINITY;
+		synchronized (this) {
+			history.add(loss);
+			if (loss < bestLoss - minDelta) {
+				bestLoss = loss;
+				bestParams = candidate.params;
+				bestStep = candidate.step;
+				sinceImprovement = 0;
+			} else if (divergence > 0 && loss > bestLoss * divergence) {
+				pendingRestore = bestParams;
+				reduce();
+			} else if (++sinceImprovement >= patience) {
+				reduce();
+			}
+		}
+	}
+
+	private void reduce() {
+		if (reductions == maxReductions) {
+			stopRequested = true;
+		} else {
+			pendingScale *= decay;
+			reductions++;
+		}
+		sinceImprovement = 0;
+		pending = true;
+	}
+
+	/**
+	 * @return whether the controller stopped training
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * @return how many times poll() let training go on
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	public synchronized double getBestLoss() {
+		return bestLoss;
+	}
+
+	/**
+	 * @return steps trained when the best snapshot was taken
+	 */
+	public synchronized long getBestStep() {
+		return bestStep;
+	}
+
+	public synchronized int getReductions() {
+		return reductions;
+	}
+
+	/**
+	 * @return validation loss of every snapshot scored so far, in order
+	 */
+	public synchronized double[] getHistory() {
+		return history.stream().mapToDouble(Double::doubleValue).toArray();
+	}
+
+	/**
+	 * @return what stopped the controller's thread, or null
+	 */
+	public RuntimeException getError() {
+		return error;
+	}
+
+	/**
+	 * Stops the controller's thread. Doesn't touch the ANN.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (thread != null)
+			thread.interrupt();
+	}
+
+	public static void test() {
+		System.out.println("Testing ConvergenceController on logical AND");
+		System.out.println("--------------------------------------------");
+		SplittableRandom random = new SplittableRandom(1);
+		int n = 200;
+		double[][] inputs = new double[n][];
+		double[][] labels = new double[n][];
+		for (int s = 0; s < n; s++) {
+			Number[] input = LogicalAND.randomInputs(random);
+			labels[s] = ArrayConversionUtils.numbersToPrimitiveDoubles(LogicalAND.output(input));
+			inputs[s] = new double[] { input[0].doubleValue() + 0.2 * random.nextGaussian(),
+					input[1].doubleValue() + 0.2 * random.nextGaussian() };
+		}
+		MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.build(new int[] { 2, 1 });
+		long budget = 50000000;
+		try (ConvergenceController<Double> controller = new ConvergenceController<>(ann, inputs, labels)
+				.intervalMillis(20).patience(3).maxReductions(2).start()) {
+			long start = System.nanoTime();
+			for (long step = 0; step < budget && controller.poll(); step++) {
+				Number[] input = LogicalAND.randomInputs(random);
+				ann.train(ArrayConversionUtils.numbersToPrimitiveDoubles(input),
+						ArrayConversionUtils.numbersToPrimitiveDoubles(LogicalAND.output(input)));
+			}
+			long millis = (System.nanoTime() - start) / 1000000;
+			System.out.println("stopped " + controller.isStopped() + " after " + controller.getSteps() + " of "
+					+ budget + " steps, " + millis + " ms, " + controller.getHistory().length + " scores, "
+					+ controller.getReductions() + " reductions, stepFactor now " + ann.getStepFactor());
+			double restored = new Evaluator().evaluate(ann, inputs, labels).getMeanLoss();
+			System.out.println("best validation loss " + controller.getBestLoss() + " at step "
+					+ controller.getBestStep() + ", ANN restored to it: " + (restored == controller.getBestLoss()));
+		}
+		long computed = ann.getLayersComputed();
+		new Evaluator().evaluate(ann.predictionCopy(), inputs, labels);
+		System.out.println("scoring on the copy left the ANN's layer count alone: "
+				+ (ann.getLayersComputed() == computed));
+	}
+}
@@ -1,5 +1,31 @@
-package ann;
-
-public interface ErrorFunction<E extends Number> {
-	double error(E[] a, E[] b);
-}
+package ann;
+
+public interface ErrorFunction<E extends Number> {
+	double error(E[] a, E[] b);
+
+	/**
+	 * Gradient of error(expected, actual) with respect to {@code actual}, written into {@code grad}, for
+	 * gradient-based training. Defaults to central differences; override it when there is a closed form.
+	 * 
+	 * @param expected
+	 * @param actual
+	 * @param grad
+	 */
+	default void gradient(double[] expected, double[] actual, double[] grad) {
+		double h = 1e-6;
+		Double[] a = new Double[expected.length];
+		Double[] b = new Double[actual.length];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = expected[i];
+			b[i] = actual[i];
+		}
+		for (int i = 0; i < b.length; i++) {
+			b[i] = actual[i] + h;
+			double plus = error((E[]) a, (E[]) b);
+			b[i] = actual[i] - h;
+			double minus = error((E[]) a, (E[]) b);
+			b[i] = actual[i];
+			grad[i] = (plus - minus) / (2 * h);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package ann;
+
+/**
+ * Loss, accuracy and confusion matrix of a model over a dataset, as computed by Evaluator
+ * 
+ * For classification, a sample's class is the index of its largest label (one-hot labels), or, with a single
+ * output, whether the label is at least 0.5. The model's prediction is read the same way from its output.
+ * 
+ * @author Benito
+ *
+ */
+public class Evaluation {
+	private final long samples;
+	private final double totalLoss;
+	private final long correct;
+	private final long[][] confusion; // [actual class][predicted class]
+
+	Evaluation(long samples, double totalLoss, long correct, long[][] confusion) {
+		this.samples = samples;
+		this.totalLoss = totalLoss;
+		this.correct = correct;
+		this.confusion = confusion;
+	}
+
+	/**
+	 * Combines the evaluations of two disjoint parts of a dataset
+	 */
+	Evaluation merge(Evaluation other) {
+		long[][] sum = new long[confusion.length][confusion.length];
+		for (int a = 0; a < sum.length; a++) {
+			for (int p = 0; p < sum.length; p++) {
+				sum[a][p] = confusion[a][p] + other.confusion[a][p];
+			}
+		}
+		return new Evaluation(samples + other.samples, totalLoss + other.totalLoss, correct + other.correct, sum);
+	}
+
+	public long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * @return the error function summed over every sample
+	 */
+	public double getTotalLoss() {
+		return totalLoss;
+	}
+
+	public double getMeanLoss() {
+		return samples == 0 ? 0 : totalLoss / samples;
+	}
+
+	public long getCorrect() {
+		return correct;
+	}
+
+	public double getAccuracy() {
+		return samples == 0 ? 0 : (double) correct / samples;
+	}
+
+	public int numClasses() {
+		return confusion.length;
+	}
+
+	/**
+	 * @param actual
+	 * @param predicted
+	 * @return how many samples of class {@code actual} were predicted as {@code predicted}
+	 */
+	public long getConfusion(int actual, int predicted) {
+		return confusion[actual][predicted];
+	}
+
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+		ret.append("samples ").append(samples).append(", mean loss ").append(getMeanLoss()).append(", accuracy ")
+				.append(getAccuracy()).append("\n");
+		ret.append("confusion (rows actual, columns predicted):\n");
+		for (int a = 0; a < confusion.length; a++) {
+			for (int p = 0; p < confusion.length; p++) {
+				ret.append(String.format("%10d", confusion[a][p]));
+			}
+			ret.append("\n");
+		}
+		return ret.toString();
+	}
+}
@@ -0,0 +1,163 @@
+package ann;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import math.ArrayConversionUtils;
+import math.LogicalAND;
+import math.exceptions.DifferentLengthsException;
+
+/**
+ * Evaluates a MatrixANN over a whole dataset on every core
+ * 
+ * The dataset is cut into chunks that are evaluated in a parallel stream, each with its own output and error
+ * function arrays, and the chunks' Evaluations are merged. Outputs come from MatrixANN.predict, which reads the
+ * current parameters without touching the ANN's layers, so evaluating doesn't disturb the model (or a training
+ * step using those layers). Don't commit new weights while evaluating, or chunks may see different ones.
+ * 
+ * @author Benito
+ *
+ */
+public class Evaluator {
+	private final int chunkSize;
+
+	/**
+	 * @param chunkSize samples per chunk; smaller chunks spread the work more evenly over threads
+	 */
+	public Evaluator(int chunkSize) {
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	public Evaluator() {
+		this(256);
+	}
+
+	/**
+	 * @param ann
+	 * @param inputs
+	 * @param labels
+	 * @return loss, accuracy and confusion matrix of {@code ann} over the samples; an Evaluation of no samples if there are none
+	 * @throws DifferentLengthsException if there aren't as many labels as inputs
+	 */
+	public <E extends Number> Evaluation evaluate(MatrixANN<E> ann, double[][] inputs, double[][] labels) {
+		checkLengths(inputs.length, labels.length);
+		int[] layerSizes = ann.getLayerSizes();
+		int outputSize = layerSizes[layerSizes.length - 1];
+		int numClasses = numClasses(outputSize);
+		int chunks = (inputs.length + chunkSize - 1) / chunkSize;
+		return IntStream.range(0, chunks).parallel()
+				.mapToObj(chunk -> evaluate(ann, inputs, labels, chunk * chunkSize,
+						Math.min(inputs.length, (chunk + 1) * chunkSize), outputSize, numClasses))
+				.reduce(Evaluation::merge)
+				.orElse(new Evaluation(0, 0, 0, new long[numClasses][numClasses]));
+	}
+
+	/**
+	 * evaluate for boxed datasets, e.g. the ones MatrixANN.train takes
+	 */
+	public <E extends Number> Evaluation evaluate(MatrixANN<E> ann, E[][] inputs, E[][] labels) {
+		checkLengths(inputs.length, labels.length);
+		double[][] primitiveInputs = new double[inputs.length][];
+		double[][] primitiveLabels = new double[labels.length][];
+		for (int s = 0; s < inputs.length; s++) {
+			primitiveInputs[s] = ArrayConversionUtils.numbersToPrimitiveDoubles(inputs[s]);
+			primitiveLabels[s] = ArrayConversionUtils.numbersToPrimitiveDoubles(labels[s]);
+		}
+		return evaluate(ann, primitiveInputs, primitiveLabels);
+	}
+
+	private static void checkLengths(int inputs, int labels) {
+		if (inputs != labels)
+			throw new DifferentLengthsException(inputs + " inputs but " + labels + " labels");
+	}
+
+	/**
+	 * Evaluates samples [from, to) on the calling thread
+	 */
+	private static <E extends Number> Evaluation evaluate(MatrixANN<E> ann, double[][] inputs, double[][] labels,
+			int from, int to, int outputSize, int numClasses) {
+		double[] output = new double[outputSize];
+		Double[] expected = new Double[outputSize], actual = new Double[outputSize]; // for the ErrorFunction
+		double loss = 0;
+		long correct = 0;
+		long[][] confusion = new long[numClasses][numClasses];
+		for (int s = from; s < to; s++) {
+			ann.predict(inputs[s], output);
+			for (int i = 0; i < outputSize; i++) {
+				expected[i] = labels[s][i];
+				actual[i] = output[i];
+			}
+			loss += ann.getErrorFunction().error((E[]) expected, (E[]) actual);
+			int actualClass = classOf(labels[s]);
+			int predictedClass = classOf(output);
+			confusion[actualClass][predictedClass]++;
+			if (actualClass == predictedClass)
+				correct++;
+		}
+		return new Evaluation(to - from, loss, correct, confusion);
+	}
+
+	private static int numClasses(int outputSize) {
+		return outputSize == 1 ? 2 : outputSize;
+	}
+
+	/**
+	 * @return index of the largest value, or for a single value whether it is at least 0.5
+	 */
+	private static int classOf(double[] values) {
+		if (values.length == 1)
+			return values[0] >= 0.5 ? 1 : 0;
+		int max = 0;
+		for (int i = 1; i < values.length; i++) {
+			if (values[i] > values[max])
+				max = i;
+		}
+		return max;
+	}
+
+	public static void test() {
+		System.out.println("Testing Evaluator on logical AND");
+		System.out.println("--------------------------------");
+		MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(new BackpropTraining<Double>(2, 1)).build(new int[] { 2, 1 });
+		for (int i = 0; i < 500; i++) {
+			ann.trainBatch(new double[] { 0, 0, 0, 1, 1, 0, 1, 1 }, new double[] { 0, 0, 0, 1 }, 4);
+		}
+		// noisy AND inputs, so some land on the wrong side
+		SplittableRandom random = new SplittableRandom(1);
+		int n = 200000;
+		double[][] inputs = new double[n][];
+		double[][] labels = new double[n][];
+		for (int s = 0; s < n; s++) {
+			Number[] input = LogicalAND.randomInputs(random);
+			labels[s] = ArrayConversionUtils.numbersToPrimitiveDoubles(LogicalAND.output(input));
+			inputs[s] = new double[] { input[0].doubleValue() + 0.3 * random.nextGaussian(),
+					input[1].doubleValue() + 0.3 * random.nextGaussian() };
+		}
+		ann.setInputs(new Double[] { 1., 1. });
+		ann.processLayers();
+		long layersBefore = ann.getLayersComputed();
+
+		long start = System.nanoTime();
+		Evaluation sequential = new Evaluator(n).evaluate(ann, inputs, labels); // one chunk
+		long sequentialMillis = (System.nanoTime() - start) / 1000000;
+		start = System.nanoTime();
+		Evaluation parallel = new Evaluator().evaluate(ann, inputs, labels);
+		long parallelMillis = (System.nanoTime() - start) / 1000000;
+		System.out.print(parallel);
+		System.out.println("one chunk " + sequentialMillis + " ms, chunks of 256 " + parallelMillis + " ms, same counts "
+				+ (sequential.getCorrect() == parallel.getCorrect()) + ", loss difference "
+				+ Math.abs(sequential.getTotalLoss() - parallel.getTotalLoss()));
+		System.out.println("layers untouched: " + (ann.getLayersComputed() == layersBefore) + ", output still "
+				+ ann.getOutput()[0]);
+
+		Evaluation empty = new Evaluator().evaluate(ann, new double[0][], new double[0][]);
+		System.out.println("empty dataset: " + empty.getSamples() + " samples");
+		try {
+			new Evaluator().evaluate(ann, inputs, new double[n - 1][]);
+			System.out.println("mismatched lengths didn't throw");
+		} catch (DifferentLengthsException e) {
+			System.out.println("mismatched lengths: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package ann;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import math.ArrayConversionUtils;
+import math.LogicalAND;
+
+/**
+ * Evolution strategies
+ * 
+ * Another gradient-free alternative to NaiveTraining. Each step samples a population of parameter vectors
+ * around the current weights and biases (params + testStepSize * noise, with Gaussian noise), scores every
+ * candidate's error on the sample or batch in parallel, and moves the parameters towards the candidates that
+ * ranked best. Candidates come in mirrored pairs (+noise and -noise) to cut the variance.
+ * 
+ * The noise is never stored: each candidate is identified by a seed and its noise is regenerated from that
+ * seed when it is scored and again when the update is applied. Each thread evaluates its candidates on its
+ * own copy of the ANN, so memory is O(params) per thread however big the population is.
+ * 
+ * Updates use centered ranks instead of raw errors, so one wild candidate can't blow up a step. If the ANN
+ * has an Optimizer, the estimated gradient goes to it instead of being applied with stepSize.
+ * With simultaneousChanges the new parameters go into the arena's back buffer and are swapped in.
+ * 
+ * The scoring threads belong to this object: close() it once training is done. The replicas are rebuilt
+ * whenever the ANN being trained has different layer sizes, activation function or error function.
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class EvolutionTraining<E extends Number> implements TrainingAlgorithm<E>, AutoCloseable {
+	private final int population; // always even
+	private final double stepSize;
+	private final int threads;
+	private final SeedSequence random;
+	private final ExecutorService executor;
+	private MatrixANN<E>[] replicas;
+	private int[] replicaLayerSizes; // what the replicas were copied from
+	private ActivationFunction replicaFunction;
+	private ErrorFunction<E> replicaErrorFunction;
+
+	public EvolutionTraining() {
+		this(16, 0.5, Runtime.getRuntime().availableProcessors(), 1);
+	}
+
+	/**
+	 * @param population candidates per step, rounded up to an even number
+	 * @param stepSize how far to move along the estimated gradient
+	 * @param threads threads to score candidates on
+	 * @param seed seed for the noise
+	 */
+	public EvolutionTraining(int population, double stepSize, int threads, long seed) {
+		this.population = population + population % 2;
+		this.stepSize = stepSize;
+		this.threads = Math.max(1, Math.min(threads, this.population));
+		this.random = new SeedSequence(seed);
+		this.executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+			Thread thread = new Thread(runnable, "evolution-training");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void trainOne(MatrixANN<E> ann, E[] input, E[] correctOutput) {
+		E[][] inputs = (E[][]) new Number[][] { input };
+		E[][] labels = (E[][]) new Number[][] { correctOutput };
+		step(ann, inputs, labels, 0, ann.getArena().size());
+	}
+
+	@Override
+	public void trainBatch(MatrixANN<E> ann, E[][] inputBatch, E[][] outputLabels) {
+		step(ann, inputBatch, outputLabels, 0, ann.getArena().size());
+	}
+
+	/**
+	 * Evolves only the weights. Inputs must already be set on the ann.
+	 */
+	@Override
+	public void adjustWeights(MatrixANN<E> ann, E[] correctOutput) {
+		step(ann, currentInputs(ann), (E[][]) new Number[][] { correctOutput }, 0, ann.getArena().biasOffset(0));
+	}
+
+	/**
+	 * Evolves only the biases. Inputs must already be set on the ann.
+	 */
+	@Override
+	public void adjustBiases(MatrixANN<E> ann, E[] correctOutput) {
+		ParameterArena arena = ann.getArena();
+		step(ann, currentInputs(ann), (E[][]) new Number[][] { correctOutput }, arena.biasOffset(0), arena.size());
+	}
+
+	@Override
+	public long[] getState() {
+		return random.getState();
+	}
+
+	@Override
+	public void setState(long[] state) {
+		random.setState(state);
+	}
+
+	private E[][] currentInputs(MatrixANN<E> ann) {
+		return (E[][]) new Number[][] { ann.getInputs() };
+	}
+
+	/**
+	 * One generation over parameters [from, to)
+	 */
+	private void step(MatrixANN<E> ann, E[][] inputs, E[][] labels, int from, int to) {
+		ParameterArena arena = ann.getArena();
+		double[] params = arena.getParams();
+		double sigma = ann.getTestStepSize();
+		int pairs = population / 2;
+		long[] seeds = new long[pairs];
+		for (int j = 0; j < pairs; j++) {
+			seeds[j] = random.next();
+		}
+		double[] errors = score(ann, params, inputs, labels, seeds, sigma, from, to);
+
+		// centered ranks: best candidate -0.5, worst +0.5
+		Integer[] order = new Integer[population];
+		for (int k = 0; k < population; k++) {
+			order[k] = k;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(errors[a], errors[b]));
+		double[] utility = new double[population];
+		for (int rank = 0; rank < population; rank++) {
+			utility[order[rank]] = (double) rank / (population - 1) - 0.5;
+		}
+
+		if (ann.getOptimizer() != null) {
+			double[] gradient = new double[params.length];
+			for (int j = 0; j < pairs; j++) {
+				double weight = (utility[2 * j] - utility[2 * j + 1]) / (population * sigma);
+				SplittableRandom noise = new SplittableRandom(seeds[j]);
+				for (int i = from; i < to; i++) {
+					gradient[i] += weight * noise.nextGaussian();
+				}
+			}
+			ann.applyGradient(gradient, from, to);
+			return;
+		}
+
+		// gradient estimate, summed in place from regenerated noise
+		double[] target;
+		if (ann.getSimultaneousChanges()) {
+			ann.stageChanges();
+			target = arena.getNext();
+		} else {
+			target = params;
+		}
+		double scale = stepSize / (population * sigma);
+		for (int j = 0; j < pairs; j++) {
+			double weight = scale * (utility[2 * j] - utility[2 * j + 1]); // + and - noise of the same pair
+			SplittableRandom noise = new SplittableRandom(seeds[j]);
+			for (int i = from; i < to; i++) {
+				target[i] -= weight * noise.nextGaussian();
+			}
+		}
+		if (ann.getSimultaneousChanges())
+			ann.commitChanges();
+		else
+			arena.touch(from, to);
+	}
+
+	/**
+	 * Scores every candidate in parallel. Candidate 2j is params + sigma * noise(seed j), candidate 2j+1 is
+	 * params - sigma * noise(seed j).
+	 */
+	private double[] score(MatrixANN<E> ann, double[] params, E[][] inputs, E[][] labels, long[] seeds,
+			double sigma, int from, int to) {
+		if (replicas == null || !Arrays.equals(replicaLayerSizes, ann.getLayerSizes())
+				|| replicaFunction != ann.getActivationFunction() || replicaErrorFunction != ann.getErrorFunction()) {
+			replicas = new MatrixANN[threads];
+			for (int t = 0; t < threads; t++) {
+				replicas[t] = ann.copy();
+			}
+			replicaLayerSizes = ann.getLayerSizes();
+			replicaFunction = ann.getActivationFunction();
+			replicaErrorFunction = ann.getErrorFunction();
+		}
+		double[] errors = new double[population];
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			MatrixANN<E> replica = replicas[t];
+			int thread = t;
+			tasks.add(() -> {
+				double[] candidate = replica.getArena().getParams();
+				for (int k = thread; k < population; k += threads) {
+					System.arraycopy(params, 0, candidate, 0, params.length);
+					double sign = k % 2 == 0 ? sigma : -sigma;
+					SplittableRandom noise = new SplittableRandom(seeds[k / 2]);
+					for (int i = from; i < to; i++) {
+						candidate[i] += sign * noise.nextGaussian();
+					}
+					replica.getArena().touch(0, candidate.length);
+					double err = 0;
+					for (int s = 0; s < inputs.length; s++) {
+						replica.setInputs(inputs[s]);
+						replica.processLayers();
+						err += replica.error(labels[s], replica.getOutput());
+					}
+					errors[k] = Double.isNaN(err) ? Double.POSITIVE_INFINITY : err;
+				}
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return errors;
+	}
+
+	/**
+	 * Stops the scoring threads once the current step is done. Training with this afterwards throws.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	public static void test() {
+		System.out.println("Testing EvolutionTraining on logical AND with sigmoid function");
+		System.out.println("--------------------------------------------------------------");
+		EvolutionTraining<Double> evolution = new EvolutionTraining<>();
+		MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(evolution).build(new int[] { 2, 1 });
+		Double[][] inputs = new Double[LogicalAND.possibleInputs.length][];
+		Double[][] labels = new Double[inputs.length][];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i]);
+			labels[i] = ArrayConversionUtils.numbersToDoubles(LogicalAND.output(inputs[i]));
+		}
+		for (int i = 0; i < 300; i++) {
+			ann.train(inputs, labels);
+		}
+		for (int i = 0; i < inputs.length; i++) {
+			ann.setInputs(inputs[i]);
+			ann.processLayers();
+			System.out.println(inputs[i][0] + " AND " + inputs[i][1] + " = " + ann.getOutput()[0]);
+		}
+
+		System.out.println("Same algorithm on a [2, 2, 1] ANN after the [2, 1] one");
+		ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(evolution).build(new int[] { 2, 2, 1 });
+		for (int i = 0; i < 300; i++) {
+			ann.train(inputs, labels);
+		}
+		ann.setInputs(inputs[3]);
+		ann.processLayers();
+		System.out.println("1.0 AND 1.0 = " + ann.getOutput()[0]);
+		evolution.close();
+	}
+}
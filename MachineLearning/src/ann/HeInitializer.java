@@ -0,0 +1,25 @@
+package ann;
+
+import java.util.SplittableRandom;
+
+import math.FlatMatrix;
+
+/**
+ * He initialization: Gaussian with mean 0 and standard deviation sqrt(2 / fanIn)
+ * Suits rectifier-like activation functions, which zero out half their inputs.
+ * 
+ * @author Benito
+ *
+ */
+public class HeInitializer implements WeightInitializer {
+
+	@Override
+	public void init(FlatMatrix weights, SplittableRandom random) {
+		double stdDev = Math.sqrt(2.0 / weights.numCols());
+		for (int r = 0; r < weights.numRows(); r++) {
+			for (int c = 0; c < weights.numCols(); c++) {
+				weights.set(r, c, stdDev * random.nextGaussian());
+			}
+		}
+	}
+}
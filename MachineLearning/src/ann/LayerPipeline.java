@@ -0,0 +1,323 @@
+package ann;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import math.ArrayConversionUtils;
+
+/**
+ * Pipeline-parallel forward pass for deep MatrixANNs
+ * 
+ * The weight matrices are split into contiguous groups of about equal work (rows * cols), one stage per group.
+ * Each stage runs the processLayer steps for its group on its own thread, taking micro-batches of layer values
+ * from a bounded queue and handing its results to the next stage. So while the last stage works on micro-batch
+ * n, the first is already on n + stages - 1. That helps deep but narrow networks, whose matrices are too small
+ * to split by rows.
+ * 
+ * Stages keep micro-batches in order, so predict returns outputs in the order of its inputs. Stages read the
+ * arena's current buffer once per micro-batch; don't train the ANN while predicting.
+ * 
+ * Close the pipeline to stop its threads. Once a stage has stopped, because the pipeline was closed or its
+ * thread died, predict throws instead of waiting for it.
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class LayerPipeline<E extends Number> implements AutoCloseable {
+	private static final MicroBatch END = new MicroBatch(-1, -1, null);
+
+	private final MatrixANN<E> ann;
+	private final int[] layerSizes;
+	private final int[] firstWeight; // stage s runs weight matrices [firstWeight[s], firstWeight[s + 1])
+	private final BlockingQueue<MicroBatch>[] queues; // queues[s] feeds stage s, queues[stages] holds outputs
+	private final Thread[] threads;
+	private long calls; // predict calls so far, guarded by this
+
+	/**
+	 * Micro-batch of layer values, one row per sample
+	 */
+	private static class MicroBatch {
+		final long call; // the predict call it belongs to
+		final int index;
+		double[][] values;
+		RuntimeException error;
+
+		MicroBatch(long call, int index, double[][] values) {
+			this.call = call;
+			this.index = index;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * @param ann
+	 * @param stages number of threads, at most the number of weight matrices
+	 * @param queueCapacity micro-batches that can wait between two stages
+	 */
+	public LayerPipeline(MatrixANN<E> ann, int stages, int queueCapacity) {
+		this.ann = ann;
+		this.layerSizes = ann.getLayerSizes();
+		int numWeights = layerSizes.length - 1;
+		stages = Math.max(1, Math.min(stages, numWeights));
+		firstWeight = split(layerSizes, stages);
+		queues = new BlockingQueue[stages + 1];
+		for (int s = 0; s < stages; s++) {
+			queues[s] = new ArrayBlockingQueue<>(queueCapacity);
+		}
+		queues[stages] = new LinkedBlockingQueue<>(); // the caller drains it after feeding everything
+		threads = new Thread[stages];
+		for (int s = 0; s < stages; s++) {
+			int stage = s;
+			threads[s] = new Thread(() -> runStage(stage), "layer-pipeline-" + s);
+			threads[s].setDaemon(true);
+			threads[s].start();
+		}
+	}
+
+	/**
+	 * Splits the weight matrices into {@code stages} contiguous groups, cutting whenever a group has reached its
+	 * share of the multiply-adds
+	 */
+	private static int[] split(int[] layerSizes, int stages) {
+		int numWeights = layerSizes.length - 1;
+		long total = 0;
+		for (int w = 0; w < numWeights; w++) {
+			total += (long) layerSizes[w] * layerSizes[w + 1];
+		}
+		int[] first = new int[stages + 1];
+		long done = 0;
+		for (int w = 0, s = 1; w < numWeights && s < stages; w++) {
+			done += (long) layerSizes[w] * layerSizes[w + 1];
+			// cut after w if this stage has its share, as long as every later stage still gets a matrix
+			if (done * stages >= total * s || numWeights - (w + 1) == stages - s)
+				first[s++] = w + 1;
+		}
+		first[stages] = numWeights;
+		return first;
+	}
+
+	public int numStages() {
+		return threads.length;
+	}
+
+	/**
+	 * @return index of the first weight matrix each stage runs, plus the number of weight matrices at the end
+	 */
+	public int[] getStageBoundaries() {
+		return firstWeight.clone();
+	}
+
+	private void runStage(int stage) {
+		BlockingQueue<MicroBatch> in = queues[stage];
+		BlockingQueue<MicroBatch> out = queues[stage + 1];
+		ActivationFunction func = ann.getActivationFunction();
+		ParameterArena arena = ann.getArena();
+		try {
+			while (true) {
+				MicroBatch batch = in.take();
+				if (batch != END && batch.error == null) {
+					try {
+						double[] params = arena.current();
+						for (int w = firstWeight[stage]; w < firstWeight[stage + 1]; w++) {
+							batch.values = processLayer(params, arena, func, w, batch.values);
+						}
+					} catch (RuntimeException e) {
+						batch.error = e;
+					}
+				}
+				out.put(batch);
+				if (batch == END)
+					return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Same as MatrixANN.processLayer(w), for every sample of a micro-batch, on primitive doubles
+	 */
+	private double[][] processLayer(double[] params, ParameterArena arena, ActivationFunction func, int w,
+			double[][] values) {
+		double[][] ret = new double[values.length][layerSizes[w + 1]];
+		for (int s = 0; s < values.length; s++) {
+			MatrixANN.forwardLayer(params, arena, func, layerSizes, w, values[s], ret[s]);
+		}
+		return ret;
+	}
+
+	/**
+	 * Runs every input through the network, {@code microBatchSize} samples at a time
+	 * 
+	 * Micro-batches left in the stages by an earlier call that was interrupted or failed are skipped.
+	 * 
+	 * @param inputs
+	 * @param microBatchSize at least 1
+	 * @return output for each input, in order
+	 * @throws InterruptedException
+	 * @throws IllegalStateException if a stage stops while predicting
+	 */
+	public synchronized E[][] predict(E[][] inputs, int microBatchSize) throws InterruptedException {
+		if (microBatchSize <= 0)
+			throw new IllegalArgumentException("Micro-batches need at least one sample, got " + microBatchSize);
+		long call = ++calls;
+		int numBatches = (inputs.length + microBatchSize - 1) / microBatchSize;
+		for (int b = 0; b < numBatches; b++) {
+			int from = b * microBatchSize;
+			double[][] values = new double[Math.min(microBatchSize, inputs.length - from)][];
+			for (int s = 0; s < values.length; s++) {
+				values[s] = ArrayConversionUtils.numbersToPrimitiveDoubles(inputs[from + s]);
+			}
+			MicroBatch batch = new MicroBatch(call, b, values);
+			do {
+				checkStages();
+			} while (!queues[0].offer(batch, 10, TimeUnit.MILLISECONDS));
+		}
+		Double[][] outputs = new Double[inputs.length][]; // like getOutput, outputs are always Doubles
+		RuntimeException error = null;
+		for (int b = 0; b < numBatches; b++) {
+			MicroBatch batch;
+			do {
+				checkStages();
+			} while ((batch = queues[threads.length].poll(10, TimeUnit.MILLISECONDS)) == null);
+			if (batch.call != call) { // left over from an earlier call
+				b--;
+				continue;
+			}
+			if (batch.error != null) {
+				error = batch.error;
+				continue;
+			}
+			for (int s = 0; s < batch.values.length; s++) {
+				outputs[batch.index * microBatchSize + s] = ArrayConversionUtils.doublesToDoubles(batch.values[s]);
+			}
+		}
+		if (error != null)
+			throw error;
+		return (E[][]) outputs;
+	}
+
+	/**
+	 * @throws IllegalStateException if a stage's thread has stopped
+	 */
+	private void checkStages() {
+		for (Thread thread : threads) {
+			if (!thread.isAlive())
+				throw new IllegalStateException(thread.getName() + " has stopped");
+		}
+	}
+
+	/**
+	 * Stops the stages once they have finished the micro-batches already queued. If interrupted, stops waiting
+	 * and keeps the thread's interrupt status.
+	 */
+	@Override
+	public void close() {
+		try {
+			while (threads[0].isAlive() && !queues[0].offer(END, 10, TimeUnit.MILLISECONDS)) {
+				// the first queue is full; keep trying while the stages drain it
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			queues[threads.length].clear();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public static void test() {
+		System.out.println("Testing LayerPipeline");
+		System.out.println("---------------------");
+		int[] layerSizes = new int[17];
+		Arrays.fill(layerSizes, 32);
+		MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.weightInitializer(new XavierInitializer()).seed(1).build(layerSizes);
+		Double[][] inputs = new Double[2000][32];
+		SplittableRandom random = new SplittableRandom(1);
+		for (Double[] input : inputs) {
+			for (int i = 0; i < input.length; i++) {
+				input[i] = random.nextDouble();
+			}
+		}
+
+		long start = System.nanoTime();
+		Double[][] expected = new Double[inputs.length][];
+		for (int i = 0; i < inputs.length; i++) {
+			ann.setInputs(inputs[i]);
+			ann.processLayers();
+			expected[i] = ann.getOutput();
+		}
+		System.out.println("processLayers: " + (System.nanoTime() - start) / 1000000 + " ms");
+
+		for (int stages : new int[] { 1, 2, 4 }) {
+			LayerPipeline<Double> pipeline = new LayerPipeline<>(ann, stages, 4);
+			try (pipeline) {
+				pipeline.predict(inputs, 16); // warm up
+				start = System.nanoTime();
+				Double[][] outputs = pipeline.predict(inputs, 16);
+				long ms = (System.nanoTime() - start) / 1000000;
+				double maxDiff = 0;
+				for (int i = 0; i < outputs.length; i++) {
+					for (int j = 0; j < outputs[i].length; j++) {
+						maxDiff = Math.max(maxDiff, Math.abs(outputs[i][j] - expected[i][j]));
+					}
+				}
+				System.out.println(stages + " stages " + Arrays.toString(pipeline.getStageBoundaries())
+						+ ": " + ms + " ms, max difference " + maxDiff);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		System.out.println("Micro-batches left over from an interrupted call are skipped");
+		LayerPipeline<Double> pipeline = new LayerPipeline<>(ann, 2, 4);
+		try (pipeline) {
+			Thread interrupted = new Thread(() -> {
+				try {
+					pipeline.predict(inputs, 16);
+				} catch (InterruptedException e) {
+					// the micro-batches already fed stay in the stages
+				}
+			});
+			double[][] garbage = new double[16][32];
+			for (double[] row : garbage) {
+				Arrays.fill(row, Double.NaN);
+			}
+			pipeline.queues[0].put(new MicroBatch(0, 0, garbage)); // as if from a call before this one
+			interrupted.start();
+			Thread.sleep(5); // usually still feeding
+			interrupted.interrupt();
+			interrupted.join();
+			Double[][] outputs = pipeline.predict(inputs, 16);
+			for (int i = 0; i < outputs.length; i++) {
+				if (!Arrays.equals(outputs[i], expected[i]))
+					throw new AssertionError("Output " + i + " came from an earlier call");
+			}
+			try {
+				pipeline.predict(inputs, 0);
+				throw new AssertionError("predict took micro-batches of 0 samples");
+			} catch (IllegalArgumentException e) {
+				System.out.println("micro-batches of 0: " + e.getMessage());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		LayerPipeline<Double> closed = new LayerPipeline<>(ann, 2, 4);
+		closed.close();
+		try {
+			closed.predict(inputs, 16);
+			System.out.println("predict after close didn't throw");
+		} catch (IllegalStateException e) {
+			System.out.println("predict after close threw: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
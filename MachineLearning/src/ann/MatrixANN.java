@@ -1,396 +1,912 @@
-package ann;
-
-import java.util.ArrayList;
-import java.util.List;
-
-import math.ArrayConversionUtils;
-import math.JaggedMatrix;
-import math.LogicalAND;
-import math.Matrix;
-
-/**
- * MatrixANN
- * 
- * Artificial Neural Nets work off simple concepts.
- * 
- * For now, think of the ANN as a black box which takes some input vector, does
- * some calculations with it, and outputs another vector. These calculations
- * depend mainly of the weights of the network (the network is a bunch of nodes
- * connected by weights). Since the weights are initialized to 0, at first the
- * ANN basically spits out nonsense for any input. You have to train it to solve
- * a particular problem.
- * 
- * When you give the ANN some data as its input, it spits out an output. There
- * is some error between the output it gives and the correct output expected for
- * the input. To minimize this error, the ANN tries adjusting each of its
- * weights slightly and sees which adjustments minimize the error.
- * 
- * Repeating this process over many inputs results in a trained ANN that can
- * make predictions about similar data to what it was trained on.
- * 
- * @author Benito
- *
- * @param <E>
- */
-public class MatrixANN<E extends Number> {
-	private ANNLayers layers;
-	private Matrix[] weights; // there is a matrix of weights between each pair of adjacent layers
-	private Number[] biases; // the bias gets added after the weight calculation
-	private Matrix[] weightChanges; // flag changes before making them directly on weights, to change all weights
-									// "simultaneously"
-	private Number[] biasChanges;
-
-	// default params
-	private boolean simultaneousChanges = true;
-	private double testStepSize = 0.1;
-	private double stepFactor = 1000;
-	private ActivationFunction activationFunction = null;
-	private ErrorFunction<E> errorFunction = new SquareDiffError<>();
-	private TrainingAlgorithm trainingAlg = new NaiveTraining();
-
-	/**
-	 * Builds MatrixANN, one parameter at a time
-	 */
-	public static class MatrixANNBuilder<E> {
-		private MatrixANN ann;
-
-		public MatrixANNBuilder() {
-			ann = new MatrixANN();
-		}
-
-		public MatrixANNBuilder simultaneousChanges(boolean bool) {
-			ann.simultaneousChanges = bool;
-			return this;
-		}
-
-		public MatrixANNBuilder testStepSize(double testStepSize) {
-			ann.testStepSize = testStepSize;
-			return this;
-		}
-
-		public MatrixANNBuilder stepFactor(double stepFactor) {
-			ann.stepFactor = stepFactor;
-			return this;
-		}
-
-		public MatrixANNBuilder activationFunction(ActivationFunction func) {
-			ann.activationFunction = func;
-			return this;
-		}
-
-		public MatrixANNBuilder errorFunction(ErrorFunction func) {
-			ann.errorFunction = func;
-			return this;
-		}
-
-		/**
-		 * When you're done setting parameters, call build
-		 * 
-		 * @param layerSizes
-		 * @return
-		 */
-		public MatrixANN build(int[] layerSizes) {
-			ann.init(layerSizes);
-			return ann;
-		}
-	}
-
-	/**
-	 * Private constructor for MatrixANNBuilder layerSizes are required to use
-	 * MatrixANN
-	 */
-	private MatrixANN() {
-	}
-
-	/**
-	 * Simple constructor from layerSizes. Uses default parameters.
-	 * 
-	 * @param layerSizes
-	 */
-	public MatrixANN(int[] layerSizes) {
-		init(layerSizes);
-	}
-
-	/**
-	 * Initializes layers, weights, and biases
-	 * 
-	 * @param layerSizes
-	 */
-	public void init(int[] layerSizes) {
-		layers = new ANNLayers(layerSizes);
-		initWeights();
-		initBiases();
-	}
-
-	/**
-	 * Sets values of nodes in layer 0
-	 * 
-	 * @param inputs
-	 */
-	public void setInputs(E[] inputs) {
-		layers.setLayer(0, inputs);
-	}
-
-	/**
-	 * Gets values of nodes in last (output) layer
-	 * 
-	 * @return output vector
-	 */
-	public E[] getOutput() {
-		return (E[]) ArrayConversionUtils.numbersToDoubles(layers.getLayer(layers.numLayers() - 1));
-	}
-
-	public Matrix[] getWeights() {
-		return weights;
-	}
-	public Matrix getWeights(int w) {
-		return weights[w];
-	}
-
-	public E[] getBiases() {
-		return (E[]) biases;
-	}
-	public E getBias(int b) {
-		return (E) biases[b];
-	}
-	public void setBias(int b, E bias) {
-		biases[b] = bias;
-	}
-	public void setBiasChange(int b, E bias) {
-		biasChanges[b] = bias;
-	}
-
-	public Matrix[] getWeightChanges() {
-		return weightChanges;
-	}
-	public Matrix getWeightChanges(int w) {
-		return weightChanges[w];
-	}
-	
-	public E[] getBiasChanges() {
-		return (E[]) biasChanges;
-	}
-	public E getBiasChange(int b) {
-		return (E) biasChanges[b];
-	}
-	
-	public double getTestStepSize() {
-		return testStepSize;
-	}
-	public boolean getSimultaneousChanges() {
-		return simultaneousChanges;
-	}
-
-	/**
-	 * Creates Matrix of weights between adjacent layers
-	 */
-	public void initWeights() {
-		weights = new Matrix[layers.numLayers() - 1]; // there is a weight matrix between each layer
-		if (simultaneousChanges)
-			weightChanges = new Matrix[layers.numLayers() - 1];
-		for (int w = 0; w < weights.length; w++) {
-			int rows = layers.getLayer(w + 1).length;
-			int cols = layers.getLayer(w).length;
-			weights[w] = new Matrix(rows, cols);
-			if (simultaneousChanges)
-				weightChanges[w] = new Matrix(rows, cols);
-		}
-	}
-
-	/**
-	 * The biases are just an array. There is one for each weight matrix.
-	 */
-	public void initBiases() {
-		biases = new Number[layers.numLayers() - 1];
-		if (simultaneousChanges)
-			biasChanges = new Number[layers.numLayers() - 1];
-		for (int i = 0; i < biases.length; i++) {
-			biases[i] = 0;
-			if (simultaneousChanges) biasChanges[i] = 0;
-		}
-		
-	}
-
-	/**
-	 * Starting from the values of layer 0 (input), calculate values for each
-	 * consecutive layer
-	 */
-	public void processLayers() {
-		if (activationFunction != null) {
-			processLayers(activationFunction);
-			return;
-		}
-		for (int w = 0; w < weights.length; w++) {
-			processLayer(w);
-		}
-	}
-
-	public void processLayers(ActivationFunction func) {
-		for (int w = 0; w < weights.length; w++) {
-			processLayer(w, func);
-		}
-	}
-
-	public void processLayer(int layer) {
-		layers.setLayer(layer + 1, weights[layer].multAdd(layers.getLayer(layer), biases[layer]));
-	}
-
-	/**
-	 * Multiply weight Matrix by layer, add bias, and apply activation function
-	 * 
-	 * @param layer
-	 * @param func
-	 */
-	public void processLayer(int layer, ActivationFunction func) {
-		layers.setLayer(layer + 1, weights[layer].multFunc(layers.getLayer(layer), biases[layer], func));
-	}
-
-	public double error(E[] a, E[] b) {
-		return errorFunction.error(a, b);
-	}
-
-	/**
-	 * Calculate appropriate step size based on difference in errors. Multiply by
-	 * stepFactor
-	 * 
-	 * @param err
-	 * @param prevErr
-	 * @return
-	 */
-	public double stepSize(double err, double prevErr) {
-		return Math.abs(stepFactor * (err - prevErr) * (err - prevErr));
-	}
-
-	/**
-	 * Make all marked changes
-	 */
-	public void commitChanges() {
-		if (!simultaneousChanges)
-			return;
-		for (int w = 0; w < weights.length; w++) { // loop through each weight matrix in ann
-			for (int r = 0; r < weights[w].numRows(); r++) { // loop through each weight in weight matrix
-				for (int c = 0; c < weights[w].numCols(); c++) {
-					weights[w].addTo(r, c, weightChanges[w].get(r, c));
-				}
-			}
-		}
-		for (int b = 0; b < biases.length; b++) {
-			biases[b] = biases[b].doubleValue() + biasChanges[b].doubleValue();
-		}
-	}
-
-	/**
-	 * Try adjusting parts of the ANN, processLayers, minimize error
-	 * 
-	 * @param input
-	 * @param correctOutput
-	 */
-	public void train(E[] input, E[] correctOutput) {
-		trainingAlg.trainOne(this, input, correctOutput);
-	}
-
-	/**
-	 * Prints ANNLayers
-	 */
-	public String toString() {
-		StringBuilder ret = new StringBuilder();
-		ret.append(layers.toString());
-		return ret.toString();
-	}
-
-	public void printWeights() {
-		for (int w = 0; w < weights.length; w++) {
-			printWeights(w);
-		}
-	}
-
-	public void printWeights(int w) {
-		System.out.println(weights[w]);
-	}
-
-	public void printBiases() {
-		for (int i = 0; i < biases.length; i++) {
-			System.out.print(biases[i] + "  ");
-		}
-		System.out.println();
-	}
-
-	public static void printArr(Number[] arr) {
-		for (int i = 0; i < arr.length; i++) {
-			System.out.print(arr[i] + "  ");
-		}
-		System.out.println();
-	}
-
-	public static void test() {
-		System.out.println("Testing MatrixANN");
-		System.out.println("-----------------");
-		int[] layerSizes = { 2, 2, 1 };
-		MatrixANN<Double> ann = new MatrixANN(layerSizes);
-		System.out.println("Creating MatrixANN");
-		System.out.println(ann);
-		System.out.println("Printing Weights");
-		ann.printWeights();
-		System.out.println("Setting inputs");
-		ann.setInputs(new Double[] { 1., 0. });
-		System.out.println(ann);
-		System.out.println("Changing weights");
-		ann.weights[0].setRow(0, new Double[] { 1., 2. });
-		ann.weights[0].setRow(1, new Double[] { 3., 4. });
-		ann.printWeights();
-		System.out.println("Changing biases");
-		ann.biases[0] = 2;
-		ann.biases[1] = 1;
-		ann.printBiases();
-		System.out.println("Processing layers");
-		ann.processLayers();
-		System.out.println(ann);
-
-		System.out.println("Testing on logical AND with sigmoid function and simultaneousChanges");
-		ann = new MatrixANN(new int[] { 2, 1 });
-		ann.activationFunction = new SigmoidFunction();
-		int trainSize = 100;
-		double accuracy = 0;
-		int runs = 1;
-		for (int j = 0; j < runs; j++) {
-			for (int i = 0; i < trainSize; i++) {
-				Double[] input = ArrayConversionUtils.numbersToDoubles(LogicalAND.randomInputs());
-				System.out.println("Training on input");
-				printArr(input);
-				System.out.println("Setting inputs");
-				ann.setInputs(input);
-				ann.processLayers();
-				System.out.println(ann);
-				System.out.println("before training: ");
-				System.out.println(ann);
-				System.out.println("weights:");
-				ann.printWeights();
-				System.out.println("biases:");
-				ann.printBiases();
-				ann.train(input, ArrayConversionUtils.numbersToDoubles(LogicalAND.output(input)));
-				System.out.println("after training: ");
-				ann.processLayers();
-				System.out.println(ann);
-				System.out.println("weights:");
-				ann.printWeights();
-				System.out.println("biases:");
-				ann.printBiases();
-			}
-
-			for (int i = 0; i < LogicalAND.possibleInputs.length; i++) {
-				Double[] input = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i]);
-				System.out.println("Testing input");
-				printArr(input);
-				ann.setInputs(input);
-				ann.processLayers();
-				System.out.println(ann);
-			}
-		}
-	}
-
-	public static void main(String[] args) {
-		JaggedMatrix.test();
-		Matrix.test();
-		test();
-	}
+package ann;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import ann.AllocationCounter.Operation;
+import ann.distributed.DataParallelWorker;
+import ann.sweep.HyperparameterSweep;
+import math.ArrayConversionUtils;
+import math.FlatMatrix;
+import math.JaggedMatrix;
+import math.LogicalAND;
+import math.Matrix;
+import math.exceptions.DifferentLengthsException;
+
+/**
+ * MatrixANN
+ * 
+ * Artificial Neural Nets work off simple concepts.
+ * 
+ * For now, think of the ANN as a black box which takes some input vector, does
+ * some calculations with it, and outputs another vector. These calculations
+ * depend mainly of the weights of the network (the network is a bunch of nodes
+ * connected by weights). Since the weights are initialized to 0, at first the
+ * ANN basically spits out nonsense for any input. You have to train it to solve
+ * a particular problem.
+ * 
+ * When you give the ANN some data as its input, it spits out an output. There
+ * is some error between the output it gives and the correct output expected for
+ * the input. To minimize this error, the ANN tries adjusting each of its
+ * weights slightly and sees which adjustments minimize the error.
+ * 
+ * Repeating this process over many inputs results in a trained ANN that can
+ * make predictions about similar data to what it was trained on.
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class MatrixANN<E extends Number> {
+	private ANNLayers layers;
+	private ParameterArena arena; // every weight and bias in one flat buffer, double buffered for simultaneousChanges
+	// the biases live in arena too. The bias gets added after the weight calculation
+
+	// lazy evaluation: layers 1..cleanLayers were computed from the current inputs, with the weight and bias
+	// versions and activation function recorded here, so they don't need computing again until one changes
+	private int cleanLayers;
+	private long[] seenWeightVersions;
+	private long[] seenBiasVersions;
+	private ActivationFunction[] seenFunctions;
+	private ActivationFunction lastFunction; // what getOutput evaluates with
+	private LongAdder layersComputed = new LongAdder(); // shared with copies, which compute on this ANN's behalf
+
+	// default params
+	private boolean simultaneousChanges = true;
+	private double testStepSize = 0.1;
+	private double stepFactor = 1000;
+	private ActivationFunction activationFunction = null;
+	private ErrorFunction<E> errorFunction = new SquareDiffError<>();
+	private TrainingAlgorithm trainingAlg = new NaiveTraining();
+	private Optimizer optimizer = null; // null: training algorithms step the parameters their own way
+	private WeightInitializer weightInitializer = null; // null: weights start at 0
+	private Long seed = null; // null: different weights every time
+	private int predictionCacheSize = 0; // 0: predict always computes
+	private PredictionCache predictionCache = null;
+	private int[] layerSizes;
+	private ThreadLocal<double[][]> scratch; // per thread, two layers' worth of doubles for predict
+	private AllocationCounter allocationCounter = null; // null: allocations aren't counted
+
+	/**
+	 * Builds MatrixANN, one parameter at a time
+	 */
+	public static class MatrixANNBuilder<E> {
+		private MatrixANN ann;
+
+		public MatrixANNBuilder() {
+			ann = new MatrixANN();
+		}
+
+		public MatrixANNBuilder simultaneousChanges(boolean bool) {
+			ann.simultaneousChanges = bool;
+			return this;
+		}
+
+		public MatrixANNBuilder testStepSize(double testStepSize) {
+			ann.testStepSize = testStepSize;
+			return this;
+		}
+
+		public MatrixANNBuilder stepFactor(double stepFactor) {
+			ann.stepFactor = stepFactor;
+			return this;
+		}
+
+		public MatrixANNBuilder activationFunction(ActivationFunction func) {
+			ann.activationFunction = func;
+			return this;
+		}
+
+		public MatrixANNBuilder errorFunction(ErrorFunction func) {
+			ann.errorFunction = func;
+			return this;
+		}
+
+		public MatrixANNBuilder trainingAlgorithm(TrainingAlgorithm alg) {
+			ann.trainingAlg = alg;
+			return this;
+		}
+
+		/**
+		 * Have the training algorithm's gradient estimates applied by an Optimizer (e.g. AdamOptimizer)
+		 * 
+		 * @param optimizer
+		 * @return
+		 */
+		public MatrixANNBuilder optimizer(Optimizer optimizer) {
+			ann.optimizer = optimizer;
+			return this;
+		}
+
+		/**
+		 * How to set the starting weights, e.g. XavierInitializer. By default they all start at 0.
+		 * 
+		 * @param initializer
+		 * @return
+		 */
+		public MatrixANNBuilder weightInitializer(WeightInitializer initializer) {
+			ann.weightInitializer = initializer;
+			return this;
+		}
+
+		/**
+		 * Seed for the weight initializer, so the same seed gives the same starting weights
+		 * 
+		 * @param seed
+		 * @return
+		 */
+		public MatrixANNBuilder seed(long seed) {
+			ann.seed = seed;
+			return this;
+		}
+
+		/**
+		 * Cache up to {@code capacity} outputs of predict, keyed by input vector (see PredictionCache)
+		 * 
+		 * @param capacity
+		 * @return
+		 */
+		public MatrixANNBuilder predictionCache(int capacity) {
+			ann.predictionCacheSize = capacity;
+			return this;
+		}
+
+		/**
+		 * Count the bytes each training step, processLayers and predict allocates (see AllocationCounter and
+		 * getMemoryMetrics)
+		 * 
+		 * @return
+		 */
+		public MatrixANNBuilder countAllocations() {
+			ann.allocationCounter = new AllocationCounter();
+			return this;
+		}
+
+		/**
+		 * When you're done setting parameters, call build
+		 * 
+		 * @param layerSizes
+		 * @return
+		 */
+		public MatrixANN build(int[] layerSizes) {
+			ann.init(layerSizes);
+			return ann;
+		}
+	}
+
+	/**
+	 * Private constructor for MatrixANNBuilder layerSizes are required to use
+	 * MatrixANN
+	 */
+	private MatrixANN() {
+	}
+
+	/**
+	 * Simple constructor from layerSizes. Uses default parameters.
+	 * 
+	 * @param layerSizes
+	 */
+	public MatrixANN(int[] layerSizes) {
+		init(layerSizes);
+	}
+
+	/**
+	 * Initializes layers, weights, and biases
+	 * 
+	 * @param layerSizes
+	 */
+	public void init(int[] layerSizes) {
+		this.layerSizes = layerSizes.clone();
+		layers = new ANNLayers(layerSizes);
+		arena = new ParameterArena(layerSizes, simultaneousChanges);
+		predictionCache = predictionCacheSize > 0 ? new PredictionCache(predictionCacheSize) : null;
+		int maxLayerSize = Arrays.stream(layerSizes).max().getAsInt();
+		scratch = ThreadLocal.withInitial(() -> new double[][] { new double[maxLayerSize], new double[maxLayerSize] });
+		seenWeightVersions = new long[layerSizes.length - 1];
+		seenBiasVersions = new long[layerSizes.length - 1];
+		seenFunctions = new ActivationFunction[layerSizes.length - 1];
+		cleanLayers = 0;
+		lastFunction = activationFunction;
+		initWeights();
+		initBiases();
+	}
+
+	/**
+	 * Sets values of nodes in layer 0
+	 * 
+	 * @param inputs
+	 */
+	public void setInputs(E[] inputs) {
+		layers.setLayer(0, inputs.clone()); // the layer is written in place later, so it can't be the caller's array
+		cleanLayers = 0;
+	}
+
+	/**
+	 * Sets values of nodes in layer 0 from primitives
+	 * 
+	 * @param inputs
+	 */
+	public void setInputs(double[] inputs) {
+		layers.setLayer(0, inputs);
+		cleanLayers = 0;
+	}
+
+	/**
+	 * Gets values of nodes in layer 0
+	 * 
+	 * @return input vector
+	 */
+	public E[] getInputs() {
+		return (E[]) layers.getLayer(0);
+	}
+
+	/**
+	 * Gets values of nodes in last (output) layer, first recomputing whatever changed since the last
+	 * processLayers (with the same activation function). Costs nothing when nothing changed.
+	 * 
+	 * @return output vector
+	 */
+	public E[] getOutput() {
+		processLayers(lastFunction);
+		return (E[]) ArrayConversionUtils.numbersToDoubles(layers.getLayer(layers.numLayers() - 1));
+	}
+
+	/**
+	 * Views into the arena's front buffer, all of one generation. Fetch them again after each commitChanges().
+	 */
+	public Matrix[] getWeights() {
+		return arena.getWeights();
+	}
+	public Matrix getWeights(int w) {
+		return arena.getWeights(w);
+	}
+
+	/**
+	 * @return copy of the biases
+	 */
+	public E[] getBiases() {
+		Number[] biases = new Number[arena.numBiases()];
+		for (int b = 0; b < biases.length; b++) {
+			biases[b] = arena.getBias(b);
+		}
+		return (E[]) biases;
+	}
+	public E getBias(int b) {
+		return (E) (Number) arena.getBias(b);
+	}
+	public void setBias(int b, E bias) {
+		arena.setBias(b, bias.doubleValue());
+	}
+	public E getNextBias(int b) {
+		return (E) (Number) arena.getNextBias(b);
+	}
+	public void addToNextBias(int b, double x) {
+		arena.addToNextBias(b, x);
+	}
+
+	/**
+	 * Weights being built for the next generation, only while simultaneousChanges
+	 */
+	public Matrix[] getNextWeights() {
+		return arena.getNextWeights();
+	}
+	public Matrix getNextWeights(int w) {
+		return arena.getNextWeights(w);
+	}
+
+	/**
+	 * @return the layers' node values, as last computed
+	 */
+	public ANNLayers getLayers() {
+		return layers;
+	}
+
+	public ParameterArena getArena() {
+		return arena;
+	}
+	
+	public double getTestStepSize() {
+		return testStepSize;
+	}
+
+	public void setTestStepSize(double testStepSize) {
+		this.testStepSize = testStepSize;
+	}
+
+	public double getStepFactor() {
+		return stepFactor;
+	}
+
+	public void setStepFactor(double stepFactor) {
+		this.stepFactor = stepFactor;
+	}
+	public boolean getSimultaneousChanges() {
+		return simultaneousChanges;
+	}
+
+	/**
+	 * @return size of each layer, input layer first
+	 */
+	public int[] getLayerSizes() {
+		return layerSizes.clone();
+	}
+
+	/**
+	 * Independent MatrixANN with the same parameters, layer sizes, weights and biases. Layer values are not
+	 * copied.
+	 * 
+	 * @return
+	 */
+	public MatrixANN<E> copy() {
+		MatrixANN<E> copy = copyParameters();
+		copy.optimizer = optimizer == null ? null : optimizer.copy(); // its state follows this ANN's parameters
+		copy.layersComputed = layersComputed;
+		copy.allocationCounter = allocationCounter;
+		return copy;
+	}
+
+	/**
+	 * Like copy, for scoring only: the copy has no optimizer, and counts its layers computed and allocations on
+	 * its own, so work done on it doesn't show up in this ANN's counters
+	 * 
+	 * @return
+	 */
+	MatrixANN<E> predictionCopy() {
+		return copyParameters();
+	}
+
+	private MatrixANN<E> copyParameters() {
+		MatrixANN<E> copy = new MatrixANN<>();
+		copy.simultaneousChanges = simultaneousChanges;
+		copy.testStepSize = testStepSize;
+		copy.stepFactor = stepFactor;
+		copy.activationFunction = activationFunction;
+		copy.errorFunction = errorFunction;
+		copy.trainingAlg = trainingAlg;
+		copy.weightInitializer = weightInitializer;
+		copy.seed = seed;
+		copy.predictionCacheSize = predictionCacheSize;
+		copy.init(getLayerSizes());
+		copy.arena.restore(arena.getParams());
+		return copy;
+	}
+
+	/**
+	 * Takes the Matrix of weights between each pair of adjacent layers from the arena. They start at 0, unless
+	 * there is a weightInitializer. Each weight matrix is then filled in parallel, from its own split of one
+	 * SplittableRandom, so the result only depends on the seed.
+	 */
+	public void initWeights() {
+		if (weightInitializer == null)
+			return;
+		SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+		SplittableRandom[] randoms = new SplittableRandom[layerSizes.length - 1]; // a weight matrix between each layer
+		for (int w = 0; w < randoms.length; w++) {
+			randoms[w] = random.split(); // split in order, so the seed decides which layer gets which
+		}
+		IntStream.range(0, randoms.length).parallel()
+				.forEach(w -> weightInitializer.init(arena.getWeights(w), randoms[w]));
+	}
+
+	/**
+	 * There is one bias for each weight matrix, stored after the weights in the arena. They start at 0.
+	 */
+	public void initBiases() {
+		for (int b = 0; b < arena.numBiases(); b++) {
+			arena.setBias(b, 0);
+		}
+	}
+
+	/**
+	 * Starting from the values of layer 0 (input), calculate values for each
+	 * consecutive layer
+	 * 
+	 * Only layers that may have changed are computed: starting from the first layer whose inputs, weights, bias
+	 * or activation function changed since it was last computed. If nothing changed, this does nothing.
+	 */
+	public void processLayers() {
+		processLayers(activationFunction);
+	}
+
+	public void processLayers(ActivationFunction func) {
+		long start = allocationCounter == null ? 0 : allocationCounter.start();
+		lastFunction = func;
+		Matrix[] weights = arena.getWeights(); // one generation for the whole pass
+		for (int w = firstDirtyLayer(func); w < weights.length; w++) {
+			processLayer(w, func, weights[w]);
+		}
+		if (allocationCounter != null)
+			allocationCounter.stop(Operation.PROCESS_LAYERS, start);
+	}
+
+	/**
+	 * @return first weight matrix whose output layer needs computing with {@code func}
+	 */
+	private int firstDirtyLayer(ActivationFunction func) {
+		for (int w = 0; w < cleanLayers; w++) {
+			if (seenWeightVersions[w] != arena.weightVersion(w) || seenBiasVersions[w] != arena.biasVersion(w)
+					|| seenFunctions[w] != func)
+				return w;
+		}
+		return cleanLayers;
+	}
+
+	public void processLayer(int layer) {
+		processLayer(layer, null);
+	}
+
+	/**
+	 * Multiply weight Matrix by layer, add bias, and apply activation function (if not null). Always computes,
+	 * and leaves the layers after layer + 1 to be recomputed.
+	 * 
+	 * @param layer
+	 * @param func
+	 */
+	public void processLayer(int layer, ActivationFunction func) {
+		processLayer(layer, func, arena.getWeights(layer));
+	}
+
+	private void processLayer(int layer, ActivationFunction func, Matrix weights) {
+		if (func == null)
+			layers.setLayer(layer + 1, weights.multAdd(layers.getLayer(layer), arena.getBias(layer)));
+		else
+			layers.setLayer(layer + 1, weights.multFunc(layers.getLayer(layer), arena.getBias(layer), func));
+		seenWeightVersions[layer] = arena.weightVersion(layer);
+		seenBiasVersions[layer] = arena.biasVersion(layer);
+		seenFunctions[layer] = func;
+		if (layer <= cleanLayers)
+			cleanLayers = layer + 1; // computed from a clean layer
+		layersComputed.increment();
+	}
+
+	/**
+	 * Output for {@code input}, computed from the arena's current buffer on primitive doubles. Doesn't touch the
+	 * layers, so any number of threads can predict at once, and goes through the prediction cache if there is
+	 * one.
+	 * 
+	 * @param input
+	 * @return output vector
+	 */
+	public double[] predict(double[] input) {
+		long start = allocationCounter == null ? 0 : allocationCounter.start();
+		double[] output = predictionCache == null ? forward(input)
+				: predictionCache.get(input, arena.getVersion(), this::forward);
+		if (allocationCounter != null)
+			allocationCounter.stop(Operation.PREDICT, start);
+		return output;
+	}
+
+	/**
+	 * Like predict(input), writing the output into {@code output}. Without a prediction cache it allocates
+	 * nothing: the layers in between go through per-thread scratch arrays.
+	 * 
+	 * @param input
+	 * @param output
+	 */
+	public void predict(double[] input, double[] output) {
+		if (input.length != layerSizes[0] || output.length != layerSizes[layerSizes.length - 1])
+			throw new DifferentLengthsException("Expected " + layerSizes[0] + " inputs and "
+					+ layerSizes[layerSizes.length - 1] + " outputs");
+		long start = allocationCounter == null ? 0 : allocationCounter.start();
+		if (predictionCache != null) {
+			double[] cached = predictionCache.get(input, arena.getVersion(), this::forward);
+			System.arraycopy(cached, 0, output, 0, output.length);
+		} else {
+			forward(input, output);
+		}
+		if (allocationCounter != null)
+			allocationCounter.stop(Operation.PREDICT, start);
+	}
+
+	/**
+	 * @return the allocation counter, or null unless built with countAllocations()
+	 */
+	public AllocationCounter getAllocationCounter() {
+		return allocationCounter;
+	}
+
+	/**
+	 * @return estimated retained bytes, and bytes allocated per call if built with countAllocations()
+	 */
+	public MemoryMetrics getMemoryMetrics() {
+		return new MemoryMetrics(MemoryFootprint.estimate(this), allocationCounter);
+	}
+
+	/**
+	 * @return the prediction cache, or null if there is none
+	 */
+	public PredictionCache getPredictionCache() {
+		return predictionCache;
+	}
+
+	private double[] forward(double[] input) {
+		double[] output = new double[layerSizes[layerSizes.length - 1]];
+		forward(input, output);
+		return output;
+	}
+
+	private void forward(double[] input, double[] output) {
+		double[] params = arena.current();
+		double[][] buffers = scratch.get();
+		double[] values = input;
+		int numWeights = layerSizes.length - 1;
+		for (int w = 0; w < numWeights; w++) {
+			double[] next = w == numWeights - 1 ? output : buffers[w % 2];
+			forwardLayer(params, arena, activationFunction, layerSizes, w, values, next);
+			values = next;
+		}
+	}
+
+	/**
+	 * Same as processLayer(w, func), from {@code in} to {@code out} on primitive doubles, with the parameters in
+	 * {@code params} (laid out like {@code arena})
+	 */
+	static void forwardLayer(double[] params, ParameterArena arena, ActivationFunction func, int[] layerSizes, int w,
+			double[] in, double[] out) {
+		int rows = layerSizes[w + 1], cols = layerSizes[w];
+		double bias = params[arena.biasOffset(w)];
+		for (int r = 0, row = arena.weightOffset(w); r < rows; r++, row += cols) {
+			double sum = bias;
+			for (int c = 0; c < cols; c++) {
+				sum += params[row + c] * in[c];
+			}
+			out[r] = func == null ? sum : func.func(sum).doubleValue();
+		}
+	}
+
+	/**
+	 * @return number of layers actually computed so far by processLayer and by training algorithms, on this
+	 * ANN and its copies. Dividing by the number of weight matrices gives full forward passes.
+	 */
+	public long getLayersComputed() {
+		return layersComputed.sum();
+	}
+
+	/**
+	 * For training algorithms that compute layers themselves, to count them in getLayersComputed
+	 * 
+	 * @param layers
+	 */
+	public void countLayers(long layers) {
+		layersComputed.add(layers);
+	}
+
+	public double error(E[] a, E[] b) {
+		return errorFunction.error(a, b);
+	}
+
+	/**
+	 * @return the activation function, or null if layers are not passed through one
+	 */
+	public ActivationFunction getActivationFunction() {
+		return activationFunction;
+	}
+
+	public ErrorFunction<E> getErrorFunction() {
+		return errorFunction;
+	}
+
+	/**
+	 * Calculate appropriate step size based on difference in errors. Multiply by
+	 * stepFactor
+	 * 
+	 * @param err
+	 * @param prevErr
+	 * @return
+	 */
+	public double stepSize(double err, double prevErr) {
+		return Math.abs(stepFactor * (err - prevErr) * (err - prevErr));
+	}
+
+	public Optimizer getOptimizer() {
+		return optimizer;
+	}
+
+	public TrainingAlgorithm<E> getTrainingAlgorithm() {
+		return trainingAlg;
+	}
+
+	/**
+	 * Updates parameters [from, to) of the arena with the optimizer, given the gradient of the error. With
+	 * simultaneousChanges the new values go into the back buffer, which is then swapped in.
+	 * 
+	 * @param gradient gradient for every parameter, in the arena's layout
+	 * @param from
+	 * @param to
+	 */
+	public void applyGradient(double[] gradient, int from, int to) {
+		applyGradient(gradient, from, to, optimizer);
+	}
+
+	/**
+	 * Like applyGradient, with a given optimizer instead of the ANN's own
+	 */
+	public void applyGradient(double[] gradient, int from, int to, Optimizer optimizer) {
+		double[] params = arena.getParams();
+		if (simultaneousChanges) {
+			arena.stage();
+			optimizer.update(params, gradient, arena.getNext(), from, to);
+			arena.swap();
+		} else {
+			optimizer.update(params, gradient, params, from, to);
+			arena.touch(from, to);
+		}
+	}
+
+	/**
+	 * Start marking changes: the next weights and biases begin as copies of the current ones. O(n) in the
+	 * number of parameters.
+	 */
+	public void stageChanges() {
+		if (!simultaneousChanges)
+			return;
+		arena.stage();
+	}
+
+	/**
+	 * Make all marked changes by swapping in the next weights and biases. The swap itself is O(1); the copy is
+	 * paid in stageChanges(). Does nothing unless stageChanges() came first.
+	 */
+	public void commitChanges() {
+		if (!simultaneousChanges)
+			return;
+		arena.swap();
+	}
+
+	/**
+	 * Try adjusting parts of the ANN, processLayers, minimize error
+	 * 
+	 * @param input
+	 * @param correctOutput
+	 */
+	public void train(E[] input, E[] correctOutput) {
+		long start = allocationCounter == null ? 0 : allocationCounter.start();
+		trainingAlg.trainOne(this, input, correctOutput);
+		if (allocationCounter != null)
+			allocationCounter.stop(Operation.TRAIN_ONE, start);
+	}
+
+	/**
+	 * Train on a whole batch at once, however the training algorithm defines that
+	 * 
+	 * @param inputBatch
+	 * @param outputLabels
+	 */
+	public void train(E[][] inputBatch, E[][] outputLabels) {
+		long start = allocationCounter == null ? 0 : allocationCounter.start();
+		trainingAlg.trainBatch(this, inputBatch, outputLabels);
+		if (allocationCounter != null)
+			allocationCounter.stop(Operation.TRAIN_BATCH, start);
+	}
+
+	/**
+	 * train for primitive vectors
+	 * 
+	 * @param input
+	 * @param correctOutput
+	 */
+	public void train(double[] input, double[] correctOutput) {
+		long start = allocationCounter == null ? 0 : allocationCounter.start();
+		trainingAlg.trainOne(this, input, correctOutput);
+		if (allocationCounter != null)
+			allocationCounter.stop(Operation.TRAIN_ONE, start);
+	}
+
+	/**
+	 * Train on a batch of {@code n} samples laid out one after another: sample s is
+	 * {@code inputs[s * inputSize, (s + 1) * inputSize)} with label {@code labels[s * outputSize, (s + 1) * outputSize)}
+	 * 
+	 * @param inputs
+	 * @param labels
+	 * @param n at least 1
+	 */
+	public void trainBatch(double[] inputs, double[] labels, int n) {
+		if (n <= 0)
+			throw new IllegalArgumentException("A batch needs at least one sample, got " + n);
+		if (inputs.length != n * layerSizes[0] || labels.length != n * layerSizes[layerSizes.length - 1])
+			throw new DifferentLengthsException("Expected " + n + " samples of " + layerSizes[0] + " inputs and "
+					+ layerSizes[layerSizes.length - 1] + " outputs");
+		long start = allocationCounter == null ? 0 : allocationCounter.start();
+		trainingAlg.trainBatch(this, inputs, labels, n);
+		if (allocationCounter != null)
+			allocationCounter.stop(Operation.TRAIN_BATCH, start);
+	}
+
+	/**
+	 * Prints ANNLayers
+	 */
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+		ret.append(layers.toString());
+		return ret.toString();
+	}
+
+	public void printWeights() {
+		for (int w = 0; w < layerSizes.length - 1; w++) {
+			printWeights(w);
+		}
+	}
+
+	public void printWeights(int w) {
+		System.out.println(arena.getWeights(w));
+	}
+
+	public void printBiases() {
+		for (int i = 0; i < arena.numBiases(); i++) {
+			System.out.print(arena.getBias(i) + "  ");
+		}
+		System.out.println();
+	}
+
+	public static void printArr(Number[] arr) {
+		for (int i = 0; i < arr.length; i++) {
+			System.out.print(arr[i] + "  ");
+		}
+		System.out.println();
+	}
+
+	public static void test() {
+		System.out.println("Testing MatrixANN");
+		System.out.println("-----------------");
+		int[] layerSizes = { 2, 2, 1 };
+		MatrixANN<Double> ann = new MatrixANN(layerSizes);
+		System.out.println("Creating MatrixANN");
+		System.out.println(ann);
+		System.out.println("Printing Weights");
+		ann.printWeights();
+		System.out.println("Setting inputs");
+		ann.setInputs(new Double[] { 1., 0. });
+		System.out.println(ann);
+		System.out.println("Changing weights");
+		ann.getWeights(0).setRow(0, new Double[] { 1., 2. });
+		ann.getWeights(0).setRow(1, new Double[] { 3., 4. });
+		ann.printWeights();
+		System.out.println("Changing biases");
+		ann.arena.setBias(0, 2);
+		ann.arena.setBias(1, 1);
+		ann.printBiases();
+		System.out.println("Processing layers");
+		ann.processLayers();
+		System.out.println(ann);
+		System.out.println("Lazy evaluation: layers computed so far " + ann.getLayersComputed());
+		ann.processLayers();
+		ann.getOutput();
+		System.out.println("after processLayers and getOutput with nothing changed " + ann.getLayersComputed());
+		ann.getWeights(1).set(0, 1, 2.);
+		ann.processLayers();
+		System.out.println("after changing the last weights " + ann.getLayersComputed());
+		ann.setInputs(new Double[] { 0., 1. });
+		System.out.println("after new inputs, output " + ann.getOutput()[0] + ", " + ann.getLayersComputed());
+
+		System.out.println("Testing on logical AND with sigmoid function and simultaneousChanges");
+		ann = new MatrixANN(new int[] { 2, 1 });
+		ann.activationFunction = new SigmoidFunction();
+		int trainSize = 100;
+		double accuracy = 0;
+		int runs = 1;
+		for (int j = 0; j < runs; j++) {
+			for (int i = 0; i < trainSize; i++) {
+				Double[] input = ArrayConversionUtils.numbersToDoubles(LogicalAND.randomInputs());
+				System.out.println("Training on input");
+				printArr(input);
+				System.out.println("Setting inputs");
+				ann.setInputs(input);
+				ann.processLayers();
+				System.out.println(ann);
+				System.out.println("before training: ");
+				System.out.println(ann);
+				System.out.println("weights:");
+				ann.printWeights();
+				System.out.println("biases:");
+				ann.printBiases();
+				ann.train(input, ArrayConversionUtils.numbersToDoubles(LogicalAND.output(input)));
+				System.out.println("after training: ");
+				ann.processLayers();
+				System.out.println(ann);
+				System.out.println("weights:");
+				ann.printWeights();
+				System.out.println("biases:");
+				ann.printBiases();
+			}
+
+			for (int i = 0; i < LogicalAND.possibleInputs.length; i++) {
+				Double[] input = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i]);
+				System.out.println("Testing input");
+				printArr(input);
+				ann.setInputs(input);
+				ann.processLayers();
+				System.out.println(ann);
+			}
+		}
+
+		System.out.println("NaiveTraining moves biases: [2, 1] sigmoid trained 50 times on (1, 1) -> 1");
+		ann = new MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction()).build(new int[] { 2, 1 });
+		for (int i = 0; i < 50; i++) {
+			ann.train(new Double[] { 1., 1. }, new Double[] { 1. });
+		}
+		System.out.println("bias " + ann.getBias(0));
+		if (ann.getBias(0).doubleValue() == 0)
+			throw new AssertionError("NaiveTraining left the bias at 0");
+
+		System.out.println("NaiveTraining trains batches: one batch of (1, 1) -> 1 twice");
+		double before = ann.getBias(0).doubleValue();
+		ann.train(new Double[][] { { 1., 1. }, { 1., 1. } }, new Double[][] { { 1. }, { 1. } });
+		System.out.println("bias " + before + " -> " + ann.getBias(0));
+		if (ann.getBias(0).doubleValue() == before)
+			throw new AssertionError("NaiveTraining.trainBatch didn't train");
+		before = ann.getBias(0).doubleValue();
+		ann.trainBatch(new double[] { 1, 1, 1, 1 }, new double[] { 1, 1 }, 2);
+		System.out.println("bias " + before + " -> " + ann.getBias(0) + " through the primitive trainBatch");
+		if (ann.getBias(0).doubleValue() == before)
+			throw new AssertionError("The primitive trainBatch didn't train with NaiveTraining");
+		try {
+			ann.trainBatch(new double[0], new double[0], 0);
+			throw new AssertionError("trainBatch took an empty batch");
+		} catch (IllegalArgumentException e) {
+			System.out.println("empty batch: " + e.getMessage());
+		}
+
+		System.out.println("setInputs copies the caller's array");
+		Double[] sample = { 1., 1. };
+		ann.setInputs(sample);
+		ann.setInputs(new double[] { 0, 0 });
+		if (sample[0] != 1 || sample[1] != 1)
+			throw new AssertionError("setInputs(double[]) overwrote the array given to setInputs(E[])");
+		ann.setInputs(sample);
+		double sampleOutput = ann.getOutput()[0].doubleValue();
+		sample[0] = 0.;
+		if (ann.getOutput()[0].doubleValue() != sampleOutput)
+			throw new AssertionError("Changing the caller's array changed the inputs");
+
+		System.out.println("commitChanges without stageChanges keeps the current generation");
+		long generation = ann.getArena().getGeneration();
+		double bias = ann.getBias(0).doubleValue();
+		ann.commitChanges();
+		ann.commitChanges();
+		if (ann.getArena().getGeneration() != generation || ann.getBias(0).doubleValue() != bias)
+			throw new AssertionError("Swapped in a buffer that wasn't staged");
+
+		System.out.println("Primitive API: logical AND as one flat batch");
+		ann = new MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(new BackpropTraining<Double>(2, 1)).build(new int[] { 2, 1 });
+		double[] inputs = { 0, 0, 0, 1, 1, 0, 1, 1 };
+		double[] labels = { 0, 0, 0, 1 };
+		for (int i = 0; i < 2000; i++) {
+			ann.trainBatch(inputs, labels, 4);
+		}
+		double[] output = new double[1];
+		for (int s = 0; s < 4; s++) {
+			double[] input = Arrays.copyOfRange(inputs, 2 * s, 2 * s + 2);
+			ann.predict(input, output);
+			ann.setInputs(input);
+			System.out.println(input[0] + " AND " + input[1] + " = " + output[0] + " (getOutput "
+					+ ann.getOutput()[0] + ")");
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		JaggedMatrix.test();
+		Matrix.test();
+		FlatMatrix.test();
+		test();
+		SPSATraining.test();
+		EvolutionTraining.test();
+		BackpropTraining.test();
+		LayerPipeline.test();
+		PredictionCache.test();
+		CompiledANN.test();
+		OnlineTrainer.test();
+		Checkpointer.test();
+		Evaluator.test();
+		MemoryMetrics.test();
+		ConvergenceController.test();
+		ModelPack.test();
+		HyperparameterSweep.test();
+		DataParallelWorker.test();
+	}
 }
\ No newline at end of file
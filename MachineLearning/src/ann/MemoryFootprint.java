@@ -0,0 +1,182 @@
+package ann;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Estimate of the heap bytes a MatrixANN retains, split by what holds them
+ *
+ * Computed from the layout, not measured: arrays are a 16 byte header plus their elements, objects a 12 byte
+ * header plus their fields, both rounded up to 8 bytes, and references are 4 or 8 bytes depending on whether
+ * the JVM compresses them. Boxed values in the layers count 16 bytes each, except small integers, which the
+ * JVM shares (ANNLayers starts every node at Integer 0).
+ *
+ * Per-thread scratch for predict counts once, for one thread.
+ *
+ * @author Benito
+ *
+ */
+public class MemoryFootprint {
+	static final int REFERENCE = referenceSize();
+	static final int ARRAY_HEADER = 16;
+	static final int OBJECT_HEADER = 12;
+	static final int BOXED = align(OBJECT_HEADER + 4);
+	// matrix, orientation, base, then offset, majors, minors and version
+	private static final int FLAT_MATRIX = align(OBJECT_HEADER + 3 * REFERENCE + 3 * 4 + 8);
+
+	private final long weightBytes, biasBytes, changeBytes, layerBytes, boxedBytes, cacheBytes, otherBytes;
+
+	MemoryFootprint(long weightBytes, long biasBytes, long changeBytes, long layerBytes, long boxedBytes,
+			long cacheBytes, long otherBytes) {
+		this.weightBytes = weightBytes;
+		this.biasBytes = biasBytes;
+		this.changeBytes = changeBytes;
+		this.layerBytes = layerBytes;
+		this.boxedBytes = boxedBytes;
+		this.cacheBytes = cacheBytes;
+		this.otherBytes = otherBytes;
+	}
+
+	/**
+	 * @param ann
+	 * @return estimate of what {@code ann} retains right now
+	 */
+	public static MemoryFootprint estimate(MatrixANN ann) {
+		ParameterArena arena = ann.getArena();
+		int[] layerSizes = ann.getLayerSizes();
+		int numWeights = layerSizes.length - 1;
+		long params = arena.size() - arena.numBiases();
+
+		long views = refArray(numWeights) + (long) numWeights * FLAT_MATRIX;
+		long weightBytes = 8 * params + ARRAY_HEADER + views;
+		// biases, and their versions in an AtomicLongArray
+		long biasBytes = 8 * arena.numBiases() + doubleArray(numWeights) + align(OBJECT_HEADER + REFERENCE);
+		long changeBytes = ann.getSimultaneousChanges() ? doubleArray(arena.size()) + views : 0;
+
+		ANNLayers layers = ann.getLayers();
+		long layerBytes = refArray(layers.numLayers());
+		long boxedBytes = 0;
+		for (int layer = 0; layer < layers.numLayers(); layer++) {
+			Number[] nodes = layers.getLayer(layer);
+			layerBytes += refArray(nodes.length);
+			for (Number node : nodes) {
+				boxedBytes += boxedSize(node);
+			}
+		}
+
+		long cacheBytes = 0;
+		PredictionCache cache = ann.getPredictionCache();
+		if (cache != null) {
+			// Key, Entry, the LinkedHashMap's entry and the two vectors, plus the table slot
+			long perEntry = align(OBJECT_HEADER + REFERENCE + 4) + align(OBJECT_HEADER + 8 + REFERENCE)
+					+ align(OBJECT_HEADER + 4 + 5 * REFERENCE) + doubleArray(layerSizes[0])
+					+ doubleArray(layerSizes[numWeights]) + 2 * REFERENCE;
+			cacheBytes = cache.size() * perEntry;
+		}
+
+		int maxLayerSize = 0;
+		for (int size : layerSizes) {
+			maxLayerSize = Math.max(maxLayerSize, size);
+		}
+		long otherBytes = 2 * doubleArray(maxLayerSize) + refArray(2) // one thread's scratch
+				+ 2 * doubleArray(numWeights) + refArray(numWeights) // versions and functions seen by processLayers
+				+ align(ARRAY_HEADER + 4L * layerSizes.length);
+		return new MemoryFootprint(weightBytes, biasBytes, changeBytes, layerBytes, boxedBytes, cacheBytes,
+				otherBytes);
+	}
+
+	private static long boxedSize(Number node) {
+		if (node == null)
+			return 0;
+		if ((node instanceof Integer || node instanceof Long || node instanceof Short || node instanceof Byte)
+				&& node.longValue() >= -128 && node.longValue() <= 127)
+			return 0; // shared by the JVM's cache
+		return BOXED;
+	}
+
+	static long doubleArray(int length) {
+		return align(ARRAY_HEADER + 8L * length);
+	}
+
+	static long refArray(int length) {
+		return align(ARRAY_HEADER + (long) REFERENCE * length);
+	}
+
+	static int align(int bytes) {
+		return (bytes + 7) & ~7;
+	}
+
+	static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	private static int referenceSize() {
+		try {
+			HotSpotDiagnosticMXBean hotspot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+			return Boolean.parseBoolean(hotspot.getVMOption("UseCompressedOops").getValue()) ? 4 : 8;
+		} catch (RuntimeException e) {
+			return 4; // not HotSpot; heaps under 32 GB usually compress
+		}
+	}
+
+	/**
+	 * @return weight values in the front buffer, its header and the FlatMatrix views into it
+	 */
+	public long getWeightBytes() {
+		return weightBytes;
+	}
+
+	/**
+	 * @return bias values and their versions
+	 */
+	public long getBiasBytes() {
+		return biasBytes;
+	}
+
+	/**
+	 * @return the back buffer the next weights and biases are written to, 0 without simultaneous changes
+	 */
+	public long getChangeBytes() {
+		return changeBytes;
+	}
+
+	/**
+	 * @return the ANNLayers arrays of references, not counting the boxed values they point to
+	 */
+	public long getLayerBytes() {
+		return layerBytes;
+	}
+
+	/**
+	 * @return the boxed values in the layers
+	 */
+	public long getBoxedBytes() {
+		return boxedBytes;
+	}
+
+	/**
+	 * @return entries in the prediction cache, 0 without one
+	 */
+	public long getCacheBytes() {
+		return cacheBytes;
+	}
+
+	/**
+	 * @return scratch, lazy evaluation bookkeeping and layer sizes
+	 */
+	public long getOtherBytes() {
+		return otherBytes;
+	}
+
+	public long getTotalBytes() {
+		return weightBytes + biasBytes + changeBytes + layerBytes + boxedBytes + cacheBytes + otherBytes;
+	}
+
+	public String toString() {
+		return String.format(
+				"weights %d, biases %d, changes %d, layers %d, boxed %d, cache %d, other %d, total %d bytes%n",
+				weightBytes, biasBytes, changeBytes, layerBytes, boxedBytes, cacheBytes, otherBytes,
+				getTotalBytes());
+	}
+}
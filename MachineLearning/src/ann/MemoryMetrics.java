@@ -0,0 +1,123 @@
+package ann;
+
+import ann.AllocationCounter.Operation;
+
+/**
+ * Memory use of a MatrixANN in one place: what it retains (MemoryFootprint) and, if it was built with
+ * countAllocations(), what its calls allocate (AllocationCounter)
+ *
+ * The assert methods check both against budgets, for tests that should fail when a change makes the ANN
+ * bigger or its hot paths allocate.
+ *
+ * @author Benito
+ *
+ */
+public class MemoryMetrics {
+	private final MemoryFootprint footprint;
+	private final AllocationCounter allocations; // null unless counting
+
+	MemoryMetrics(MemoryFootprint footprint, AllocationCounter allocations) {
+		this.footprint = footprint;
+		this.allocations = allocations;
+	}
+
+	public MemoryFootprint getFootprint() {
+		return footprint;
+	}
+
+	public long getRetainedBytes() {
+		return footprint.getTotalBytes();
+	}
+
+	public boolean isCountingAllocations() {
+		return allocations != null;
+	}
+
+	/**
+	 * @return the allocation counter, or null if the ANN wasn't built with countAllocations()
+	 */
+	public AllocationCounter getAllocations() {
+		return allocations;
+	}
+
+	/**
+	 * @param op
+	 * @return mean bytes allocated per call of {@code op}
+	 */
+	public double bytesPerCall(Operation op) {
+		if (allocations == null)
+			throw new IllegalStateException("Allocations aren't counted; build the ANN with countAllocations()");
+		return allocations.bytesPerCall(op);
+	}
+
+	/**
+	 * @param budget
+	 * @throws AssertionError if the ANN retains more than {@code budget} bytes
+	 */
+	public void assertRetainedWithin(long budget) {
+		if (getRetainedBytes() > budget)
+			throw new AssertionError("Retains " + getRetainedBytes() + " bytes, budget " + budget + ": " + footprint);
+	}
+
+	/**
+	 * @param op
+	 * @param budget
+	 * @throws AssertionError if calls of {@code op} allocated more than {@code budget} bytes each on average
+	 */
+	public void assertAllocatesWithin(Operation op, double budget) {
+		if (bytesPerCall(op) > budget)
+			throw new AssertionError(op + " allocates " + bytesPerCall(op) + " bytes/call, budget " + budget);
+	}
+
+	public String toString() {
+		return "retained: " + footprint + (allocations == null ? "" : "allocated:\n" + allocations);
+	}
+
+	public static void test() {
+		System.out.println("Testing MemoryMetrics");
+		System.out.println("---------------------");
+		int[] layerSizes = { 8, 16, 4 };
+		MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(new BackpropTraining<Double>(0.5, 1)).seed(1).countAllocations().build(layerSizes);
+		MatrixANN<Double> single = new MatrixANN.MatrixANNBuilder<Double>().simultaneousChanges(false)
+				.build(layerSizes);
+		int params = ann.getArena().size();
+		int nodes = 8 + 16 + 4;
+		// both buffers of doubles, a boxed Double per node once computed, and 3 KB for headers and bookkeeping
+		long budget = 2 * 8L * params + nodes * (MemoryFootprint.REFERENCE + MemoryFootprint.BOXED) + 3072;
+		System.out.print("simultaneous changes " + ann.getMemoryMetrics().getFootprint());
+		System.out.print("single buffer        " + single.getMemoryMetrics().getFootprint());
+		ann.getMemoryMetrics().assertRetainedWithin(budget);
+		if (single.getMemoryMetrics().getFootprint().getChangeBytes() != 0)
+			throw new AssertionError("Change bytes counted without simultaneous changes");
+
+		double[] input = new double[8], output = new double[4], label = { 1, 0, 0, 1 };
+		for (int i = 0; i < 8; i++) {
+			input[i] = i / 8.;
+		}
+		ann.setInputs(input);
+		for (int i = 0; i < 200000; i++) { // warm up, so the JIT has removed what it can
+			ann.predict(input, output);
+			ann.processLayers();
+			ann.train(input, label);
+		}
+		ann.getAllocationCounter().reset();
+		for (int i = 0; i < 10000; i++) {
+			ann.predict(input, output);
+		}
+		ann.setInputs(input);
+		ann.processLayers();
+		for (int i = 0; i < 10000; i++) {
+			ann.processLayers(); // nothing changed
+		}
+		for (int i = 0; i < 10000; i++) {
+			ann.train(input, label);
+		}
+		MemoryMetrics metrics = ann.getMemoryMetrics();
+		System.out.print(metrics);
+		metrics.assertAllocatesWithin(Operation.PREDICT, 16);
+		metrics.assertAllocatesWithin(Operation.PROCESS_LAYERS, 16);
+		metrics.assertAllocatesWithin(Operation.TRAIN_ONE, 16 * params);
+		System.out.println("within budgets");
+	}
+}
@@ -0,0 +1,433 @@
+package ann;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import math.exceptions.DifferentLengthsException;
+
+/**
+ * Many small MatrixANNs with the same layer sizes, kept together so a batch of requests to different models is
+ * evaluated in one pass
+ *
+ * Layout: each model's parameters are one contiguous array in ParameterArena layout, so evaluating a model reads
+ * its weights in order, a whole cache line at a time. Adding capacity grows the array of models; the models
+ * themselves never move.
+ *
+ * The batched kernel sorts the requests by slot, so requests to the same model form a run. A run is evaluated
+ * GROUP requests at a time: each weight is read once for the group and multiplied into GROUP independent sums,
+ * so the sums don't wait on each other the way one request's dot product waits on its own previous add. When no
+ * two requests go to the same model there are no runs, so the requests are evaluated one at a time in their own
+ * order, without sorting.
+ *
+ * Models are added into free slots and removed by freeing their slot. Writes are copy-on-write: add and update
+ * fill a new parameter array and publish it with a new array of models, so a predict running meanwhile sees each
+ * model's old or new parameters, never a mix. A request to a removed model's id is an error the pack doesn't
+ * check for.
+ *
+ * All models use the pack's activation function.
+ *
+ * @author Benito
+ *
+ */
+public class ModelPack {
+	private static final int GROUP = 4; // requests to one model evaluated together
+	private final int[] layerSizes;
+	private final ParameterArena layout; // only for its offsets
+	private final int numParams;
+	private final ActivationFunction func;
+	private final BitSet live = new BitSet();
+	private volatile double[][] models; // by slot; capacity = models.length; never written once published
+	private int size;
+	private final ThreadLocal<Scratch> scratch;
+
+	/**
+	 * @param layerSizes layer sizes every model in the pack has
+	 * @param func activation function every model in the pack uses
+	 * @param initialCapacity slots to start with
+	 */
+	public ModelPack(int[] layerSizes, ActivationFunction func, int initialCapacity) {
+		this.layerSizes = layerSizes.clone();
+		this.layout = new ParameterArena(layerSizes, false);
+		this.numParams = layout.size();
+		this.func = func;
+		this.models = new double[Math.max(1, initialCapacity)][];
+		int maxLayerSize = Arrays.stream(layerSizes).max().getAsInt();
+		this.scratch = ThreadLocal.withInitial(() -> new Scratch(maxLayerSize));
+	}
+
+	/**
+	 * Copies {@code ann}'s current parameters into a free slot
+	 *
+	 * @param ann
+	 * @return the model's id, for predict and remove
+	 */
+	public synchronized int add(MatrixANN<?> ann) {
+		if (!Arrays.equals(ann.getLayerSizes(), layerSizes))
+			throw new DifferentLengthsException("Expected layer sizes " + Arrays.toString(layerSizes) + ", got "
+					+ Arrays.toString(ann.getLayerSizes()));
+		int slot = live.nextClearBit(0);
+		write(slot, ann.getArena().current());
+		live.set(slot);
+		size++;
+		return slot;
+	}
+
+	/**
+	 * Replaces model {@code id}'s parameters with {@code ann}'s current ones, e.g. after retraining it
+	 *
+	 * @param id
+	 * @param ann
+	 */
+	public synchronized void update(int id, MatrixANN<?> ann) {
+		checkLive(id);
+		write(id, ann.getArena().current());
+	}
+
+	/**
+	 * Frees model {@code id}'s slot for the next add
+	 *
+	 * @param id
+	 */
+	public synchronized void remove(int id) {
+		checkLive(id);
+		live.clear(id);
+		size--;
+	}
+
+	public synchronized boolean contains(int id) {
+		return id >= 0 && live.get(id);
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return models.length;
+	}
+
+	/**
+	 * @param id
+	 * @return copy of model {@code id}'s parameters, in ParameterArena layout
+	 */
+	public synchronized double[] getParams(int id) {
+		checkLive(id);
+		return models[id].clone();
+	}
+
+	private void checkLive(int id) {
+		if (id < 0 || !live.get(id))
+			throw new IllegalArgumentException("No model " + id + " in the pack");
+	}
+
+	/**
+	 * Publishes a copy of {@code source} as the parameters in {@code slot}, growing the pack if it's full.
+	 * Readers of the old array of models aren't disturbed.
+	 */
+	private void write(int slot, double[] source) {
+		double[][] next = Arrays.copyOf(models, slot < models.length ? models.length : models.length * 2);
+		next[slot] = Arrays.copyOf(source, numParams);
+		models = next;
+	}
+
+	/**
+	 * Output of model {@code id} for {@code input}
+	 *
+	 * @param id
+	 * @param input
+	 * @param output
+	 */
+	public void predict(int id, double[] input, double[] output) {
+		predict(new int[] { id }, input, output, 1);
+	}
+
+	/**
+	 * Evaluates {@code n} requests at once: request k asks model {@code ids[k]} for the output of
+	 * {@code inputs[k * inputSize, (k + 1) * inputSize)}, written to {@code outputs[k * outputSize, (k + 1) * outputSize)}
+	 *
+	 * @param ids
+	 * @param inputs
+	 * @param outputs
+	 * @param n
+	 */
+	public void predict(int[] ids, double[] inputs, double[] outputs, int n) {
+		int inputSize = layerSizes[0], outputSize = layerSizes[layerSizes.length - 1];
+		if (ids.length < n || inputs.length != n * inputSize || outputs.length != n * outputSize)
+			throw new DifferentLengthsException("Expected " + n + " ids, " + n + " inputs of " + inputSize
+					+ " and " + n + " outputs of " + outputSize);
+		double[][] buffer = models; // the whole batch reads one array of models, whatever is written meanwhile
+		Scratch scratch = this.scratch.get();
+		if (allDistinct(ids, n, scratch.seen)) {
+			for (int k = 0; k < n; k++) {
+				forward(buffer[ids[k]], inputs, k * inputSize, outputs, k * outputSize, scratch);
+			}
+			return;
+		}
+		int[] order = sortBySlot(ids, n, buffer.length);
+		for (int k = 0; k < n;) {
+			double[] params = buffer[ids[order[k]]];
+			int end = k + 1;
+			while (end < n && ids[order[end]] == ids[order[k]]) {
+				end++;
+			}
+			for (; k + GROUP <= end; k += GROUP) {
+				forwardGroup(params, order, k, inputs, outputs, scratch);
+			}
+			for (; k < end; k++) {
+				forward(params, inputs, order[k] * inputSize, outputs, order[k] * outputSize, scratch);
+			}
+		}
+	}
+
+	/**
+	 * @param seen all clear, and left that way
+	 * @return whether the first {@code n} ids are all different
+	 */
+	private static boolean allDistinct(int[] ids, int n, BitSet seen) {
+		int k = 0;
+		boolean distinct = true;
+		for (; k < n && distinct; k++) {
+			distinct = !seen.get(ids[k]);
+			seen.set(ids[k]);
+		}
+		for (int j = 0; j < k; j++) {
+			seen.clear(ids[j]);
+		}
+		return distinct;
+	}
+
+	/**
+	 * @return indices of the first {@code n} requests, ordered by slot
+	 */
+	private static int[] sortBySlot(int[] ids, int n, int capacity) {
+		int[] order = new int[n];
+		if ((long) n * 8 < capacity) { // few requests: sort (slot, request) pairs instead of counting every slot
+			long[] keys = new long[n];
+			for (int k = 0; k < n; k++) {
+				keys[k] = (long) ids[k] << 32 | k;
+			}
+			Arrays.sort(keys);
+			for (int k = 0; k < n; k++) {
+				order[k] = (int) keys[k];
+			}
+			return order;
+		}
+		int[] next = new int[capacity + 1];
+		for (int k = 0; k < n; k++) {
+			next[ids[k] + 1]++;
+		}
+		for (int slot = 0; slot < capacity; slot++) {
+			next[slot + 1] += next[slot];
+		}
+		for (int k = 0; k < n; k++) {
+			order[next[ids[k]]++] = k;
+		}
+		return order;
+	}
+
+	/**
+	 * Per-thread buffers for forward
+	 */
+	private static class Scratch {
+		final double[] a, b; // activations of one layer
+		final double[] groupA, groupB; // activations of one layer for GROUP requests, maxLayerSize apart
+		final int stride;
+		final BitSet seen = new BitSet();
+
+		Scratch(int maxLayerSize) {
+			a = new double[maxLayerSize];
+			b = new double[maxLayerSize];
+			groupA = new double[GROUP * maxLayerSize];
+			groupB = new double[GROUP * maxLayerSize];
+			stride = maxLayerSize;
+		}
+	}
+
+	/**
+	 * Runs one request through the model with parameters {@code params}
+	 */
+	private void forward(double[] params, double[] inputs, int inputOffset, double[] outputs, int outputOffset,
+			Scratch scratch) {
+		int last = layerSizes.length - 1;
+		double[] a = scratch.a, b = scratch.b;
+		System.arraycopy(inputs, inputOffset, a, 0, layerSizes[0]);
+		for (int w = 0; w < last; w++) {
+			MatrixANN.forwardLayer(params, layout, func, layerSizes, w, a, b);
+			double[] swap = a;
+			a = b;
+			b = swap;
+		}
+		System.arraycopy(a, 0, outputs, outputOffset, layerSizes[last]);
+	}
+
+	/**
+	 * Runs requests order[at, at + GROUP), all to the model with parameters {@code params}, through the network
+	 * together. Each sum is accumulated in the same order as MatrixANN.forwardLayer, so the outputs are the
+	 * same bits as evaluating the requests one at a time.
+	 */
+	private void forwardGroup(double[] params, int[] order, int at, double[] inputs, double[] outputs,
+			Scratch scratch) {
+		int inputSize = layerSizes[0], last = layerSizes.length - 1, stride = scratch.stride;
+		double[] a = scratch.groupA, b = scratch.groupB;
+		for (int j = 0; j < GROUP; j++) {
+			System.arraycopy(inputs, order[at + j] * inputSize, a, j * stride, inputSize);
+		}
+		for (int w = 0; w < last; w++) {
+			int rows = layerSizes[w + 1], cols = layerSizes[w];
+			double bias = params[layout.biasOffset(w)];
+			for (int r = 0, row = layout.weightOffset(w); r < rows; r++, row += cols) {
+				double s0 = bias, s1 = bias, s2 = bias, s3 = bias;
+				for (int c = 0; c < cols; c++) {
+					double x = params[row + c];
+					s0 += x * a[c];
+					s1 += x * a[stride + c];
+					s2 += x * a[2 * stride + c];
+					s3 += x * a[3 * stride + c];
+				}
+				b[r] = activate(s0);
+				b[stride + r] = activate(s1);
+				b[2 * stride + r] = activate(s2);
+				b[3 * stride + r] = activate(s3);
+			}
+			double[] swap = a;
+			a = b;
+			b = swap;
+		}
+		int outputSize = layerSizes[last];
+		for (int j = 0; j < GROUP; j++) {
+			System.arraycopy(a, j * stride, outputs, order[at + j] * outputSize, outputSize);
+		}
+	}
+
+	private double activate(double sum) {
+		return func == null ? sum : func.func(sum).doubleValue();
+	}
+
+	public static void test() {
+		System.out.println("Testing ModelPack");
+		System.out.println("-----------------");
+		// linear models, so the timing measures reading the weights rather than Math.pow in SigmoidFunction
+		int[] layerSizes = { 16, 32, 4 };
+		int inputSize = layerSizes[0], outputSize = layerSizes[2];
+		int numModels = 1000, n = 200000;
+		MatrixANN<Double>[] models = new MatrixANN[numModels];
+		ModelPack pack = new ModelPack(layerSizes, null, 16);
+		int[] idOf = new int[numModels];
+		for (int m = 0; m < numModels; m++) {
+			models[m] = new MatrixANN.MatrixANNBuilder<Double>().weightInitializer(new XavierInitializer()).seed(m)
+					.build(layerSizes);
+			models[m].getArena().setBias(0, 0.01 * m);
+			idOf[m] = pack.add(models[m]);
+		}
+		SplittableRandom random = new SplittableRandom(1);
+		int[] which = new int[n], ids = new int[n];
+		double[] inputs = new double[n * inputSize], packed = new double[n * outputSize],
+				separate = new double[n * outputSize];
+		for (int k = 0; k < n; k++) {
+			which[k] = random.nextInt(numModels);
+			ids[k] = idOf[which[k]];
+		}
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = random.nextDouble(-1, 1);
+		}
+
+		double[] input = new double[inputSize], output = new double[outputSize];
+		long separateNanos = Long.MAX_VALUE, packedNanos = Long.MAX_VALUE;
+		for (int rep = 0; rep < 8; rep++) {
+			long start = System.nanoTime();
+			for (int k = 0; k < n; k++) {
+				System.arraycopy(inputs, k * inputSize, input, 0, inputSize);
+				models[which[k]].predict(input, output);
+				System.arraycopy(output, 0, separate, k * outputSize, outputSize);
+			}
+			separateNanos = Math.min(separateNanos, System.nanoTime() - start);
+			start = System.nanoTime();
+			pack.predict(ids, inputs, packed, n);
+			packedNanos = Math.min(packedNanos, System.nanoTime() - start);
+		}
+		System.out.println(numModels + " models in " + pack.capacity() + " slots, " + n + " requests: one model at a time "
+				+ separateNanos / 1000000 + " ms, packed " + packedNanos / 1000000 + " ms, max difference "
+				+ maxDifference(packed, separate));
+		if (maxDifference(packed, separate) != 0)
+			throw new AssertionError("The pack's outputs differ from the models'");
+		if (packedNanos >= separateNanos)
+			throw new AssertionError("The pack was no faster than one model at a time");
+
+		// swap a model out and a new one in, reusing its slot
+		pack.remove(idOf[7]);
+		MatrixANN<Double> replacement = new MatrixANN.MatrixANNBuilder<Double>()
+				.weightInitializer(new XavierInitializer()).seed(numModels).build(layerSizes);
+		int id = pack.add(replacement);
+		System.arraycopy(inputs, 0, input, 0, inputSize);
+		double[] fromPack = new double[outputSize];
+		pack.predict(id, input, fromPack);
+		replacement.predict(input, output);
+		System.out.println("replacement got slot " + id + " (was " + idOf[7] + "), max difference "
+				+ maxDifference(fromPack, output) + ", " + pack.size() + " models");
+		if (id != idOf[7] || maxDifference(fromPack, output) != 0)
+			throw new AssertionError("The replacement didn't take over the freed slot");
+
+		// one request per model: evaluated in order, without sorting
+		int[] distinct = new int[100];
+		double[] fewInputs = Arrays.copyOf(inputs, distinct.length * inputSize);
+		double[] fewPacked = new double[distinct.length * outputSize], fewSeparate = new double[fewPacked.length];
+		for (int k = 0; k < distinct.length; k++) {
+			int m = (k * 37 + 11) % numModels;
+			distinct[k] = idOf[m];
+			System.arraycopy(fewInputs, k * inputSize, input, 0, inputSize);
+			models[m].predict(input, output);
+			System.arraycopy(output, 0, fewSeparate, k * outputSize, outputSize);
+		}
+		pack.predict(distinct, fewInputs, fewPacked, distinct.length);
+		System.out.println(distinct.length + " requests to different models, max difference "
+				+ maxDifference(fewPacked, fewSeparate));
+		if (maxDifference(fewPacked, fewSeparate) != 0)
+			throw new AssertionError("Requests to different models gave different outputs");
+
+		// update publishes new parameters and leaves the old ones alone
+		double[][] before = pack.models;
+		models[3].getArena().setBias(0, -1);
+		pack.update(idOf[3], models[3]);
+		pack.predict(idOf[3], input, fromPack);
+		models[3].predict(input, output);
+		System.out.println("after update max difference " + maxDifference(fromPack, output));
+		if (maxDifference(fromPack, output) != 0)
+			throw new AssertionError("update didn't take");
+		if (before[idOf[3]][pack.layout.biasOffset(0)] != 0.01 * 3)
+			throw new AssertionError("update wrote over parameters a predict could be reading");
+
+		// the pack applies its activation function like the models do
+		ActivationFunction sigmoid = new SigmoidFunction();
+		int[] small = { 4, 8, 2 };
+		ModelPack sigmoidPack = new ModelPack(small, sigmoid, 4);
+		MatrixANN<Double>[] sigmoidModels = new MatrixANN[10];
+		for (int m = 0; m < sigmoidModels.length; m++) {
+			sigmoidModels[m] = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(sigmoid)
+					.weightInitializer(new XavierInitializer()).seed(m).build(small);
+			sigmoidPack.add(sigmoidModels[m]);
+		}
+		int requests = 1000;
+		int[] sigmoidIds = new int[requests];
+		double[] sigmoidInputs = Arrays.copyOf(inputs, requests * 4), sigmoidPacked = new double[requests * 2];
+		double[] smallInput = new double[4], smallOutput = new double[2], sigmoidSeparate = new double[requests * 2];
+		for (int k = 0; k < requests; k++) {
+			sigmoidIds[k] = random.nextInt(sigmoidModels.length);
+			System.arraycopy(sigmoidInputs, k * 4, smallInput, 0, 4);
+			sigmoidModels[sigmoidIds[k]].predict(smallInput, smallOutput);
+			System.arraycopy(smallOutput, 0, sigmoidSeparate, k * 2, 2);
+		}
+		sigmoidPack.predict(sigmoidIds, sigmoidInputs, sigmoidPacked, requests);
+		System.out.println("sigmoid pack, max difference " + maxDifference(sigmoidPacked, sigmoidSeparate));
+		if (maxDifference(sigmoidPacked, sigmoidSeparate) != 0)
+			throw new AssertionError("The sigmoid pack's outputs differ from the models'");
+	}
+
+	private static double maxDifference(double[] a, double[] b) {
+		double max = 0;
+		for (int i = 0; i < a.length; i++) {
+			max = Math.max(max, Math.abs(a[i] - b[i]));
+		}
+		return max;
+	}
+}
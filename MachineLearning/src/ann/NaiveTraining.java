@@ -1,91 +1,119 @@
-package ann;
-
-public class NaiveTraining<E extends Number> implements TrainingAlgorithm<E> {
-
-	@Override
-	public void adjustWeights(MatrixANN<E> ann, E[] correctOutput) {
-		ann.processLayers();
-		double prevErr = ann.error(correctOutput, ann.getOutput());
-		System.out.println("correctOutput " + correctOutput[0]);
-		for (int w = 0; w < ann.getWeights().length; w++) { // loop through each weight matrix in ann
-			for (int r = 0; r < ann.getWeights(w).numRows(); r++) { // loop through each weight in weight matrix
-				for (int c = 0; c < ann.getWeights(w).numCols(); c++) {
-					System.out.println("Before increase weight: " + ann.getOutput()[0]);
-					ann.getWeights(w).addTo(r, c, ann.getTestStepSize());
-					ann.processLayers();
-					double err = ann.error(correctOutput, ann.getOutput());
-					System.out.println("After increase weight: " + ann.getOutput()[0]);
-					ann.getWeights(w).addTo(r, c, -ann.getTestStepSize());
-					if (ann.getSimultaneousChanges()) {
-						if (err < prevErr)
-							ann.getWeightChanges(w).set(r, c, ann.stepSize(err, prevErr));
-						else
-							ann.getWeightChanges(w).set(r, c, -ann.stepSize(err, prevErr));
-					} else {
-						if (err < prevErr)
-							ann.getWeights(w).addTo(r, c, ann.stepSize(err, prevErr));
-						else
-							ann.getWeights(w).addTo(r, c, -ann.stepSize(err, prevErr));
-						prevErr = err;
-					}
-				}
-			}
-		}
-	}
-
-	@Override
-	public void adjustBiases(MatrixANN<E> ann, E[] correctOutput) {
-		ann.processLayers();
-		double prevErr = ann.error(correctOutput, ann.getOutput());
-		for (int b = 0; b < ann.getBiases().length; b++) {
-			ann.setBias(b, (E)(Number)(ann.getBias(b).doubleValue() + ann.getTestStepSize()));
-			ann.processLayers();
-			ann.setBias(b, (E)(Number)(ann.getBias(b).doubleValue() - ann.getTestStepSize()));
-			double err = ann.error(correctOutput, ann.getOutput());
-			if (ann.getSimultaneousChanges()) {
-				if (err < prevErr)
-					ann.setBiasChange(b, (E)(Number)ann.stepSize(err, prevErr));
-				else
-					ann.setBiasChange(b, (E)(Number)(-ann.stepSize(err, prevErr)));
-			} else {
-				if (err < prevErr)
-					ann.setBias(b, (E)(Number)(ann.getBias(b).doubleValue() + ann.stepSize(err, prevErr)));
-				else
-					ann.setBias(b, (E)(Number)(ann.getBias(b).doubleValue() - ann.stepSize(err, prevErr)));
-				prevErr = err;
-			}
-		}
-	}
-	
-	/** 
-	 * Make all marked changes
-	 */
-	public void commitChanges(MatrixANN<E> ann) {
-		if (!ann.getSimultaneousChanges())
-			return;
-		for (int w = 0; w < ann.getWeights().length; w++) { // loop through each weight matrix in ann
-			for (int r = 0; r < ann.getWeights(w).numRows(); r++) { // loop through each weight in weight matrix
-				for (int c = 0; c < ann.getWeights(w).numCols(); c++) {
-					ann.getWeights(w).addTo(r, c, ann.getWeightChanges(w).get(r, c));
-				}
-			}
-		}
-		for (int b = 0; b < ann.getBiases().length; b++) {
-			ann.setBias(b, (E)(Number)(ann.getBias(b).doubleValue() + ann.getBiasChange(b).doubleValue()));
-		}
-	}
-
-	@Override
-	public void trainOne(MatrixANN<E> ann, E[] input, E[] correctOutput) {
-		ann.setInputs(input);
-		adjustWeights(ann, correctOutput);
-		adjustBiases(ann, correctOutput);
-		commitChanges(ann);		
-	}
-
-	@Override
-	public void trainBatch(MatrixANN<E> ann, E[][] inputBatch, E[][] outputLabels) {
-		
-	}
-
-}
+package ann;
+
+import math.exceptions.DifferentLengthsException;
+
+public class NaiveTraining<E extends Number> implements TrainingAlgorithm<E> {
+	private double[] gradient = new double[0];
+
+	@Override
+	public void adjustWeights(MatrixANN<E> ann, E[] correctOutput) {
+		if (ann.getOptimizer() != null) {
+			optimizerStep(ann, correctOutput, 0, ann.getArena().biasOffset(0));
+			return;
+		}
+		ann.processLayers();
+		double prevErr = ann.error(correctOutput, ann.getOutput());
+		for (int w = 0; w < ann.getWeights().length; w++) { // loop through each weight matrix in ann
+			for (int r = 0; r < ann.getWeights(w).numRows(); r++) { // loop through each weight in weight matrix
+				for (int c = 0; c < ann.getWeights(w).numCols(); c++) {
+					ann.getWeights(w).addTo(r, c, ann.getTestStepSize());
+					ann.processLayers();
+					double err = ann.error(correctOutput, ann.getOutput());
+					ann.getWeights(w).addTo(r, c, -ann.getTestStepSize());
+					if (ann.getSimultaneousChanges()) {
+						if (err < prevErr)
+							ann.getNextWeights(w).addTo(r, c, ann.stepSize(err, prevErr));
+						else
+							ann.getNextWeights(w).addTo(r, c, -ann.stepSize(err, prevErr));
+					} else {
+						if (err < prevErr)
+							ann.getWeights(w).addTo(r, c, ann.stepSize(err, prevErr));
+						else
+							ann.getWeights(w).addTo(r, c, -ann.stepSize(err, prevErr));
+						prevErr = err;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void adjustBiases(MatrixANN<E> ann, E[] correctOutput) {
+		if (ann.getOptimizer() != null) {
+			optimizerStep(ann, correctOutput, ann.getArena().biasOffset(0), ann.getArena().size());
+			return;
+		}
+		ann.processLayers();
+		double prevErr = ann.error(correctOutput, ann.getOutput());
+		for (int b = 0; b < ann.getBiases().length; b++) {
+			ann.setBias(b, (E)(Number)(ann.getBias(b).doubleValue() + ann.getTestStepSize()));
+			ann.processLayers();
+			double err = ann.error(correctOutput, ann.getOutput());
+			ann.setBias(b, (E)(Number)(ann.getBias(b).doubleValue() - ann.getTestStepSize()));
+			if (ann.getSimultaneousChanges()) {
+				if (err < prevErr)
+					ann.addToNextBias(b, ann.stepSize(err, prevErr));
+				else
+					ann.addToNextBias(b, -ann.stepSize(err, prevErr));
+			} else {
+				if (err < prevErr)
+					ann.setBias(b, (E)(Number)(ann.getBias(b).doubleValue() + ann.stepSize(err, prevErr)));
+				else
+					ann.setBias(b, (E)(Number)(ann.getBias(b).doubleValue() - ann.stepSize(err, prevErr)));
+				prevErr = err;
+			}
+		}
+	}
+	
+	/**
+	 * Probes parameters [from, to) one at a time like adjustWeights does, but turns each probe into a
+	 * forward-difference gradient (err - prevErr) / testStepSize and lets the ANN's Optimizer apply all of them
+	 * at once
+	 */
+	private void optimizerStep(MatrixANN<E> ann, E[] correctOutput, int from, int to) {
+		ParameterArena arena = ann.getArena();
+		double[] params = arena.getParams();
+		if (gradient.length != params.length)
+			gradient = new double[params.length];
+		double h = ann.getTestStepSize();
+		ann.processLayers();
+		double prevErr = ann.error(correctOutput, ann.getOutput());
+		for (int i = from; i < to; i++) {
+			double saved = params[i];
+			params[i] = saved + h;
+			arena.touch(i, i + 1);
+			ann.processLayers();
+			gradient[i] = (ann.error(correctOutput, ann.getOutput()) - prevErr) / h;
+			params[i] = saved;
+			arena.touch(i, i + 1);
+		}
+		ann.applyGradient(gradient, from, to);
+	}
+
+	@Override
+	public void trainOne(MatrixANN<E> ann, E[] input, E[] correctOutput) {
+		ann.setInputs(input);
+		if (ann.getOptimizer() != null) {
+			optimizerStep(ann, correctOutput, 0, ann.getArena().size());
+			return;
+		}
+		ann.stageChanges();
+		adjustWeights(ann, correctOutput);
+		adjustBiases(ann, correctOutput);
+		ann.commitChanges();
+	}
+
+	/**
+	 * No batch form of its own: trains on each sample in turn, like trainOne
+	 */
+	@Override
+	public void trainBatch(MatrixANN<E> ann, E[][] inputBatch, E[][] outputLabels) {
+		if (inputBatch.length != outputLabels.length)
+			throw new DifferentLengthsException("Got " + inputBatch.length + " inputs but " + outputLabels.length
+					+ " labels");
+		for (int s = 0; s < inputBatch.length; s++) {
+			trainOne(ann, inputBatch[s], outputLabels[s]);
+		}
+	}
+
+}
@@ -0,0 +1,411 @@
+package ann;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import math.ArrayConversionUtils;
+import math.LogicalAND;
+import math.exceptions.DifferentLengthsException;
+
+/**
+ * Keeps training a MatrixANN on a live stream of samples while other threads predict from it
+ * 
+ * Samples go into a bounded queue (offer drops them when it's full, put waits), so memory stays bounded however
+ * long the stream runs. offer and put check each sample's lengths against the ANN, so a malformed event is
+ * thrown back to its producer instead of stopping training. Once the trainer has stopped, because it failed or
+ * was closed, they throw instead of queueing samples nobody will take. One trainer thread owns the ANN: it takes
+ * samples off the queue and trains on them with the ANN's own training algorithm, so no other thread ever
+ * touches the working parameters.
+ * 
+ * Readers use Snapshots instead. Every {@code publishEvery} samples, or {@code publishIntervalMillis} after the
+ * last publish if samples have come in since, the trainer copies the parameters into a new immutable Snapshot
+ * and swaps it into an AtomicReference (read-copy-update). A reader just reads the reference: it never blocks,
+ * never waits for training, and always sees one whole generation of weights. Old snapshots are garbage once
+ * no reader holds them.
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class OnlineTrainer<E extends Number> implements AutoCloseable {
+	private static final Sample STOP = new Sample(null, null);
+
+	private final MatrixANN<E> ann;
+	private final int inputSize, outputSize;
+	private final BlockingQueue<Sample> queue;
+	private final int publishEvery;
+	private final long publishIntervalNanos;
+	private final AtomicReference<Snapshot> published = new AtomicReference<>();
+	private final AtomicLong trained = new AtomicLong(), dropped = new AtomicLong(), publishes = new AtomicLong();
+	private final Thread trainer;
+	private volatile RuntimeException error;
+
+	private static class Sample {
+		final double[] input, label;
+
+		Sample(double[] input, double[] label) {
+			this.input = input;
+			this.label = label;
+		}
+	}
+
+	/**
+	 * Parameters of the ANN as they were at one point of training. Never changes, so any number of threads can
+	 * predict from it.
+	 */
+	public static class Snapshot {
+		private final double[] params;
+		private final ParameterArena layout; // only for its offsets, which never change
+		private final int[] layerSizes;
+		private final ActivationFunction func;
+		private final long version, samples;
+		private final ThreadLocal<double[][]> scratch;
+
+		private Snapshot(MatrixANN<?> ann, long version, long samples) {
+			this.params = ann.getArena().snapshot();
+			this.layout = ann.getArena();
+			this.layerSizes = ann.getLayerSizes();
+			this.func = ann.getActivationFunction();
+			this.version = version;
+			this.samples = samples;
+			int maxLayerSize = Arrays.stream(layerSizes).max().getAsInt();
+			this.scratch = ThreadLocal
+					.withInitial(() -> new double[][] { new double[maxLayerSize], new double[maxLayerSize] });
+		}
+
+		/**
+		 * Output for {@code input} with this snapshot's parameters, written into {@code output}
+		 * 
+		 * @param input
+		 * @param output
+		 */
+		public void predict(double[] input, double[] output) {
+			int last = layerSizes.length - 1;
+			if (input.length != layerSizes[0] || output.length != layerSizes[last])
+				throw new DifferentLengthsException("Expected " + layerSizes[0] + " inputs and " + layerSizes[last]
+						+ " outputs");
+			double[][] buffers = scratch.get();
+			double[] values = input;
+			for (int w = 0; w < last; w++) {
+				double[] next = w == last - 1 ? output : buffers[w % 2];
+				MatrixANN.forwardLayer(params, layout, func, layerSizes, w, values, next);
+				values = next;
+			}
+		}
+
+		/**
+		 * @return how many snapshots were published before this one
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return samples trained on when this snapshot was taken
+		 */
+		public long getSamples() {
+			return samples;
+		}
+
+		/**
+		 * @return copy of the parameters, in ParameterArena layout
+		 */
+		public double[] getParams() {
+			return params.clone();
+		}
+	}
+
+	/**
+	 * Starts training {@code ann} in the background. Don't use {@code ann} directly afterwards; predict through
+	 * the snapshots.
+	 * 
+	 * @param ann
+	 * @param queueCapacity most samples waiting to be trained on
+	 * @param publishEvery publish a snapshot after this many samples
+	 * @param publishIntervalMillis publish at least this often while samples are coming in
+	 */
+	public OnlineTrainer(MatrixANN<E> ann, int queueCapacity, int publishEvery, long publishIntervalMillis) {
+		this.ann = ann;
+		int[] layerSizes = ann.getLayerSizes();
+		this.inputSize = layerSizes[0];
+		this.outputSize = layerSizes[layerSizes.length - 1];
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.publishEvery = publishEvery;
+		this.publishIntervalNanos = TimeUnit.MILLISECONDS.toNanos(publishIntervalMillis);
+		published.set(new Snapshot(ann, 0, 0));
+		trainer = new Thread(this::train, "online-trainer");
+		trainer.setDaemon(true);
+		trainer.start();
+	}
+
+	/**
+	 * Queues a sample if there is room. The arrays are copied.
+	 * 
+	 * @param input
+	 * @param label
+	 * @return false if the queue was full and the sample was dropped
+	 * @throws DifferentLengthsException if the sample doesn't fit the ANN
+	 * @throws IllegalStateException if the trainer failed or was closed
+	 */
+	public boolean offer(double[] input, double[] label) {
+		checkSample(input, label);
+		checkTrainer();
+		if (queue.offer(new Sample(input.clone(), label.clone())))
+			return true;
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Queues a sample, waiting for room. The arrays are copied.
+	 * 
+	 * @param input
+	 * @param label
+	 * @throws InterruptedException
+	 * @throws DifferentLengthsException if the sample doesn't fit the ANN
+	 * @throws IllegalStateException if the trainer stops while waiting
+	 */
+	public void put(double[] input, double[] label) throws InterruptedException {
+		checkSample(input, label);
+		Sample sample = new Sample(input.clone(), label.clone());
+		do {
+			checkTrainer();
+		} while (!queue.offer(sample, 10, TimeUnit.MILLISECONDS));
+	}
+
+	private void checkSample(double[] input, double[] label) {
+		if (input.length != inputSize || label.length != outputSize)
+			throw new DifferentLengthsException("Expected " + inputSize + " inputs and " + outputSize
+					+ " outputs, got " + input.length + " and " + label.length);
+	}
+
+	/**
+	 * @throws IllegalStateException if the trainer failed or was closed
+	 */
+	private void checkTrainer() {
+		if (error != null)
+			throw new IllegalStateException("The trainer failed", error);
+		if (!trainer.isAlive())
+			throw new IllegalStateException("The trainer has stopped");
+	}
+
+	/**
+	 * @return the latest published snapshot. Hold on to it to make several predictions with the same weights.
+	 */
+	public Snapshot snapshot() {
+		return published.get();
+	}
+
+	/**
+	 * Predicts with the latest published snapshot
+	 * 
+	 * @param input
+	 * @param output
+	 */
+	public void predict(double[] input, double[] output) {
+		published.get().predict(input, output);
+	}
+
+	private void train() {
+		long sinceUpdate = 0;
+		long lastPublish = System.nanoTime();
+		try {
+			while (true) {
+				Sample sample = queue.poll(Math.max(1, publishIntervalNanos), TimeUnit.NANOSECONDS);
+				if (sample == STOP)
+					break;
+				if (sample != null) {
+					ann.train(sample.input, sample.label);
+					trained.incrementAndGet();
+					sinceUpdate++;
+				}
+				if (sinceUpdate > 0
+						&& (sinceUpdate >= publishEvery || System.nanoTime() - lastPublish >= publishIntervalNanos)) {
+					publish();
+					sinceUpdate = 0;
+					lastPublish = System.nanoTime();
+				}
+			}
+			if (sinceUpdate > 0)
+				publish();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			error = e;
+		}
+	}
+
+	private void publish() {
+		published.set(new Snapshot(ann, publishes.incrementAndGet(), trained.get()));
+	}
+
+	public long getTrained() {
+		return trained.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getPublishes() {
+		return publishes.get();
+	}
+
+	/**
+	 * @return samples waiting to be trained on
+	 */
+	public int getBacklog() {
+		return queue.size();
+	}
+
+	/**
+	 * @return what stopped the trainer, or null if it's fine
+	 */
+	public RuntimeException getError() {
+		return error;
+	}
+
+	/**
+	 * Trains on the samples already queued, publishes a last snapshot and stops the trainer. If interrupted,
+	 * stops waiting and keeps the thread's interrupt status.
+	 */
+	@Override
+	public void close() {
+		try {
+			while (trainer.isAlive() && !queue.offer(STOP, 10, TimeUnit.MILLISECONDS)) {
+				// the queue is full; keep trying while the trainer drains it
+			}
+			trainer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public static void test() {
+		System.out.println("Testing OnlineTrainer on a stream of logical AND samples");
+		System.out.println("---------------------------------------------------------");
+		MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(new BackpropTraining<Double>(2, 1)).build(new int[] { 2, 1 });
+		Thread[] readers = new Thread[3];
+		MatrixANN<Double>[] references = new MatrixANN[readers.length]; // made before the trainer owns ann
+		for (int t = 0; t < readers.length; t++) {
+			references[t] = ann.predictionCopy();
+		}
+		OnlineTrainer<Double> online = new OnlineTrainer<>(ann, 256, 100, 5);
+		Snapshot first = online.snapshot();
+		double[] firstParams = first.getParams();
+		AtomicLong predictions = new AtomicLong(), torn = new AtomicLong(), backwards = new AtomicLong();
+		try (online) {
+			for (int t = 0; t < readers.length; t++) {
+				MatrixANN<Double> reference = references[t];
+				readers[t] = new Thread(() -> {
+					double[] output = new double[1], expected = new double[1];
+					SplittableRandom random = new SplittableRandom();
+					long lastVersion = -1;
+					while (online.getTrained() < 20000 && online.getError() == null) {
+						Snapshot snapshot = online.snapshot();
+						if (snapshot.getVersion() < lastVersion)
+							backwards.incrementAndGet();
+						lastVersion = snapshot.getVersion();
+						double[] input = ArrayConversionUtils.numbersToPrimitiveDoubles(LogicalAND.randomInputs(random));
+						snapshot.predict(input, output);
+						// a torn read would mix parameters from two publishes; the snapshot's own params must
+						// give exactly the same output
+						reference.getArena().restore(snapshot.getParams());
+						reference.predict(input, expected);
+						if (output[0] != expected[0])
+							torn.incrementAndGet();
+						predictions.incrementAndGet();
+					}
+				});
+				readers[t].start();
+			}
+			SplittableRandom random = new SplittableRandom(1);
+			for (int i = 0; i < 20000; i++) {
+				Number[] input = LogicalAND.randomInputs(random);
+				online.put(ArrayConversionUtils.numbersToPrimitiveDoubles(input),
+						ArrayConversionUtils.numbersToPrimitiveDoubles(LogicalAND.output(input)));
+			}
+			for (Thread reader : readers) {
+				reader.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		System.out.println("trained " + online.getTrained() + ", published " + online.getPublishes() + ", dropped "
+				+ online.getDropped() + ", predictions " + predictions.get() + ", torn " + torn.get()
+				+ ", snapshots going backwards " + backwards.get());
+		if (torn.get() != 0)
+			throw new AssertionError(torn.get() + " predictions didn't match their snapshot's parameters");
+		if (backwards.get() != 0)
+			throw new AssertionError("A reader saw an older snapshot after a newer one");
+		if (!Arrays.equals(first.getParams(), firstParams))
+			throw new AssertionError("The first snapshot changed while training went on");
+		double[] output = new double[1];
+		for (Number[] input : LogicalAND.possibleInputs) {
+			online.predict(ArrayConversionUtils.numbersToPrimitiveDoubles(input), output);
+			System.out.println(input[0] + " AND " + input[1] + " = " + output[0]);
+		}
+
+		System.out.println("A malformed sample is rejected by put, and the trainer keeps going");
+		OnlineTrainer<Double> checked = new OnlineTrainer<>(ann, 16, 1, 5);
+		try (checked) {
+			try {
+				checked.put(new double[3], new double[1]);
+				throw new AssertionError("put took 3 inputs for a [2, 1] ANN");
+			} catch (DifferentLengthsException e) {
+				System.out.println("put threw: " + e.getMessage());
+			}
+			try {
+				checked.offer(new double[2], new double[0]);
+				throw new AssertionError("offer took an empty label");
+			} catch (DifferentLengthsException e) {
+				System.out.println("offer threw: " + e.getMessage());
+			}
+			checked.put(new double[] { 1, 1 }, new double[] { 1 });
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (checked.getError() != null || checked.getTrained() != 1)
+			throw new AssertionError("The trainer didn't train on the good sample");
+
+		System.out.println("A fault in the training algorithm stops the trainer; put then throws instead of waiting");
+		MatrixANN<Double> faulty = new MatrixANN.MatrixANNBuilder<Double>().trainingAlgorithm(new TrainingAlgorithm() {
+			@Override
+			public void trainOne(MatrixANN ann, Number[] input, Number[] correctOutput) {
+				throw new IllegalStateException("fault");
+			}
+
+			@Override
+			public void trainBatch(MatrixANN ann, Number[][] inputBatch, Number[][] outputLabels) {
+				throw new IllegalStateException("fault");
+			}
+
+			@Override
+			public void adjustWeights(MatrixANN ann, Number[] correctOutput) {
+			}
+
+			@Override
+			public void adjustBiases(MatrixANN ann, Number[] correctOutput) {
+			}
+		}).build(new int[] { 2, 1 });
+		OnlineTrainer<Double> failing = new OnlineTrainer<>(faulty, 1, 100, 5);
+		try (failing) {
+			for (int i = 0; i < 1000; i++) {
+				failing.put(new double[2], new double[1]);
+			}
+			throw new AssertionError("put kept queueing for a failed trainer");
+		} catch (IllegalStateException e) {
+			System.out.println("put threw: " + e.getMessage() + ", cause " + e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package ann;
+
+/**
+ * Turns a gradient into an update of a MatrixANN's parameters
+ * 
+ * Works on the flat ParameterArena layout. Implementations keep any per-parameter state (momentum, moment
+ * estimates) in primitive arrays parallel to the parameters, and compute each parameter's new value in one
+ * pass.
+ * 
+ * Set one with MatrixANNBuilder.optimizer. Training algorithms estimate the gradient and hand it to
+ * MatrixANN.applyGradient, which calls this.
+ * 
+ * @author Benito
+ *
+ */
+public interface Optimizer {
+	/**
+	 * For each i in [from, to), writes the new value of {@code params[i]} into {@code target[i]}, given the
+	 * gradient of the error {@code gradient[i]}. {@code target} may be {@code params}.
+	 * 
+	 * @param params
+	 * @param gradient
+	 * @param target
+	 * @param from
+	 * @param to
+	 */
+	void update(double[] params, double[] gradient, double[] target, int from, int to);
+
+	/**
+	 * Independent optimizer with the same settings and a copy of the state, e.g. for a copy of the ANN, so the
+	 * two don't step each other's moment estimates
+	 * 
+	 * @return
+	 */
+	Optimizer copy();
+
+	/**
+	 * Copy of the optimizer's state, so a checkpoint can resume training exactly
+	 * 
+	 * @return
+	 */
+	default double[][] getState() {
+		return new double[0][];
+	}
+
+	/**
+	 * Restores state from getState
+	 * 
+	 * @param state
+	 */
+	default void setState(double[][] state) {
+	}
+}
@@ -0,0 +1,307 @@
+package ann;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import math.FlatMatrix;
+
+/**
+ * All the weights and biases of a MatrixANN laid out in one flat double[]
+ *
+ * Layout: weight matrix 0 (row-major), weight matrix 1, ..., then one bias per weight matrix.
+ *
+ * Each weight matrix is handed out as a FlatMatrix view into the buffer, so the ANN can keep using the Matrix
+ * API, while whole-network operations (snapshot, restore, averaging, norms) are single passes over one array.
+ *
+ * Double buffering (for simultaneousChanges)
+ * The parameters in use are the front buffer. A training step calls stage() to copy them into the back buffer,
+ * writes the next weights and biases there, then calls swap(), which makes the back buffer the front. Each
+ * buffer keeps its own FlatMatrix views, and the front buffer, its views and its generation number are
+ * published together in one immutable Generation through a volatile field, so a reader that grabs current()
+ * or getWeights() once sees one whole generation, never views from two. The trainer never writes into the
+ * front buffer through the next* views. A reader must be done with a generation before the step after next
+ * stages into it again.
+ *
+ * Writes to the front buffer (the views from getWeights(), setBias, restore, average, or getParams() directly)
+ * are not reader-safe: a concurrent reader may see them half done. That includes the probes of NaiveTraining
+ * and SPSATraining, which perturb the front buffer in place and then put it back. Train with those on the
+ * same thread as the readers, or read from a copy.
+ *
+ * Versions
+ * Each weight matrix (see FlatMatrix.getVersion) and each bias has a version that goes up whenever it changes,
+ * so the ANN only recomputes layers whose parameters moved. The counters are volatile or atomic, so readers on
+ * other threads (e.g. the PredictionCache) see them go up. Writes through the views, setBias, swap, restore
+ * and average count; code that writes into getParams() directly must call touch() for the range it changed.
+ *
+ * @author Benito
+ *
+ */
+public class ParameterArena {
+	private volatile Generation front;
+	private Generation back; // null unless the ANN makes simultaneous changes
+	private boolean staged; // stage() was called since the last swap
+	private final FlatMatrix[] frontViews, backViews; // each buffer's views, whichever is the front
+	private final int biasOffset;
+	private final AtomicLongArray biasVersions;
+
+	/**
+	 * A buffer with its views, and which swap made it the front
+	 */
+	private static final class Generation {
+		final double[] params;
+		final FlatMatrix[] weights;
+		final long number;
+
+		Generation(double[] params, FlatMatrix[] weights, long number) {
+			this.params = params;
+			this.weights = weights;
+			this.number = number;
+		}
+	}
+
+	/**
+	 * @param layerSizes size of each layer of the ANN
+	 * @param doubleBuffered whether to allocate a back buffer for the next weights and biases
+	 */
+	public ParameterArena(int[] layerSizes, boolean doubleBuffered) {
+		int numWeights = layerSizes.length - 1;
+		int size = 0;
+		for (int w = 0; w < numWeights; w++) {
+			size += layerSizes[w + 1] * layerSizes[w];
+		}
+		biasOffset = size;
+		size += numWeights;
+		biasVersions = new AtomicLongArray(numWeights);
+
+		front = new Generation(new double[size], new FlatMatrix[numWeights], 0);
+		if (doubleBuffered)
+			back = new Generation(new double[size], new FlatMatrix[numWeights], 0);
+		for (int w = 0, offset = 0; w < numWeights; w++) {
+			int rows = layerSizes[w + 1];
+			int cols = layerSizes[w];
+			front.weights[w] = new FlatMatrix(front.params, offset, rows, cols);
+			if (doubleBuffered)
+				back.weights[w] = new FlatMatrix(back.params, offset, rows, cols);
+			offset += rows * cols;
+		}
+		frontViews = front.weights;
+		backViews = doubleBuffered ? back.weights : null;
+	}
+
+	/**
+	 * @return total number of parameters (weights and biases)
+	 */
+	public int size() {
+		return front.params.length;
+	}
+
+	public int numBiases() {
+		return front.params.length - biasOffset;
+	}
+
+	public double[] getParams() {
+		return front.params;
+	}
+
+	/**
+	 * The front buffer. Read it once and use that reference for a whole computation to see one consistent
+	 * generation of weights and biases.
+	 *
+	 * @return
+	 */
+	public double[] current() {
+		return front.params;
+	}
+
+	/**
+	 * @return number of swaps so far
+	 */
+	public long getGeneration() {
+		return front.number;
+	}
+
+	/**
+	 * @return offset of weight matrix {@code w} in the buffers
+	 */
+	public int weightOffset(int w) {
+		return front.weights[w].getOffset();
+	}
+
+	/**
+	 * @return offset of bias {@code b} in the buffers
+	 */
+	public int biasOffset(int b) {
+		return biasOffset + b;
+	}
+
+	/**
+	 * The back buffer, only while double buffered. The reference changes with every swap, so fetch it again
+	 * after each one.
+	 *
+	 * @return
+	 */
+	public double[] getNext() {
+		return back == null ? null : back.params;
+	}
+
+	/**
+	 * Views into the front buffer, all of the same generation. Like current(), the array changes with every
+	 * swap, so fetch it again rather than keeping it.
+	 *
+	 * @return
+	 */
+	public FlatMatrix[] getWeights() {
+		return front.weights;
+	}
+
+	public FlatMatrix getWeights(int w) {
+		return front.weights[w];
+	}
+
+	public FlatMatrix[] getNextWeights() {
+		return back == null ? null : back.weights;
+	}
+
+	public FlatMatrix getNextWeights(int w) {
+		return back.weights[w];
+	}
+
+	public double getBias(int b) {
+		return front.params[biasOffset + b];
+	}
+
+	public void setBias(int b, double bias) {
+		front.params[biasOffset + b] = bias;
+		biasVersions.incrementAndGet(b);
+	}
+
+	/**
+	 * Goes up on every write through either buffer's view of weight matrix {@code w} and on every swap. Safe to
+	 * read from any thread: every term only grows.
+	 */
+	public long weightVersion(int w) {
+		return front.number + frontViews[w].getVersion() + (backViews == null ? 0 : backViews[w].getVersion());
+	}
+
+	public long biasVersion(int b) {
+		return biasVersions.get(b);
+	}
+
+	/**
+	 * @return version of the parameters as a whole, which goes up whenever any weight or bias changes
+	 */
+	public long getVersion() {
+		long version = 0;
+		for (int w = 0; w < biasVersions.length(); w++) {
+			version += weightVersion(w) + biasVersions.get(w);
+		}
+		return version;
+	}
+
+	/**
+	 * Marks parameters [from, to) of the front buffer changed, after writing into getParams() directly
+	 *
+	 * @param from
+	 * @param to
+	 */
+	public void touch(int from, int to) {
+		FlatMatrix[] weights = front.weights;
+		for (int w = 0; w < weights.length; w++) {
+			int offset = weights[w].getOffset();
+			if (offset < to && from < offset + weights[w].size())
+				weights[w].touch();
+		}
+		for (int b = Math.max(from, biasOffset) - biasOffset; b < to - biasOffset; b++) {
+			biasVersions.incrementAndGet(b);
+		}
+	}
+
+	public double getNextBias(int b) {
+		return back.params[biasOffset + b];
+	}
+
+	public void setNextBias(int b, double bias) {
+		back.params[biasOffset + b] = bias;
+	}
+
+	public void addToNextBias(int b, double x) {
+		back.params[biasOffset + b] += x;
+	}
+
+	/**
+	 * Starts the next generation: copies the front buffer into the back buffer, so the next weights and biases
+	 * can be written as changes to the current ones. O(n) in the number of parameters.
+	 */
+	public void stage() {
+		System.arraycopy(front.params, 0, back.params, 0, back.params.length);
+		staged = true;
+	}
+
+	/**
+	 * Commits the staged generation by publishing the back buffer as the front, in one volatile write. Doesn't
+	 * touch any parameter. Does nothing unless stage() was called since the last swap, since the back buffer
+	 * would otherwise hold the generation before last.
+	 */
+	public void swap() {
+		if (!staged)
+			return;
+		staged = false;
+		Generation old = front;
+		for (int b = 0; b < biasVersions.length(); b++) {
+			biasVersions.incrementAndGet(b);
+		}
+		front = new Generation(back.params, back.weights, old.number + 1);
+		back = old;
+	}
+
+	/**
+	 * @return copy of every parameter
+	 */
+	public double[] snapshot() {
+		return front.params.clone();
+	}
+
+	/**
+	 * Overwrites every parameter with a snapshot taken from an arena of the same layout
+	 *
+	 * @param snapshot
+	 */
+	public void restore(double[] snapshot) {
+		double[] params = front.params;
+		System.arraycopy(snapshot, 0, params, 0, params.length);
+		touch(0, params.length);
+	}
+
+	/**
+	 * Sets every parameter to the mean of the given snapshots, e.g. to average models trained separately
+	 *
+	 * @param snapshots
+	 */
+	public void average(double[]... snapshots) {
+		double[] params = front.params;
+		double[] sum = new double[params.length];
+		for (double[] snapshot : snapshots) {
+			for (int i = 0; i < sum.length; i++) {
+				sum[i] += snapshot[i];
+			}
+		}
+		for (int i = 0; i < sum.length; i++) {
+			params[i] = sum[i] / snapshots.length;
+		}
+		touch(0, params.length);
+	}
+
+	/**
+	 * @return Euclidean norm of all parameters
+	 */
+	public double norm() {
+		return norm(front.params);
+	}
+
+	private static double norm(double[] buffer) {
+		double sum = 0;
+		for (int i = 0; i < buffer.length; i++) {
+			sum += buffer[i] * buffer[i];
+		}
+		return Math.sqrt(sum);
+	}
+}
@@ -0,0 +1,240 @@
+package ann;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import math.ArrayConversionUtils;
+import math.LogicalAND;
+
+/**
+ * Bounded cache of ANN outputs, keyed by input vector
+ * 
+ * For inference traffic where a few distinct inputs make up most calls. Entries are spread over independently
+ * locked segments by the hash of the input, and each segment is a LinkedHashMap in access order that evicts its
+ * least recently used entry when full, so concurrent readers mostly lock different segments.
+ * 
+ * Every lookup passes the version of the parameters it would compute with (ParameterArena.getVersion), and
+ * each entry remembers the version it was computed at, so an output from old weights is never returned. The
+ * first lookup at a newer version also drops the whole cache, to free the stale entries. Versions only go up
+ * (see ParameterArena), so a lookup at an older version, from a reader that raced a training step, leaves the
+ * cache alone and its output isn't cached.
+ * 
+ * Inputs are copied into the keys and outputs are copied out, so callers may reuse their arrays.
+ * 
+ * @author Benito
+ *
+ */
+public class PredictionCache {
+	private final Segment[] segments;
+	private volatile long version = -1;
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder(), invalidations = new LongAdder();
+
+	/**
+	 * One LRU map, guarded by its own lock
+	 */
+	private static class Segment extends LinkedHashMap<Key, Entry> {
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+			return size() > capacity;
+		}
+	}
+
+	private static class Entry {
+		final long version;
+		final double[] output;
+
+		Entry(long version, double[] output) {
+			this.version = version;
+			this.output = output;
+		}
+	}
+
+	/**
+	 * Input vector with value equality
+	 */
+	private static class Key {
+		private final double[] input;
+		private final int hash;
+
+		Key(double[] input) {
+			this.input = input;
+			this.hash = Arrays.hashCode(input);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).hash == hash && Arrays.equals(((Key) o).input, input);
+		}
+	}
+
+	/**
+	 * @param capacity most entries kept, over all segments
+	 */
+	public PredictionCache(int capacity) {
+		this(capacity, Math.max(1, Math.min(capacity, 4 * Runtime.getRuntime().availableProcessors())));
+	}
+
+	/**
+	 * @param capacity most entries kept, over all segments
+	 * @param numSegments how many independently locked segments to split the entries over
+	 */
+	public PredictionCache(int capacity, int numSegments) {
+		segments = new Segment[numSegments];
+		for (int s = 0; s < numSegments; s++) {
+			segments[s] = new Segment(Math.max(1, capacity / numSegments));
+		}
+	}
+
+	/**
+	 * Output for {@code input}, from the cache or else from {@code compute}
+	 * 
+	 * @param input
+	 * @param paramVersion version of the parameters compute would use
+	 * @param compute forward pass
+	 * @return copy of the output
+	 */
+	public double[] get(double[] input, long paramVersion, Function<double[], double[]> compute) {
+		if (paramVersion > version)
+			invalidate(paramVersion);
+		Key key = new Key(input.clone());
+		Segment segment = segments[((key.hash ^ (key.hash >>> 16)) & Integer.MAX_VALUE) % segments.length];
+		Entry entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+		}
+		if (entry != null && entry.version == paramVersion) {
+			hits.increment();
+			return entry.output.clone();
+		}
+		misses.increment();
+		double[] output = compute.apply(key.input);
+		if (paramVersion < version)
+			return output; // a newer version already replaced this one; don't cache outputs nobody will get
+		synchronized (segment) {
+			segment.put(key, new Entry(paramVersion, output));
+		}
+		return output.clone();
+	}
+
+	/**
+	 * Moves the cache to {@code paramVersion}, dropping every entry. Versions only move forward: a reader that
+	 * got its version before another reader's newer one doesn't drop the newer entries.
+	 */
+	private synchronized void invalidate(long paramVersion) {
+		if (paramVersion <= version)
+			return;
+		version = paramVersion;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+		invalidations.increment();
+	}
+
+	public synchronized void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	/**
+	 * @return fraction of lookups answered from the cache
+	 */
+	public double hitRate() {
+		long hits = getHits(), total = hits + getMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	public String toString() {
+		return "hits " + getHits() + ", misses " + getMisses() + ", hit rate " + hitRate() + ", invalidations "
+				+ getInvalidations() + ", size " + size();
+	}
+
+	public static void test() {
+		System.out.println("Testing PredictionCache");
+		System.out.println("-----------------------");
+		MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(new BackpropTraining<Double>()).weightInitializer(new XavierInitializer()).seed(1)
+				.predictionCache(64).build(new int[] { 2, 4, 1 });
+		MatrixANN<Double> uncached = ann.copy();
+		Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread(() -> {
+				SplittableRandom random = new SplittableRandom();
+				for (int i = 0; i < 10000; i++) {
+					ann.predict(ArrayConversionUtils.numbersToPrimitiveDoubles(LogicalAND.randomInputs(random)));
+				}
+			});
+			readers[t].start();
+		}
+		for (Thread reader : readers) {
+			try {
+				reader.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		System.out.println("4 threads, 40000 predictions of logical AND inputs: " + ann.getPredictionCache());
+
+		Double[] input = { 1., 1. };
+		System.out.println("before training: " + ann.predict(new double[] { 1, 1 })[0] + ", uncached "
+				+ uncached.predict(new double[] { 1, 1 })[0]);
+		for (int i = 0; i < 50; i++) {
+			ann.train(input, new Double[] { 1. });
+			uncached.train(input, new Double[] { 1. });
+		}
+		System.out.println("after training: " + ann.predict(new double[] { 1, 1 })[0] + ", uncached "
+				+ uncached.predict(new double[] { 1, 1 })[0]);
+		System.out.println(ann.getPredictionCache());
+
+		PredictionCache cache = new PredictionCache(8);
+		double[] x = { 1, 2 };
+		cache.get(x, 2, in -> new double[] { 2 });
+		cache.get(x, 1, in -> new double[] { 1 }); // a reader that raced a training step
+		double cached = cache.get(x, 2, in -> new double[] { -1 })[0];
+		System.out.println("older version left version 2's entry alone: " + (cached == 2));
+		if (cached != 2 || cache.getInvalidations() != 1)
+			throw new AssertionError("A lookup at an older version invalidated the cache");
+	}
+}
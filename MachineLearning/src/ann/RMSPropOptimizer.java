@@ -0,0 +1,56 @@
+package ann;
+
+/**
+ * RMSProp: scales each parameter's step by a running average of its squared gradient
+ * 
+ * meanSquare = decay * meanSquare + (1 - decay) * gradient^2
+ * params -= learningRate * gradient / (sqrt(meanSquare) + epsilon)
+ * 
+ * @author Benito
+ *
+ */
+public class RMSPropOptimizer implements Optimizer {
+	private final double learningRate;
+	private final double decay;
+	private final double epsilon;
+	private double[] meanSquare = new double[0];
+
+	public RMSPropOptimizer(double learningRate) {
+		this(learningRate, 0.9, 1e-8);
+	}
+
+	public RMSPropOptimizer(double learningRate, double decay, double epsilon) {
+		this.learningRate = learningRate;
+		this.decay = decay;
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public Optimizer copy() {
+		RMSPropOptimizer copy = new RMSPropOptimizer(learningRate, decay, epsilon);
+		copy.setState(getState());
+		return copy;
+	}
+
+	@Override
+	public double[][] getState() {
+		return new double[][] { meanSquare.clone() };
+	}
+
+	@Override
+	public void setState(double[][] state) {
+		meanSquare = state[0].clone();
+	}
+
+	@Override
+	public void update(double[] params, double[] gradient, double[] target, int from, int to) {
+		if (meanSquare.length != params.length)
+			meanSquare = new double[params.length];
+		for (int i = from; i < to; i++) {
+			double g = gradient[i];
+			double ms = decay * meanSquare[i] + (1 - decay) * g * g;
+			meanSquare[i] = ms;
+			target[i] = params[i] - learningRate * g / (Math.sqrt(ms) + epsilon);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package ann;
+
+/**
+ * Stochastic gradient descent, optionally with momentum
+ * 
+ * velocity = momentum * velocity - learningRate * gradient
+ * params += velocity
+ * 
+ * With momentum 0 this is plain gradient descent and keeps no state.
+ * 
+ * @author Benito
+ *
+ */
+public class SGDOptimizer implements Optimizer {
+	private final double learningRate;
+	private final double momentum;
+	private double[] velocity = new double[0];
+
+	public SGDOptimizer(double learningRate) {
+		this(learningRate, 0);
+	}
+
+	public SGDOptimizer(double learningRate, double momentum) {
+		this.learningRate = learningRate;
+		this.momentum = momentum;
+	}
+
+	@Override
+	public Optimizer copy() {
+		SGDOptimizer copy = new SGDOptimizer(learningRate, momentum);
+		copy.setState(getState());
+		return copy;
+	}
+
+	@Override
+	public double[][] getState() {
+		return new double[][] { velocity.clone() };
+	}
+
+	@Override
+	public void setState(double[][] state) {
+		velocity = state[0].clone();
+	}
+
+	@Override
+	public void update(double[] params, double[] gradient, double[] target, int from, int to) {
+		if (momentum == 0) {
+			for (int i = from; i < to; i++) {
+				target[i] = params[i] - learningRate * gradient[i];
+			}
+			return;
+		}
+		if (velocity.length != params.length)
+			velocity = new double[params.length];
+		for (int i = from; i < to; i++) {
+			double v = momentum * velocity[i] - learningRate * gradient[i];
+			velocity[i] = v;
+			target[i] = params[i] + v;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package ann;
+
+import java.util.SplittableRandom;
+
+import math.ArrayConversionUtils;
+import math.LogicalAND;
+
+/**
+ * Simultaneous perturbation stochastic approximation (SPSA)
+ * 
+ * Like NaiveTraining, this never differentiates anything, so it works with any activation function. Instead of
+ * nudging one weight at a time, it nudges every weight and bias at once by +/- testStepSize, with a random sign
+ * for each, and measures the error on both sides. That one difference estimates the whole gradient:
+ * 
+ * g_i = (err(params + c * delta) - err(params - c * delta)) / (2 * c * delta_i)
+ * 
+ * So each step takes two forward passes no matter how big the network is. Then every parameter moves by
+ * -stepSize * g_i, or the estimate goes to the ANN's Optimizer if it has one. With simultaneousChanges the new
+ * parameters go into the arena's back buffer and are swapped in, like NaiveTraining's.
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class SPSATraining<E extends Number> implements TrainingAlgorithm<E> {
+	private final double stepSize;
+	private final SeedSequence seeds;
+	private double[] saved = new double[0];
+	private byte[] signs = new byte[0];
+	private double[] gradient = new double[0];
+
+	public SPSATraining() {
+		this(0.5, 1);
+	}
+
+	/**
+	 * @param stepSize how far to move along the estimated gradient
+	 * @param seed seed for the perturbation signs
+	 */
+	public SPSATraining(double stepSize, long seed) {
+		this.stepSize = stepSize;
+		this.seeds = new SeedSequence(seed);
+	}
+
+	@Override
+	public void trainOne(MatrixANN<E> ann, E[] input, E[] correctOutput) {
+		ann.setInputs(input);
+		step(ann, null, toBatch(correctOutput), 0, ann.getArena().size());
+	}
+
+	/**
+	 * One step for the whole batch: the error on each side of the perturbation is summed over the batch
+	 */
+	@Override
+	public void trainBatch(MatrixANN<E> ann, E[][] inputBatch, E[][] outputLabels) {
+		step(ann, inputBatch, outputLabels, 0, ann.getArena().size());
+	}
+
+	/**
+	 * Perturbs only the weights, using the inputs already set
+	 */
+	@Override
+	public void adjustWeights(MatrixANN<E> ann, E[] correctOutput) {
+		step(ann, null, toBatch(correctOutput), 0, ann.getArena().biasOffset(0));
+	}
+
+	/**
+	 * Perturbs only the biases, using the inputs already set
+	 */
+	@Override
+	public void adjustBiases(MatrixANN<E> ann, E[] correctOutput) {
+		ParameterArena arena = ann.getArena();
+		step(ann, null, toBatch(correctOutput), arena.biasOffset(0), arena.size());
+	}
+
+	@Override
+	public long[] getState() {
+		return seeds.getState();
+	}
+
+	@Override
+	public void setState(long[] state) {
+		seeds.setState(state);
+	}
+
+	private E[][] toBatch(E[] correctOutput) {
+		E[][] batch = (E[][]) new Number[1][];
+		batch[0] = correctOutput;
+		return batch;
+	}
+
+	/**
+	 * Estimates the gradient of parameters [from, to) from two evaluations and steps along it
+	 * 
+	 * @param inputs batch inputs, or null to use the inputs already set on the ann
+	 */
+	private void step(MatrixANN<E> ann, E[][] inputs, E[][] labels, int from, int to) {
+		ParameterArena arena = ann.getArena();
+		double[] params = arena.getParams();
+		double c = ann.getTestStepSize();
+		if (saved.length != params.length) {
+			saved = new double[params.length];
+			signs = new byte[params.length];
+		}
+		System.arraycopy(params, from, saved, from, to - from);
+		SplittableRandom random = new SplittableRandom(seeds.next());
+		for (int i = from; i < to; i++) {
+			signs[i] = (byte) (random.nextBoolean() ? 1 : -1);
+			params[i] = saved[i] + c * signs[i];
+		}
+		arena.touch(from, to);
+		double errPlus = error(ann, inputs, labels);
+		for (int i = from; i < to; i++) {
+			params[i] = saved[i] - c * signs[i];
+		}
+		arena.touch(from, to);
+		double errMinus = error(ann, inputs, labels);
+		System.arraycopy(saved, from, params, from, to - from);
+		arena.touch(from, to);
+
+		if (ann.getOptimizer() != null) {
+			if (gradient.length != params.length)
+				gradient = new double[params.length];
+			double diff = (errPlus - errMinus) / (2 * c);
+			for (int i = from; i < to; i++) {
+				gradient[i] = diff * signs[i];
+			}
+			ann.applyGradient(gradient, from, to);
+			return;
+		}
+		double scale = stepSize * (errPlus - errMinus) / (2 * c);
+		if (ann.getSimultaneousChanges()) {
+			ann.stageChanges();
+			double[] next = arena.getNext();
+			for (int i = from; i < to; i++) {
+				next[i] = saved[i] - scale * signs[i]; // signs are +/-1, so dividing by one is multiplying by it
+			}
+			ann.commitChanges();
+		} else {
+			for (int i = from; i < to; i++) {
+				params[i] = saved[i] - scale * signs[i];
+			}
+			arena.touch(from, to);
+		}
+	}
+
+	public static void test() {
+		System.out.println("Testing SPSATraining on logical AND with sigmoid function");
+		System.out.println("---------------------------------------------------------");
+		MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(new SPSATraining<Double>()).build(new int[] { 2, 1 });
+		for (int i = 0; i < 2000; i++) {
+			Double[] input = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i % 4]);
+			ann.train(input, ArrayConversionUtils.numbersToDoubles(LogicalAND.output(input)));
+		}
+		for (int i = 0; i < LogicalAND.possibleInputs.length; i++) {
+			Double[] input = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i]);
+			ann.setInputs(input);
+			ann.processLayers();
+			System.out.println(input[0] + " AND " + input[1] + " = " + ann.getOutput()[0]);
+		}
+		System.out.println("Same again, with an AdamOptimizer");
+		ann = new MatrixANN.MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction())
+				.trainingAlgorithm(new SPSATraining<Double>()).optimizer(new AdamOptimizer(0.1))
+				.build(new int[] { 2, 1 });
+		for (int i = 0; i < 2000; i++) {
+			Double[] input = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i % 4]);
+			ann.train(input, ArrayConversionUtils.numbersToDoubles(LogicalAND.output(input)));
+		}
+		for (int i = 0; i < LogicalAND.possibleInputs.length; i++) {
+			Double[] input = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i]);
+			ann.setInputs(input);
+			ann.processLayers();
+			System.out.println(input[0] + " AND " + input[1] + " = " + ann.getOutput()[0]);
+		}
+	}
+
+	private double error(MatrixANN<E> ann, E[][] inputs, E[][] labels) {
+		if (inputs == null) {
+			ann.processLayers();
+			return ann.error(labels[0], ann.getOutput());
+		}
+		double err = 0;
+		for (int i = 0; i < inputs.length; i++) {
+			ann.setInputs(inputs[i]);
+			ann.processLayers();
+			err += ann.error(labels[i], ann.getOutput());
+		}
+		return err;
+	}
+}
@@ -0,0 +1,49 @@
+package ann;
+
+import java.util.SplittableRandom;
+
+/**
+ * Seeded source of per-step seeds whose whole state is two longs, so a checkpoint can save it and resume the
+ * exact same sequence
+ *
+ * SplittableRandom can't export its state, so training algorithms draw one seed per step (or per candidate)
+ * from here and build that step's SplittableRandom from it. Restoring replays the draws, one nextLong each.
+ *
+ * @author Benito
+ *
+ */
+class SeedSequence {
+	private long seed;
+	private long draws;
+	private SplittableRandom random;
+
+	SeedSequence(long seed) {
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+	}
+
+	long next() {
+		draws++;
+		return random.nextLong();
+	}
+
+	/**
+	 * @return the seed and how many seeds were drawn
+	 */
+	long[] getState() {
+		return new long[] { seed, draws };
+	}
+
+	/**
+	 * Restores state from getState
+	 *
+	 * @param state
+	 */
+	void setState(long[] state) {
+		seed = state[0];
+		random = new SplittableRandom(seed);
+		for (draws = 0; draws < state[1]; draws++) {
+			random.nextLong();
+		}
+	}
+}
@@ -1,23 +1,34 @@
-package ann;
-
-/**
- * The infamous Sigmoid Freud 
- * aka S-curve
- *                                                                **********************
- *                                                  **************
- *                                             ******
- *                                           **
- *                                          **
- *                                    ******
- *                       **************
- * **********************
- * 
- * @author Benito
- *
- */
-public class SigmoidFunction implements ActivationFunction {
-	public Number func(Number z) {
-		return (1 / (Math.pow(Math.E, -z.doubleValue()) + 1)); // sigmoid function
-	}
-}
-
+package ann;
+
+/**
+ * The infamous Sigmoid Freud 
+ * aka S-curve
+ *                                                                **********************
+ *                                                  **************
+ *                                             ******
+ *                                           **
+ *                                          **
+ *                                    ******
+ *                       **************
+ * **********************
+ * 
+ * @author Benito
+ *
+ */
+public class SigmoidFunction implements ActivationFunction {
+	public Number func(Number z) {
+		return (1 / (Math.pow(Math.E, -z.doubleValue()) + 1)); // sigmoid function
+	}
+
+	@Override
+	public String javaSource(String z) {
+		return "(1 / (Math.pow(Math.E, -(" + z + ")) + 1))"; // same as func, so compiled code gives the same bits
+	}
+
+	@Override
+	public double derivative(double z) {
+		double s = 1 / (Math.exp(-z) + 1);
+		return s * (1 - s);
+	}
+}
+
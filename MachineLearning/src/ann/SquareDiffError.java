@@ -1,15 +1,22 @@
-package ann;
-
-public class SquareDiffError<E extends Number> implements ErrorFunction<E> {
-
-	@Override
-	public double error(E[] a, E[] b) {
-		double err = 0;
-		for (int i = 0; i < a.length; i++) {
-			double diff = a[i].doubleValue() - b[i].doubleValue();
-			err += diff * diff;
-		}
-		return err;
-	}
-
-}
+package ann;
+
+public class SquareDiffError<E extends Number> implements ErrorFunction<E> {
+
+	@Override
+	public double error(E[] a, E[] b) {
+		double err = 0;
+		for (int i = 0; i < a.length; i++) {
+			double diff = a[i].doubleValue() - b[i].doubleValue();
+			err += diff * diff;
+		}
+		return err;
+	}
+
+	@Override
+	public void gradient(double[] expected, double[] actual, double[] grad) {
+		for (int i = 0; i < grad.length; i++) {
+			grad[i] = 2 * (actual[i] - expected[i]);
+		}
+	}
+
+}
@@ -1,17 +1,68 @@
-package ann;
-
-/**
- * Interface for pluggable training algorithms for MatrixANN
- * This is not for setting parameters. Those are set in the ANN, as are the error and activation functions. 
- * This is for modifying the actual algorithm for adjusting weights and biases, using preset parameters.
- * 
- * @author Benito
- *
- * @param <E>
- */
-public interface TrainingAlgorithm<E extends Number> {
-	void trainOne(MatrixANN<E> ann, E[] input, E[] correctOutput); // MatrixANN should implement an ANN interface, to make this more general
-	void trainBatch(MatrixANN<E> ann, E[][] inputBatch, E[][] outputLabels);
-	void adjustWeights(MatrixANN<E> ann, E[] correctOutput);
-	void adjustBiases(MatrixANN<E> ann, E[] correctOutput);
-}
+package ann;
+
+import java.util.Arrays;
+
+import math.ArrayConversionUtils;
+
+/**
+ * Interface for pluggable training algorithms for MatrixANN
+ * This is not for setting parameters. Those are set in the ANN, as are the error and activation functions. 
+ * This is for modifying the actual algorithm for adjusting weights and biases, using preset parameters.
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public interface TrainingAlgorithm<E extends Number> {
+	void trainOne(MatrixANN<E> ann, E[] input, E[] correctOutput); // MatrixANN should implement an ANN interface, to make this more general
+	void trainBatch(MatrixANN<E> ann, E[][] inputBatch, E[][] outputLabels);
+	void adjustWeights(MatrixANN<E> ann, E[] correctOutput);
+	void adjustBiases(MatrixANN<E> ann, E[] correctOutput);
+
+	/**
+	 * Copy of the algorithm's own state, e.g. where its random numbers are, so a checkpoint can resume
+	 * training exactly
+	 * 
+	 * @return
+	 */
+	default long[] getState() {
+		return new long[0];
+	}
+
+	/**
+	 * Restores state from getState
+	 * 
+	 * @param state
+	 */
+	default void setState(long[] state) {
+	}
+
+	/**
+	 * trainOne for primitive vectors. Boxes them unless the algorithm works on primitives itself.
+	 */
+	default void trainOne(MatrixANN<E> ann, double[] input, double[] correctOutput) {
+		trainOne(ann, (E[]) ArrayConversionUtils.doublesToDoubles(input),
+				(E[]) ArrayConversionUtils.doublesToDoubles(correctOutput));
+	}
+
+	/**
+	 * trainBatch for {@code n} samples laid out one after another in {@code inputs} and {@code labels}. Boxes
+	 * them and hands them to the boxed trainBatch, unless the algorithm works on primitives itself, so every
+	 * algorithm has to implement that one.
+	 */
+	default void trainBatch(MatrixANN<E> ann, double[] inputs, double[] labels, int n) {
+		int[] layerSizes = ann.getLayerSizes();
+		int inputSize = layerSizes[0], outputSize = layerSizes[layerSizes.length - 1];
+		if (n <= 0)
+			return;
+		Double[][] inputBatch = new Double[n][];
+		Double[][] outputLabels = new Double[n][];
+		for (int s = 0; s < n; s++) {
+			inputBatch[s] = ArrayConversionUtils.doublesToDoubles(
+					Arrays.copyOfRange(inputs, s * inputSize, (s + 1) * inputSize));
+			outputLabels[s] = ArrayConversionUtils.doublesToDoubles(
+					Arrays.copyOfRange(labels, s * outputSize, (s + 1) * outputSize));
+		}
+		trainBatch(ann, (E[][]) inputBatch, (E[][]) outputLabels);
+	}
+}
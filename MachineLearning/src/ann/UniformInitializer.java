@@ -0,0 +1,29 @@
+package ann;
+
+import java.util.SplittableRandom;
+
+import math.FlatMatrix;
+
+/**
+ * Every weight uniform in [min, max)
+ * 
+ * @author Benito
+ *
+ */
+public class UniformInitializer implements WeightInitializer {
+	private final double min, max;
+
+	public UniformInitializer(double min, double max) {
+		this.min = min;
+		this.max = max;
+	}
+
+	@Override
+	public void init(FlatMatrix weights, SplittableRandom random) {
+		for (int r = 0; r < weights.numRows(); r++) {
+			for (int c = 0; c < weights.numCols(); c++) {
+				weights.set(r, c, random.nextDouble(min, max));
+			}
+		}
+	}
+}
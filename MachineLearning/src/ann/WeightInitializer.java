@@ -0,0 +1,25 @@
+package ann;
+
+import java.util.SplittableRandom;
+
+import math.FlatMatrix;
+
+/**
+ * Sets the starting values of one weight matrix of a MatrixANN
+ * 
+ * Without one, every weight starts at 0, and all the nodes of a layer start out identical. Set one with
+ * MatrixANNBuilder.weightInitializer. Each weight matrix gets its own split of a SplittableRandom, so layers
+ * can be initialized in parallel and a seed always gives the same weights.
+ * 
+ * @author Benito
+ *
+ */
+public interface WeightInitializer {
+	/**
+	 * Fill {@code weights}, which maps numCols() inputs (fan in) to numRows() outputs (fan out)
+	 * 
+	 * @param weights
+	 * @param random
+	 */
+	void init(FlatMatrix weights, SplittableRandom random);
+}
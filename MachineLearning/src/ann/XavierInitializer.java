@@ -0,0 +1,25 @@
+package ann;
+
+import java.util.SplittableRandom;
+
+import math.FlatMatrix;
+
+/**
+ * Xavier/Glorot uniform initialization: uniform in +/- sqrt(6 / (fanIn + fanOut))
+ * Keeps the variance of activations about the same from layer to layer. Suits sigmoid and tanh.
+ * 
+ * @author Benito
+ *
+ */
+public class XavierInitializer implements WeightInitializer {
+
+	@Override
+	public void init(FlatMatrix weights, SplittableRandom random) {
+		double limit = Math.sqrt(6.0 / (weights.numCols() + weights.numRows()));
+		for (int r = 0; r < weights.numRows(); r++) {
+			for (int c = 0; c < weights.numCols(); c++) {
+				weights.set(r, c, random.nextDouble(-limit, limit));
+			}
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package ann.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+import ann.AdamOptimizer;
+import ann.BackpropTraining;
+import ann.Evaluation;
+import ann.EvolutionTraining;
+import ann.MatrixANN;
+import ann.MatrixANN.MatrixANNBuilder;
+import ann.NaiveTraining;
+import ann.Optimizer;
+import ann.SPSATraining;
+import ann.TrainingAlgorithm;
+import ann.XavierInitializer;
+
+/**
+ * Time-to-accuracy benchmark: trains each algorithm on each Workload until it reaches the workload's target
+ * error or runs out of time, and reports how long and how many forward passes that took
+ * 
+ * Every run starts from the same seeded weights and visits the samples in the same seeded order, so runs are
+ * comparable and repeatable (up to timing). The error is checked after every {@code evalEvery} samples, outside
+ * the timed training. Run main for JSON on standard output.
+ * 
+ * @author Benito
+ *
+ */
+public class Benchmark {
+	private final List<Workload> workloads;
+	private final List<Algorithm> algorithms;
+	private final long timeLimitNanos;
+	private final long seed;
+
+	/**
+	 * A named way of training, built fresh for each run
+	 */
+	public static class Algorithm {
+		private final String name;
+		private final Supplier<TrainingAlgorithm<Double>> training;
+		private final Supplier<Optimizer> optimizer; // null: no optimizer
+		private final int batchSize; // 1: trainOne, one sample at a time
+
+		public Algorithm(String name, Supplier<TrainingAlgorithm<Double>> training, Supplier<Optimizer> optimizer,
+				int batchSize) {
+			this.name = name;
+			this.training = training;
+			this.optimizer = optimizer;
+			this.batchSize = batchSize;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	public Benchmark(List<Workload> workloads, List<Algorithm> algorithms, long timeLimitMillis, long seed) {
+		this.workloads = workloads;
+		this.algorithms = algorithms;
+		this.timeLimitNanos = timeLimitMillis * 1000000;
+		this.seed = seed;
+	}
+
+	/**
+	 * Every TrainingAlgorithm in the tree, plain and with an AdamOptimizer where it takes one
+	 */
+	public static List<Algorithm> standardAlgorithms(long seed) {
+		List<Algorithm> algorithms = new ArrayList<>();
+		algorithms.add(new Algorithm("naive", NaiveTraining::new, null, 1));
+		algorithms.add(new Algorithm("naive+adam", NaiveTraining::new, () -> new AdamOptimizer(0.05), 1));
+		algorithms.add(new Algorithm("spsa", () -> new SPSATraining<>(0.5, seed), null, 1));
+		algorithms.add(new Algorithm("spsa+adam", () -> new SPSATraining<>(0.5, seed), () -> new AdamOptimizer(0.05),
+				1));
+		algorithms.add(new Algorithm("evolution", () -> new EvolutionTraining<>(16, 0.5,
+				Runtime.getRuntime().availableProcessors(), seed), null, 8));
+		algorithms.add(new Algorithm("backprop", () -> new BackpropTraining<>(0.1, 1), null, 8));
+		algorithms.add(new Algorithm("backprop+adam", () -> new BackpropTraining<>(0.1, 1),
+				() -> new AdamOptimizer(0.01), 8));
+		return algorithms;
+	}
+
+	public List<BenchmarkResult> runAll() {
+		List<BenchmarkResult> results = new ArrayList<>();
+		for (Workload workload : workloads) {
+			for (Algorithm algorithm : algorithms) {
+				results.add(run(workload, algorithm));
+			}
+		}
+		return results;
+	}
+
+	public BenchmarkResult run(Workload workload, Algorithm algorithm) {
+		TrainingAlgorithm<Double> training = algorithm.training.get();
+		MatrixANNBuilder<Double> builder = new MatrixANNBuilder<Double>()
+				.activationFunction(workload.getActivationFunction()).trainingAlgorithm(training)
+				.weightInitializer(new XavierInitializer()).seed(seed);
+		if (algorithm.optimizer != null)
+			builder.optimizer(algorithm.optimizer.get());
+		MatrixANN<Double> ann = builder.build(workload.getLayerSizes());
+		int numWeights = workload.getLayerSizes().length - 1;
+		int inputSize = workload.getLayerSizes()[0];
+		int outputSize = workload.getLayerSizes()[numWeights];
+		int batchSize = Math.min(algorithm.batchSize, workload.size());
+		double[] inputs = new double[batchSize * inputSize];
+		double[] labels = new double[batchSize * outputSize];
+		int evalEvery = Math.min(workload.size(), 256);
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] order = new int[workload.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		System.gc();
+		List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				heapPools.add(pool);
+			}
+		}
+
+		double error = workload.error(ann);
+		boolean reached = error <= workload.getTargetError();
+		long trainingNanos = 0, samples = 0, sinceEval = 0, timeToTarget = reached ? 0 : -1;
+		double passesToTarget = reached ? 0 : -1;
+		int next = order.length; // shuffle before the first batch
+		while (!reached && trainingNanos < timeLimitNanos && !Double.isNaN(error)) {
+			for (int s = 0; s < batchSize; s++) {
+				if (next == order.length) {
+					shuffle(order, random);
+					next = 0;
+				}
+				int sample = order[next++];
+				System.arraycopy(workload.getInput(sample), 0, inputs, s * inputSize, inputSize);
+				System.arraycopy(workload.getLabel(sample), 0, labels, s * outputSize, outputSize);
+			}
+			long start = System.nanoTime();
+			if (batchSize == 1)
+				ann.train(inputs, labels);
+			else
+				ann.trainBatch(inputs, labels, batchSize);
+			trainingNanos += System.nanoTime() - start;
+			samples += batchSize;
+			sinceEval += batchSize;
+			if (sinceEval >= evalEvery) {
+				sinceEval = 0;
+				error = workload.error(ann);
+				if (error <= workload.getTargetError()) {
+					reached = true;
+					timeToTarget = trainingNanos;
+					passesToTarget = (double) ann.getLayersComputed() / numWeights;
+				}
+			}
+		}
+		Evaluation last = workload.evaluate(ann); // one pass for both the error and the accuracy
+		error = last.getMeanLoss();
+		if (training instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) training).close(); // e.g. EvolutionTraining's threads
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : heapPools) {
+			peakHeap += pool.getPeakUsage().getUsed();
+		}
+		return new BenchmarkResult(workload.getName(), algorithm.getName(), reached, workload.getTargetError(), error,
+				workload.accuracy(last), timeToTarget, passesToTarget, trainingNanos,
+				(double) ann.getLayersComputed() / numWeights, samples, peakHeap);
+	}
+
+	private static void shuffle(int[] order, SplittableRandom random) {
+		for (int i = order.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+	}
+
+	/**
+	 * Runs every standard workload with every standard algorithm and prints the results as JSON
+	 * 
+	 * @param args optional time limit per run in milliseconds (default 2000), and seed (default 1)
+	 */
+	public static void main(String[] args) {
+		long timeLimitMillis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		Benchmark benchmark = new Benchmark(Workload.standard(seed), standardAlgorithms(seed), timeLimitMillis,
+				seed);
+		System.out.println(BenchmarkResult.toJson(benchmark.runAll()));
+	}
+}
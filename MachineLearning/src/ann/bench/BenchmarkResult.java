@@ -0,0 +1,141 @@
+package ann.bench;
+
+import java.util.List;
+
+/**
+ * How one training algorithm did on one Workload
+ * 
+ * Times only count training steps, not the evaluations in between. Forward passes are the layers the ANN
+ * computed (MatrixANN.getLayersComputed) divided by its number of weight matrices, so they include the
+ * probing done by derivative-free algorithms.
+ * 
+ * @author Benito
+ *
+ */
+public class BenchmarkResult {
+	private final String workload;
+	private final String algorithm;
+	private final boolean reachedTarget;
+	private final double targetError;
+	private final double finalError;
+	private final double accuracy;
+	private final long timeToTargetNanos; // -1 if the target wasn't reached
+	private final double forwardPassesToTarget; // -1 if the target wasn't reached
+	private final long trainingNanos;
+	private final double forwardPasses;
+	private final long samples;
+	private final long peakHeapBytes;
+
+	public BenchmarkResult(String workload, String algorithm, boolean reachedTarget, double targetError,
+			double finalError, double accuracy, long timeToTargetNanos, double forwardPassesToTarget,
+			long trainingNanos, double forwardPasses, long samples, long peakHeapBytes) {
+		this.workload = workload;
+		this.algorithm = algorithm;
+		this.reachedTarget = reachedTarget;
+		this.targetError = targetError;
+		this.finalError = finalError;
+		this.accuracy = accuracy;
+		this.timeToTargetNanos = timeToTargetNanos;
+		this.forwardPassesToTarget = forwardPassesToTarget;
+		this.trainingNanos = trainingNanos;
+		this.forwardPasses = forwardPasses;
+		this.samples = samples;
+		this.peakHeapBytes = peakHeapBytes;
+	}
+
+	public String getWorkload() {
+		return workload;
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	public boolean reachedTarget() {
+		return reachedTarget;
+	}
+
+	public double getFinalError() {
+		return finalError;
+	}
+
+	/**
+	 * @return NaN for regression workloads
+	 */
+	public double getAccuracy() {
+		return accuracy;
+	}
+
+	public long getTimeToTargetNanos() {
+		return timeToTargetNanos;
+	}
+
+	public double getForwardPassesToTarget() {
+		return forwardPassesToTarget;
+	}
+
+	public long getTrainingNanos() {
+		return trainingNanos;
+	}
+
+	public double getForwardPasses() {
+		return forwardPasses;
+	}
+
+	public long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * @return most heap in use (summed over the heap pools' peaks) while training
+	 */
+	public long getPeakHeapBytes() {
+		return peakHeapBytes;
+	}
+
+	public double samplesPerSecond() {
+		return trainingNanos == 0 ? 0 : samples / (trainingNanos / 1e9);
+	}
+
+	public String toJson() {
+		StringBuilder ret = new StringBuilder("{");
+		field(ret, "workload", quote(workload)).append(", ");
+		field(ret, "algorithm", quote(algorithm)).append(", ");
+		field(ret, "reachedTarget", String.valueOf(reachedTarget)).append(", ");
+		field(ret, "targetError", number(targetError)).append(", ");
+		field(ret, "finalError", number(finalError)).append(", ");
+		field(ret, "accuracy", number(accuracy)).append(", ");
+		field(ret, "timeToTargetMillis", reachedTarget ? number(timeToTargetNanos / 1e6) : "null").append(", ");
+		field(ret, "forwardPassesToTarget", reachedTarget ? number(forwardPassesToTarget) : "null").append(", ");
+		field(ret, "trainingMillis", number(trainingNanos / 1e6)).append(", ");
+		field(ret, "forwardPasses", number(forwardPasses)).append(", ");
+		field(ret, "samples", String.valueOf(samples)).append(", ");
+		field(ret, "samplesPerSecond", number(samplesPerSecond())).append(", ");
+		field(ret, "peakHeapBytes", String.valueOf(peakHeapBytes));
+		return ret.append("}").toString();
+	}
+
+	/**
+	 * @param results
+	 * @return JSON array of the results, one per line
+	 */
+	public static String toJson(List<BenchmarkResult> results) {
+		StringBuilder ret = new StringBuilder("[\n");
+		for (int i = 0; i < results.size(); i++) {
+			ret.append("  ").append(results.get(i).toJson()).append(i < results.size() - 1 ? ",\n" : "\n");
+		}
+		return ret.append("]").toString();
+	}
+
+	private static StringBuilder field(StringBuilder json, String name, String value) {
+		return json.append('"').append(name).append("\": ").append(value);
+	}
+
+	private static String number(double x) {
+		return Double.isFinite(x) ? String.valueOf(x) : "null"; // JSON has no NaN or infinity
+	}
+
+	private static String quote(String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}
@@ -0,0 +1,208 @@
+package ann.bench;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import ann.ActivationFunction;
+import ann.Evaluation;
+import ann.Evaluator;
+import ann.MatrixANN;
+import ann.SigmoidFunction;
+import math.LogicalAND;
+
+/**
+ * A synthetic dataset, the network shape to learn it with, and the error to reach
+ * 
+ * Every workload is generated from a seed, so the same seed always gives the same data. Error is the ANN's
+ * error function averaged over the samples (for SquareDiffError, the mean squared error per sample).
+ * 
+ * @author Benito
+ *
+ */
+public class Workload {
+	private static final Evaluator EVALUATOR = new Evaluator();
+
+	private final String name;
+	private final int[] layerSizes;
+	private final ActivationFunction activationFunction; // null for none, like MatrixANN
+	private final double[][] inputs, labels;
+	private final double targetError;
+	private final boolean classification;
+
+	public Workload(String name, int[] layerSizes, ActivationFunction activationFunction, double[][] inputs,
+			double[][] labels, double targetError, boolean classification) {
+		this.name = name;
+		this.layerSizes = layerSizes.clone();
+		this.activationFunction = activationFunction;
+		this.inputs = inputs;
+		this.labels = labels;
+		this.targetError = targetError;
+		this.classification = classification;
+	}
+
+	/**
+	 * Logical AND on its four possible inputs, with a single sigmoid neuron
+	 */
+	public static Workload and() {
+		double[][] inputs = new double[LogicalAND.possibleInputs.length][];
+		double[][] labels = new double[inputs.length][];
+		for (int i = 0; i < inputs.length; i++) {
+			Number[] input = LogicalAND.possibleInputs[i];
+			inputs[i] = new double[] { input[0].doubleValue(), input[1].doubleValue() };
+			labels[i] = new double[] { LogicalAND.output(input)[0].doubleValue() };
+		}
+		return new Workload("and", new int[] { 2, 1 }, new SigmoidFunction(), inputs, labels, 0.05, true);
+	}
+
+	/**
+	 * Logical XOR, which needs a hidden layer
+	 */
+	public static Workload xor() {
+		double[][] inputs = { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 1, 1 } };
+		double[][] labels = { { 0 }, { 1 }, { 1 }, { 0 } };
+		return new Workload("xor", new int[] { 2, 4, 1 }, new SigmoidFunction(), inputs, labels, 0.05, true);
+	}
+
+	/**
+	 * y = w.x + b plus Gaussian noise (standard deviation 0.1), learned by a linear network. The target is a
+	 * little above the noise variance.
+	 */
+	public static Workload linearRegression(long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		int features = 4, samples = 256;
+		double[] w = new double[features];
+		for (int i = 0; i < features; i++) {
+			w[i] = random.nextDouble(-1, 1);
+		}
+		double b = random.nextDouble(-0.5, 0.5);
+		double[][] inputs = new double[samples][features];
+		double[][] labels = new double[samples][1];
+		for (int s = 0; s < samples; s++) {
+			double y = b;
+			for (int i = 0; i < features; i++) {
+				inputs[s][i] = random.nextDouble(-1, 1);
+				y += w[i] * inputs[s][i];
+			}
+			labels[s][0] = y + 0.1 * random.nextGaussian();
+		}
+		return new Workload("linear-regression", new int[] { features, 1 }, null, inputs, labels, 0.02, false);
+	}
+
+	/**
+	 * Three Gaussian blobs in the plane, one per class, with one-hot labels
+	 */
+	public static Workload gaussianBlobs(long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		double[][] centers = { { -1, -1 }, { 1, -1 }, { 0, 1 } };
+		int samples = 300;
+		double[][] inputs = new double[samples][2];
+		double[][] labels = new double[samples][centers.length];
+		for (int s = 0; s < samples; s++) {
+			int c = s % centers.length;
+			inputs[s][0] = centers[c][0] + 0.4 * random.nextGaussian();
+			inputs[s][1] = centers[c][1] + 0.4 * random.nextGaussian();
+			labels[s][c] = 1;
+		}
+		return new Workload("gaussian-blobs", new int[] { 2, 8, 3 }, new SigmoidFunction(), inputs, labels, 0.15,
+				true);
+	}
+
+	/**
+	 * 256 binary features, about 5% of them set in each sample. The label is whether at least 2 of the 8 signal
+	 * features are set; the other features are noise.
+	 */
+	public static Workload sparse(long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		int features = 256, samples = 512, signal = 8;
+		double[][] inputs = new double[samples][features];
+		double[][] labels = new double[samples][1];
+		for (int s = 0; s < samples; s++) {
+			int set = 0;
+			for (int i = 0; i < features; i++) {
+				// signal features are set more often, so both labels are common
+				if (random.nextDouble() < (i < signal ? 0.25 : 0.05)) {
+					inputs[s][i] = 1;
+					if (i < signal)
+						set++;
+				}
+			}
+			labels[s][0] = set >= 2 ? 1 : 0;
+		}
+		return new Workload("sparse", new int[] { features, 1 }, new SigmoidFunction(), inputs, labels, 0.1, true);
+	}
+
+	/**
+	 * @return every workload above
+	 */
+	public static List<Workload> standard(long seed) {
+		return List.of(and(), xor(), linearRegression(seed), gaussianBlobs(seed), sparse(seed));
+	}
+
+	/**
+	 * @param ann
+	 * @return loss, accuracy and confusion matrix of {@code ann} on this workload
+	 */
+	public Evaluation evaluate(MatrixANN<Double> ann) {
+		return EVALUATOR.evaluate(ann, inputs, labels);
+	}
+
+	/**
+	 * @param ann
+	 * @return mean error per sample
+	 */
+	public double error(MatrixANN<Double> ann) {
+		return evaluate(ann).getMeanLoss();
+	}
+
+	/**
+	 * Fraction of samples classified right (see Evaluation), or NaN for regression
+	 * 
+	 * @param ann
+	 * @return
+	 */
+	public double accuracy(MatrixANN<Double> ann) {
+		return accuracy(evaluate(ann));
+	}
+
+	/**
+	 * accuracy, read from an evaluation already made, so error and accuracy can share one pass
+	 * 
+	 * @param evaluation result of evaluate on this workload
+	 * @return
+	 */
+	public double accuracy(Evaluation evaluation) {
+		return classification ? evaluation.getAccuracy() : Double.NaN;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int[] getLayerSizes() {
+		return layerSizes.clone();
+	}
+
+	public ActivationFunction getActivationFunction() {
+		return activationFunction;
+	}
+
+	public int size() {
+		return inputs.length;
+	}
+
+	public double[] getInput(int s) {
+		return inputs[s];
+	}
+
+	public double[] getLabel(int s) {
+		return labels[s];
+	}
+
+	public double getTargetError() {
+		return targetError;
+	}
+
+	public boolean isClassification() {
+		return classification;
+	}
+}
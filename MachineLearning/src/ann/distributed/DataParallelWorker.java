@@ -0,0 +1,206 @@
+package ann.distributed;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import ann.MatrixANN;
+import ann.ParameterArena;
+import ann.TrainingAlgorithm;
+
+/**
+ * Trains a local copy of a MatrixANN on one shard of the data and exchanges updates with a ParameterServer
+ * 
+ * Pulls the parameters, trains on {@code batchSize} samples with the ANN's own TrainingAlgorithm, then pushes
+ * the difference between its parameters and the ones it pulled, as one batched update. If the server rejects
+ * the push as too stale, the worker pulls the latest parameters and trains on the same batch again from them,
+ * so every applied change was computed from weights at most maxStaleness versions old. A batch rejected
+ * {@code MAX_ATTEMPTS} times is dropped. Pulls send the version the worker already holds, so unchanged
+ * parameters aren't sent again.
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class DataParallelWorker<E extends Number> {
+	private static final int MAX_ATTEMPTS = 3; // pushes of one batch before it is dropped
+
+	private final MatrixANN<E> ann;
+	private final ParameterClient client;
+	private final int batchSize;
+	private final double[] base;
+	private final double[] delta;
+	private long version = -1;
+	private long pushes, rejected, dropped;
+
+	/**
+	 * @param ann local model, with the same layer sizes as the server's
+	 * @param client connection to the server
+	 * @param batchSize samples to train on between pushes
+	 */
+	public DataParallelWorker(MatrixANN<E> ann, ParameterClient client, int batchSize) {
+		this.ann = ann;
+		this.client = client;
+		this.batchSize = batchSize;
+		this.base = new double[ann.getArena().size()];
+		this.delta = new double[base.length];
+	}
+
+	/**
+	 * Trains for {@code epochs} passes over the shard
+	 * 
+	 * @param inputs
+	 * @param labels
+	 * @param epochs
+	 * @throws IOException
+	 */
+	public void train(E[][] inputs, E[][] labels, int epochs) throws IOException {
+		sync();
+		int[] batch = new int[batchSize];
+		int inBatch = 0;
+		for (int epoch = 0; epoch < epochs; epoch++) {
+			for (int i = 0; i < inputs.length; i++) {
+				batch[inBatch++] = i;
+				if (inBatch == batchSize) {
+					trainAndPush(inputs, labels, batch, inBatch);
+					inBatch = 0;
+				}
+			}
+		}
+		if (inBatch > 0)
+			trainAndPush(inputs, labels, batch, inBatch);
+	}
+
+	/**
+	 * Trains on samples batch[0, n) from the pulled parameters and pushes the change. A stale push is never
+	 * resent as it is: the batch is trained again on the fresh parameters.
+	 */
+	private void trainAndPush(E[][] inputs, E[][] labels, int[] batch, int n) throws IOException {
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			for (int k = 0; k < n; k++) {
+				ann.train(inputs[batch[k]], labels[batch[k]]);
+			}
+			double[] params = ann.getArena().getParams();
+			for (int i = 0; i < delta.length; i++) {
+				delta[i] = params[i] - base[i];
+			}
+			pushes++;
+			boolean accepted = client.push(version, delta);
+			sync();
+			if (accepted)
+				return;
+			rejected++;
+		}
+		dropped++;
+	}
+
+	/**
+	 * Pulls the latest parameters into the local model. {@code base} is left alone if the server is still at
+	 * the version it holds.
+	 */
+	private void sync() throws IOException {
+		ParameterArena arena = ann.getArena();
+		version = client.pull(version, base);
+		arena.restore(base);
+	}
+
+	public long getPushes() {
+		return pushes;
+	}
+
+	/**
+	 * @return how many pushes the server turned down as too stale
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return batches given up on after MAX_ATTEMPTS stale pushes
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Every {@code numShards}-th element of {@code data}, starting at {@code shard}
+	 * 
+	 * @param data
+	 * @param shard
+	 * @param numShards
+	 * @return
+	 */
+	public static <T> T[] shard(T[] data, int shard, int numShards) {
+		int len = (data.length - shard + numShards - 1) / numShards;
+		T[] ret = Arrays.copyOf(data, Math.max(len, 0));
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = data[shard + i * numShards];
+		}
+		return ret;
+	}
+
+	/**
+	 * Checks that a push rejected as stale is never applied as it was: the batch must be trained again from the
+	 * fresh parameters. Training maps every parameter x to 2x + 1, so the change depends on where it started.
+	 */
+	public static void test() throws IOException {
+		System.out.println("Testing DataParallelWorker with a stale push");
+		System.out.println("--------------------------------------------");
+		int[] layerSizes = { 2, 1 };
+		double[] initial = new MatrixANN.MatrixANNBuilder<Double>().build(layerSizes).getArena().snapshot();
+		String address = "unix:" + Files.createTempDirectory("ps").resolve("ps.sock");
+		try (ParameterServer server = new ParameterServer(Protocol.parseAddress(address), initial, 0);
+				ParameterClient other = new ParameterClient(server.getAddress());
+				ParameterClient client = new ParameterClient(server.getAddress())) {
+			new Thread(server, "parameter-server").start();
+			double[] interference = new double[initial.length];
+			Arrays.fill(interference, 1);
+			boolean[] interfered = { false };
+			MatrixANN<Double> ann = new MatrixANN.MatrixANNBuilder<Double>()
+					.trainingAlgorithm(new TrainingAlgorithm<Double>() {
+						@Override
+						public void trainOne(MatrixANN<Double> ann, Double[] input, Double[] correctOutput) {
+							if (!interfered[0]) { // another worker gets in first, making this batch's base stale
+								interfered[0] = true;
+								try {
+									other.push(0, interference);
+								} catch (IOException e) {
+									throw new RuntimeException(e);
+								}
+							}
+							double[] params = ann.getArena().getParams();
+							for (int i = 0; i < params.length; i++) {
+								params[i] = 2 * params[i] + 1;
+							}
+							ann.getArena().touch(0, params.length);
+						}
+
+						@Override
+						public void trainBatch(MatrixANN<Double> ann, Double[][] inputBatch, Double[][] outputLabels) {
+						}
+
+						@Override
+						public void adjustWeights(MatrixANN<Double> ann, Double[] correctOutput) {
+						}
+
+						@Override
+						public void adjustBiases(MatrixANN<Double> ann, Double[] correctOutput) {
+						}
+					}).build(layerSizes);
+			DataParallelWorker<Double> worker = new DataParallelWorker<>(ann, client, 1);
+			worker.train(new Double[][] { { 0., 0. } }, new Double[][] { { 0. } }, 1);
+			double[] params = server.snapshot();
+			System.out.println("pushes " + worker.getPushes() + ", rejected " + worker.getRejected() + ", server "
+					+ Arrays.toString(params));
+			if (worker.getRejected() != 1 || worker.getDropped() != 0)
+				throw new AssertionError("Expected one stale push, retrained and then applied");
+			for (int i = 0; i < params.length; i++) {
+				double fresh = initial[i] + interference[i];
+				if (params[i] != 2 * fresh + 1)
+					throw new AssertionError("Parameter " + i + " is " + params[i] + ", not " + (2 * fresh + 1)
+							+ " from training on the fresh parameters"
+							+ (params[i] == fresh + initial[i] + 1 ? "; the stale change was applied" : ""));
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package ann.distributed;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import ann.MatrixANN;
+import ann.MatrixANN.MatrixANNBuilder;
+import ann.SigmoidFunction;
+import math.ArrayConversionUtils;
+import math.LogicalAND;
+
+/**
+ * Multi-process data-parallel training on logical AND, on one machine
+ * 
+ * {@code server [workers] [address]} starts a ParameterServer, launches that many worker JVMs, waits for them,
+ * then tests the trained parameters. The address defaults to a Unix domain socket in a temp directory.
+ * {@code worker address shard numShards} trains one shard against a running server.
+ * 
+ * @author Benito
+ *
+ */
+public class DistributedTraining {
+	private static final int[] LAYER_SIZES = { 2, 1 };
+	private static final int SAMPLES = 100;
+	private static final int EPOCHS = 3;
+	private static final int BATCH_SIZE = 5;
+	private static final int MAX_STALENESS = 4;
+
+	private static MatrixANN<Double> newANN() {
+		return new MatrixANNBuilder<Double>().activationFunction(new SigmoidFunction()).build(LAYER_SIZES);
+	}
+
+	private static Double[][] inputs() {
+		Double[][] inputs = new Double[SAMPLES][];
+		for (int i = 0; i < SAMPLES; i++) {
+			inputs[i] = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i % LogicalAND.possibleInputs.length]);
+		}
+		return inputs;
+	}
+
+	private static Double[][] labels(Double[][] inputs) {
+		Double[][] labels = new Double[inputs.length][];
+		for (int i = 0; i < inputs.length; i++) {
+			labels[i] = ArrayConversionUtils.numbersToDoubles(LogicalAND.output(inputs[i]));
+		}
+		return labels;
+	}
+
+	public static void server(int workers, String address) throws IOException, InterruptedException {
+		MatrixANN<Double> ann = newANN();
+		try (ParameterServer server = new ParameterServer(Protocol.parseAddress(address), ann.getArena().snapshot(),
+				MAX_STALENESS)) {
+			Thread serverThread = new Thread(server, "parameter-server");
+			serverThread.start();
+			String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+			String classpath = System.getProperty("java.class.path");
+			List<Process> processes = new ArrayList<>();
+			for (int shard = 0; shard < workers; shard++) {
+				processes.add(new ProcessBuilder(java, "-cp", classpath, DistributedTraining.class.getName(), "worker",
+						Protocol.formatAddress(server.getAddress()), Integer.toString(shard), Integer.toString(workers))
+						.redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.INHERIT)
+						.start());
+			}
+			for (Process process : processes) {
+				process.waitFor();
+			}
+			System.out.println("Server version " + server.getVersion() + ", accepted " + server.getAccepted()
+					+ " pushes, rejected " + server.getRejected());
+			ann.getArena().restore(server.snapshot());
+		}
+		for (int i = 0; i < LogicalAND.possibleInputs.length; i++) {
+			Double[] input = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i]);
+			ann.setInputs(input);
+			ann.processLayers();
+			System.out.println(input[0] + " AND " + input[1] + " = " + ann.getOutput()[0]);
+		}
+	}
+
+	public static void worker(String address, int shard, int numShards) throws IOException {
+		Double[][] inputs = inputs();
+		Double[][] labels = labels(inputs);
+		try (ParameterClient client = new ParameterClient(Protocol.parseAddress(address))) {
+			DataParallelWorker<Double> worker = new DataParallelWorker<>(newANN(), client, BATCH_SIZE);
+			worker.train(DataParallelWorker.shard(inputs, shard, numShards),
+					DataParallelWorker.shard(labels, shard, numShards), EPOCHS);
+			System.err.println("Worker " + shard + " pushed " + worker.getPushes() + ", " + worker.getRejected()
+					+ " rejected as stale, " + worker.getDropped() + " batches dropped");
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length > 0 && args[0].equals("worker")) {
+			worker(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			return;
+		}
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		String address = args.length > 2 ? args[2]
+				: "unix:" + Files.createTempDirectory("ps").resolve("ps.sock");
+		server(workers, address);
+	}
+}
@@ -0,0 +1,74 @@
+package ann.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Worker side of the parameter server protocol. One client per worker thread; not thread safe.
+ * 
+ * @author Benito
+ *
+ */
+public class ParameterClient implements AutoCloseable {
+	private final SocketChannel channel;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+
+	public ParameterClient(SocketAddress address) throws IOException {
+		channel = SocketChannel.open(address);
+		in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+	}
+
+	/**
+	 * Fetches the server's parameters into {@code into}, unless {@code knownVersion} is already current, in
+	 * which case {@code into} is left alone
+	 * 
+	 * @param knownVersion version {@code into} currently holds, or -1 to always fetch
+	 * @param into
+	 * @return the server's version
+	 * @throws IOException
+	 */
+	public long pull(long knownVersion, double[] into) throws IOException {
+		out.writeByte(Protocol.PULL);
+		out.writeLong(knownVersion);
+		out.flush();
+		long version = in.readLong();
+		Protocol.readDoubles(in, into);
+		return version;
+	}
+
+	/**
+	 * Sends the change in parameters computed starting from version {@code baseVersion}
+	 * 
+	 * @param baseVersion
+	 * @param delta
+	 * @return whether the server applied it, false if it was too stale
+	 * @throws IOException
+	 */
+	public boolean push(long baseVersion, double[] delta) throws IOException {
+		out.writeByte(Protocol.PUSH);
+		out.writeLong(baseVersion);
+		Protocol.writeDoubles(out, delta);
+		out.flush();
+		boolean accepted = in.readBoolean();
+		in.readLong();
+		return accepted;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			out.writeByte(Protocol.BYE);
+			out.flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
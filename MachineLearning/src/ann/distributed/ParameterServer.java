@@ -0,0 +1,163 @@
+package ann.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds the master copy of an ANN's parameters (the flat layout of a ParameterArena) and serves them to
+ * worker processes over TCP or Unix domain sockets. See Protocol for the wire format.
+ *
+ * Workers pull the parameters, train on their shard, and push back the summed change. Pushes are applied in
+ * the order they arrive. A push computed from parameters more than maxStaleness versions old is rejected, and
+ * the worker pulls again, so no update is ever based on arbitrarily old weights.
+ *
+ * Call run() (usually on its own thread) to start accepting connections. Each connection gets a thread.
+ *
+ * @author Benito
+ *
+ */
+public class ParameterServer implements Runnable, AutoCloseable {
+	private final ServerSocketChannel server;
+	private final SocketAddress address;
+	private final double[] params;
+	private final int maxStaleness;
+	private final ExecutorService connections = Executors.newCachedThreadPool();
+	private long version;
+	private long accepted, rejected;
+	private volatile boolean closed;
+
+	/**
+	 * @param address where to listen, e.g. Protocol.parseAddress("unix:/tmp/ps.sock"). TCP port 0 picks a
+	 * free port.
+	 * @param initialParams starting parameters, e.g. ann.getArena().snapshot()
+	 * @param maxStaleness how many versions behind a push may be and still be applied
+	 * @throws IOException
+	 */
+	public ParameterServer(SocketAddress address, double[] initialParams, int maxStaleness) throws IOException {
+		server = ServerSocketChannel.open(Protocol.family(address));
+		if (address instanceof UnixDomainSocketAddress)
+			Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+		server.bind(address);
+		this.address = server.getLocalAddress();
+		this.params = initialParams.clone();
+		this.maxStaleness = maxStaleness;
+	}
+
+	public SocketAddress getAddress() {
+		return address;
+	}
+
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	public synchronized long getAccepted() {
+		return accepted;
+	}
+
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return copy of the current parameters
+	 */
+	public synchronized double[] snapshot() {
+		return params.clone();
+	}
+
+	@Override
+	public void run() {
+		while (!closed) {
+			try {
+				SocketChannel channel = server.accept();
+				connections.execute(() -> serve(channel));
+			} catch (ClosedChannelException e) {
+				return; // closed while waiting
+			} catch (IOException e) {
+				if (!closed)
+					e.printStackTrace();
+			}
+		}
+	}
+
+	private void serve(SocketChannel channel) {
+		try (channel) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			double[] scratch = new double[params.length];
+			while (true) {
+				byte op = in.readByte();
+				switch (op) {
+				case Protocol.PULL:
+					long knownVersion = in.readLong();
+					long current = copyIfNewer(knownVersion, scratch);
+					out.writeLong(current);
+					if (current == knownVersion)
+						out.writeInt(-1);
+					else
+						Protocol.writeDoubles(out, scratch);
+					break;
+				case Protocol.PUSH:
+					long baseVersion = in.readLong();
+					Protocol.readDoubles(in, scratch);
+					boolean ok = apply(baseVersion, scratch);
+					out.writeBoolean(ok);
+					out.writeLong(getVersion());
+					break;
+				case Protocol.BYE:
+					return;
+				default:
+					throw new IOException("Unknown op " + op);
+				}
+				out.flush();
+			}
+		} catch (EOFException e) {
+			// worker went away without saying bye
+		} catch (IOException e) {
+			if (!closed)
+				e.printStackTrace();
+		}
+	}
+
+	private synchronized long copyIfNewer(long knownVersion, double[] into) {
+		if (version != knownVersion)
+			System.arraycopy(params, 0, into, 0, params.length);
+		return version;
+	}
+
+	private synchronized boolean apply(long baseVersion, double[] delta) {
+		if (version - baseVersion > maxStaleness) {
+			rejected++;
+			return false;
+		}
+		for (int i = 0; i < params.length; i++) {
+			params[i] += delta[i];
+		}
+		version++;
+		accepted++;
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		server.close();
+		connections.shutdownNow();
+		if (address instanceof UnixDomainSocketAddress)
+			Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+	}
+}
@@ -0,0 +1,81 @@
+package ann.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
+
+/**
+ * Wire format between a ParameterServer and its ParameterClients
+ * 
+ * Everything is big-endian, written with DataOutputStream. Each request is one op byte followed by its body:
+ * 
+ * PULL: long knownVersion
+ * reply: long version, int n, then n doubles (n is -1, and no doubles follow, if knownVersion is current)
+ * 
+ * PUSH: long baseVersion, int n, then n doubles of parameter deltas (summed over a batch of samples)
+ * reply: boolean accepted, long version
+ * A push is rejected if more than maxStaleness other pushes were applied since baseVersion.
+ * 
+ * BYE: no body, no reply. The server closes the connection.
+ * 
+ * Addresses are written "tcp:host:port" or "unix:/path/to/socket".
+ * 
+ * @author Benito
+ *
+ */
+public class Protocol {
+	public static final byte PULL = 1;
+	public static final byte PUSH = 2;
+	public static final byte BYE = 3;
+
+	public static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+		out.writeInt(values.length);
+		for (int i = 0; i < values.length; i++) {
+			out.writeDouble(values[i]);
+		}
+	}
+
+	/**
+	 * Reads doubles written by writeDoubles into {@code into}
+	 * 
+	 * @return number of doubles read, or -1 if none were sent
+	 */
+	public static int readDoubles(DataInputStream in, double[] into) throws IOException {
+		int n = in.readInt();
+		if (n < 0)
+			return n;
+		if (n != into.length)
+			throw new IOException("Expected " + into.length + " parameters, got " + n);
+		for (int i = 0; i < n; i++) {
+			into[i] = in.readDouble();
+		}
+		return n;
+	}
+
+	public static SocketAddress parseAddress(String address) {
+		if (address.startsWith("unix:"))
+			return UnixDomainSocketAddress.of(Path.of(address.substring("unix:".length())));
+		if (address.startsWith("tcp:")) {
+			String hostPort = address.substring("tcp:".length());
+			int colon = hostPort.lastIndexOf(':');
+			return new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+		}
+		throw new IllegalArgumentException("Address should start with tcp: or unix:, got " + address);
+	}
+
+	public static String formatAddress(SocketAddress address) {
+		if (address instanceof UnixDomainSocketAddress)
+			return "unix:" + ((UnixDomainSocketAddress) address).getPath();
+		InetSocketAddress inet = (InetSocketAddress) address;
+		return "tcp:" + inet.getHostString() + ":" + inet.getPort();
+	}
+
+	public static StandardProtocolFamily family(SocketAddress address) {
+		return address instanceof UnixDomainSocketAddress ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET;
+	}
+}
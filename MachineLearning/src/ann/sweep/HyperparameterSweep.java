@@ -0,0 +1,248 @@
+package ann.sweep;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ann.MatrixANN;
+import ann.SigmoidFunction;
+import ann.ActivationFunction;
+import math.ArrayConversionUtils;
+import math.LogicalAND;
+import math.exceptions.DifferentLengthsException;
+
+/**
+ * Trains many MatrixANN configurations concurrently and ranks them, killing the ones that lag early
+ * 
+ * Uses successive halving: every surviving config trains on {@code initialSamples} samples, all are scored on
+ * the dataset, the best 1/{@code eta} survive, and the survivors' budget is multiplied by {@code eta}. This
+ * repeats until one config is left or {@code maxRounds} is reached, so most compute goes to the promising
+ * configs.
+ * 
+ * All configs share the same dataset, which is only ever read. Each config has its own MatrixANN, so trials
+ * don't share any mutable state and can run on any executor: a bounded pool by default, or e.g.
+ * Executors.newVirtualThreadPerTaskExecutor().
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class HyperparameterSweep<E extends Number> {
+	private final E[][] inputs, labels;
+	private final ExecutorService executor;
+	private int eta = 2;
+	private int maxRounds = Integer.MAX_VALUE;
+
+	/**
+	 * Sweeps on a pool with one thread per core
+	 */
+	public HyperparameterSweep(E[][] inputs, E[][] labels) {
+		this(inputs, labels, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * @throws IllegalArgumentException if there are no samples
+	 * @throws DifferentLengthsException if there aren't as many labels as inputs
+	 */
+	public HyperparameterSweep(E[][] inputs, E[][] labels, ExecutorService executor) {
+		if (inputs.length != labels.length)
+			throw new DifferentLengthsException(inputs.length + " inputs but " + labels.length + " labels");
+		if (inputs.length == 0)
+			throw new IllegalArgumentException("Can't sweep on an empty dataset");
+		this.inputs = inputs;
+		this.labels = labels;
+		this.executor = executor;
+	}
+
+	/**
+	 * @param eta how much of the field to cut each round (keep 1/eta), and how much to grow the budget
+	 */
+	public HyperparameterSweep<E> eta(int eta) {
+		this.eta = eta;
+		return this;
+	}
+
+	public HyperparameterSweep<E> maxRounds(int maxRounds) {
+		this.maxRounds = maxRounds;
+		return this;
+	}
+
+	/**
+	 * Each config's state during the sweep
+	 */
+	private class Trial {
+		final SweepConfig config;
+		final MatrixANN<E> ann;
+		int next; // index of the next training sample
+		long samples, nanos;
+		double error = Double.POSITIVE_INFINITY;
+		int rounds;
+
+		Trial(SweepConfig config) {
+			this.config = config;
+			this.ann = config.build();
+		}
+
+		Trial train(long budget) {
+			long start = System.nanoTime();
+			for (long i = 0; i < budget; i++) {
+				ann.train(inputs[next], labels[next]);
+				next = (next + 1) % inputs.length;
+			}
+			nanos += System.nanoTime() - start;
+			samples += budget;
+			rounds++;
+			error = score();
+			return this;
+		}
+
+		double score() {
+			double total = 0;
+			for (int i = 0; i < inputs.length; i++) {
+				ann.setInputs(inputs[i]);
+				ann.processLayers();
+				total += ann.error(labels[i], ann.getOutput());
+			}
+			double mean = total / inputs.length;
+			return Double.isNaN(mean) ? Double.POSITIVE_INFINITY : mean;
+		}
+
+		SweepResult result() {
+			return new SweepResult(config, error, nanos, samples, rounds);
+		}
+	}
+
+	/**
+	 * Runs successive halving over {@code configs}
+	 * 
+	 * @param configs
+	 * @param initialSamples samples each config trains on in the first round
+	 * @return every config's result, best first: configs that survived longer rank higher, then lower error
+	 * @throws InterruptedException
+	 */
+	public List<SweepResult> run(List<SweepConfig> configs, long initialSamples) throws InterruptedException {
+		List<Trial> trials = new ArrayList<>();
+		for (SweepConfig config : configs) {
+			trials.add(new Trial(config));
+		}
+		Comparator<Trial> byError = Comparator.comparingDouble(trial -> trial.error);
+		List<Trial> survivors = new ArrayList<>(trials);
+		long budget = initialSamples;
+		for (int round = 0; round < maxRounds && !survivors.isEmpty(); round++) {
+			List<Future<Trial>> futures = new ArrayList<>();
+			for (Trial trial : survivors) {
+				long samples = budget;
+				futures.add(executor.submit(() -> trial.train(samples)));
+			}
+			for (Future<Trial> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			if (survivors.size() == 1)
+				break;
+			survivors.sort(byError);
+			survivors = new ArrayList<>(survivors.subList(0, (survivors.size() + eta - 1) / eta));
+			budget *= eta;
+		}
+		trials.sort(Comparator.comparingInt((Trial trial) -> -trial.rounds).thenComparing(byError));
+		List<SweepResult> results = new ArrayList<>();
+		for (Trial trial : trials) {
+			results.add(trial.result());
+		}
+		return results;
+	}
+
+	/**
+	 * Stops the executor once no more sweeps will be run
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	private static Double[][] andInputs() {
+		Double[][] inputs = new Double[LogicalAND.possibleInputs.length][];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = ArrayConversionUtils.numbersToDoubles(LogicalAND.possibleInputs[i]);
+		}
+		return inputs;
+	}
+
+	private static Double[][] andLabels(Double[][] inputs) {
+		Double[][] labels = new Double[inputs.length][];
+		for (int i = 0; i < inputs.length; i++) {
+			labels[i] = ArrayConversionUtils.numbersToDoubles(LogicalAND.output(inputs[i]));
+		}
+		return labels;
+	}
+
+	private static List<SweepConfig> andGrid() {
+		return SweepConfig.grid(new double[] { 0.01, 0.1, 0.5 }, new double[] { 10, 100, 1000 },
+				new boolean[] { true, false }, new ActivationFunction[] { new SigmoidFunction(), null },
+				new int[][] { { 2, 1 }, { 2, 2, 1 } });
+	}
+
+	/**
+	 * Sweeps a small grid on logical AND
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		Double[][] inputs = andInputs();
+		HyperparameterSweep<Double> sweep = new HyperparameterSweep<>(inputs, andLabels(inputs));
+		List<SweepResult> results = sweep.run(andGrid(), 20);
+		sweep.shutdown();
+		System.out.print(SweepResult.report(results));
+	}
+
+	public static void test() {
+		System.out.println("Testing HyperparameterSweep on logical AND");
+		System.out.println("------------------------------------------");
+		Double[][] inputs = andInputs(), labels = andLabels(inputs);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			new HyperparameterSweep<>(new Double[0][], new Double[0][], executor);
+			throw new AssertionError("Took an empty dataset");
+		} catch (IllegalArgumentException e) {
+			System.out.println("empty dataset: " + e.getMessage());
+		}
+		try {
+			new HyperparameterSweep<>(inputs, new Double[3][], executor);
+			throw new AssertionError("Took 4 inputs with 3 labels");
+		} catch (DifferentLengthsException e) {
+			System.out.println("mismatched dataset: " + e.getMessage());
+		}
+
+		List<SweepConfig> configs = andGrid();
+		HyperparameterSweep<Double> sweep = new HyperparameterSweep<>(inputs, labels, executor);
+		List<SweepResult> results;
+		try {
+			results = sweep.run(configs, 20);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} finally {
+			sweep.shutdown();
+		}
+		SweepResult best = results.get(0);
+		System.out.println(configs.size() + " configs, best " + best.getConfig() + " with error " + best.getError()
+				+ " after " + best.getRounds() + " rounds");
+		if (results.size() != configs.size())
+			throw new AssertionError(results.size() + " results for " + configs.size() + " configs");
+		for (int i = 1; i < results.size(); i++) {
+			SweepResult a = results.get(i - 1), b = results.get(i);
+			if (a.getRounds() < b.getRounds() || a.getRounds() == b.getRounds() && a.getError() > b.getError())
+				throw new AssertionError("Results " + (i - 1) + " and " + i + " are out of order");
+		}
+		if (results.get(1).getRounds() == best.getRounds())
+			throw new AssertionError("More than one config survived every round");
+		if (best.getSamples() <= results.get(1).getSamples())
+			throw new AssertionError("The survivor didn't get the biggest budget");
+		if (!(best.getError() < results.get(results.size() - 1).getError()))
+			throw new AssertionError("The survivor scored no better than the first config cut");
+	}
+}
@@ -0,0 +1,108 @@
+package ann.sweep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import ann.ActivationFunction;
+import ann.MatrixANN;
+import ann.MatrixANN.MatrixANNBuilder;
+
+/**
+ * One combination of MatrixANNBuilder parameters to try in a HyperparameterSweep
+ * 
+ * @author Benito
+ *
+ */
+public class SweepConfig {
+	private final double testStepSize;
+	private final double stepFactor;
+	private final boolean simultaneousChanges;
+	private final ActivationFunction activationFunction; // null for none, like MatrixANN
+	private final int[] layerSizes;
+
+	public SweepConfig(double testStepSize, double stepFactor, boolean simultaneousChanges,
+			ActivationFunction activationFunction, int[] layerSizes) {
+		this.testStepSize = testStepSize;
+		this.stepFactor = stepFactor;
+		this.simultaneousChanges = simultaneousChanges;
+		this.activationFunction = activationFunction;
+		this.layerSizes = layerSizes.clone();
+	}
+
+	/**
+	 * @return a fresh, untrained MatrixANN with these parameters
+	 */
+	public <E extends Number> MatrixANN<E> build() {
+		return new MatrixANNBuilder<E>().testStepSize(testStepSize).stepFactor(stepFactor)
+				.simultaneousChanges(simultaneousChanges).activationFunction(activationFunction).build(layerSizes);
+	}
+
+	public double getTestStepSize() {
+		return testStepSize;
+	}
+
+	public double getStepFactor() {
+		return stepFactor;
+	}
+
+	public boolean getSimultaneousChanges() {
+		return simultaneousChanges;
+	}
+
+	public ActivationFunction getActivationFunction() {
+		return activationFunction;
+	}
+
+	public int[] getLayerSizes() {
+		return layerSizes.clone();
+	}
+
+	/**
+	 * Every combination of the given values
+	 */
+	public static List<SweepConfig> grid(double[] testStepSizes, double[] stepFactors, boolean[] simultaneousChanges,
+			ActivationFunction[] activationFunctions, int[][] layerSizes) {
+		List<SweepConfig> configs = new ArrayList<>();
+		for (double testStepSize : testStepSizes)
+			for (double stepFactor : stepFactors)
+				for (boolean simultaneous : simultaneousChanges)
+					for (ActivationFunction func : activationFunctions)
+						for (int[] sizes : layerSizes)
+							configs.add(new SweepConfig(testStepSize, stepFactor, simultaneous, func, sizes));
+		return configs;
+	}
+
+	/**
+	 * {@code n} random combinations. Step sizes and factors are drawn log-uniformly from [min, max], the rest
+	 * uniformly from the given choices. The same seed gives the same configs.
+	 */
+	public static List<SweepConfig> random(int n, long seed, double minTestStepSize, double maxTestStepSize,
+			double minStepFactor, double maxStepFactor, boolean[] simultaneousChanges,
+			ActivationFunction[] activationFunctions, int[][] layerSizes) {
+		SplittableRandom random = new SplittableRandom(seed);
+		List<SweepConfig> configs = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			configs.add(new SweepConfig(logUniform(random, minTestStepSize, maxTestStepSize),
+					logUniform(random, minStepFactor, maxStepFactor),
+					simultaneousChanges[random.nextInt(simultaneousChanges.length)],
+					activationFunctions[random.nextInt(activationFunctions.length)],
+					layerSizes[random.nextInt(layerSizes.length)]));
+		}
+		return configs;
+	}
+
+	private static double logUniform(SplittableRandom random, double min, double max) {
+		if (min >= max)
+			return min;
+		return Math.exp(random.nextDouble(Math.log(min), Math.log(max)));
+	}
+
+	public String toString() {
+		return "testStepSize=" + testStepSize + " stepFactor=" + stepFactor + " simultaneousChanges="
+				+ simultaneousChanges + " activationFunction="
+				+ (activationFunction == null ? "none" : activationFunction.getClass().getSimpleName())
+				+ " layerSizes=" + Arrays.toString(layerSizes);
+	}
+}
@@ -0,0 +1,70 @@
+package ann.sweep;
+
+import java.util.List;
+
+/**
+ * How one SweepConfig did: its error on the dataset when it was last evaluated, how long it trained, and how
+ * many successive halving rounds it survived
+ * 
+ * @author Benito
+ *
+ */
+public class SweepResult {
+	private final SweepConfig config;
+	private final double error;
+	private final long trainingNanos;
+	private final long samples;
+	private final int rounds;
+
+	public SweepResult(SweepConfig config, double error, long trainingNanos, long samples, int rounds) {
+		this.config = config;
+		this.error = error;
+		this.trainingNanos = trainingNanos;
+		this.samples = samples;
+		this.rounds = rounds;
+	}
+
+	public SweepConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return mean error per sample over the dataset
+	 */
+	public double getError() {
+		return error;
+	}
+
+	/**
+	 * @return wall-clock time spent training this config
+	 */
+	public long getTrainingNanos() {
+		return trainingNanos;
+	}
+
+	public long getSamples() {
+		return samples;
+	}
+
+	public int getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * One line per result, in the order given (HyperparameterSweep.run returns them best first)
+	 * 
+	 * @param results
+	 * @return
+	 */
+	public static String report(List<SweepResult> results) {
+		StringBuilder ret = new StringBuilder();
+		ret.append(String.format("%4s  %12s  %10s  %8s  %6s  %s%n", "rank", "error", "seconds", "samples", "rounds",
+				"config"));
+		for (int i = 0; i < results.size(); i++) {
+			SweepResult result = results.get(i);
+			ret.append(String.format("%4d  %12.6g  %10.3f  %8d  %6d  %s%n", i + 1, result.error,
+					result.trainingNanos / 1e9, result.samples, result.rounds, result.config));
+		}
+		return ret.toString();
+	}
+}
@@ -1,20 +1,36 @@
-package math;
-
-/**
- * ArrayConversionUtils
- * 
- * Static methods for converting between arrays of different types
- * 
- * @author Benito
- *
- */
-public class ArrayConversionUtils {
-
-	public static Double[] numbersToDoubles(Number[] numbers) {
-		Double[] doubles = new Double[numbers.length];
-		for(int i = 0; i < numbers.length; i++) {
-			doubles[i] = numbers[i].doubleValue();
-		}
-		return doubles;
-	}
-}
+package math;
+
+/**
+ * ArrayConversionUtils
+ * 
+ * Static methods for converting between arrays of different types
+ * 
+ * @author Benito
+ *
+ */
+public class ArrayConversionUtils {
+
+	public static Double[] numbersToDoubles(Number[] numbers) {
+		Double[] doubles = new Double[numbers.length];
+		for(int i = 0; i < numbers.length; i++) {
+			doubles[i] = numbers[i].doubleValue();
+		}
+		return doubles;
+	}
+
+	public static double[] numbersToPrimitiveDoubles(Number[] numbers) {
+		double[] doubles = new double[numbers.length];
+		for(int i = 0; i < numbers.length; i++) {
+			doubles[i] = numbers[i].doubleValue();
+		}
+		return doubles;
+	}
+
+	public static Double[] doublesToDoubles(double[] primitives) {
+		Double[] doubles = new Double[primitives.length];
+		for(int i = 0; i < primitives.length; i++) {
+			doubles[i] = primitives[i];
+		}
+		return doubles;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,430 @@
+package math;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+import math.exceptions.DifferentLengthsException;
+
+/**
+ * Matrix stored as a block of primitive doubles inside a larger double[]
+ *
+ * Used to view part of a flat buffer (e.g. the ANN's ParameterArena) as a Matrix without copying or boxing.
+ * The block holds {@code majors} major vectors of {@code minors} elements each, one after the other: major
+ * vector i, element j lives at {@code base[offset + i * minors + j]}. Like Matrix, the orientation decides
+ * what the major vectors are: rows for ROW_COL, so (r, c) is at {@code offset + r * cols + c}, and cols for
+ * COL_ROW. transpose() only flips the orientation; reorient() moves the data inside the block. Writes go
+ * straight to the buffer.
+ *
+ * Every write through this matrix or its vector views (and every rebase, transpose and reorient) bumps its
+ * version, so callers can tell whether it changed since they last looked. Code that writes into the buffer
+ * directly must call touch().
+ *
+ * Code that reads the buffer itself, like the ANN's primitive predict and backprop, expects ROW_COL blocks.
+ * Transposing or reorienting a view into a ParameterArena changes what those see.
+ *
+ * @author Benito
+ *
+ */
+public class FlatMatrix extends Matrix<Double> {
+	private double[] base;
+	private final int offset;
+	private int majors, minors; // swapped by reorient
+	private volatile long version; // written by one thread at a time, read by any
+
+	/**
+	 * ROW_COL view of {@code rows} by {@code cols} doubles starting at {@code base[offset]}
+	 *
+	 * @param base
+	 * @param offset
+	 * @param rows
+	 * @param cols
+	 */
+	public FlatMatrix(double[] base, int offset, int rows, int cols) {
+		this.base = base;
+		this.offset = offset;
+		this.majors = rows;
+		this.minors = cols;
+		orientation = ROW_COL;
+	}
+
+	/**
+	 * Points this matrix at another buffer with the same layout. The field isn't volatile, so other threads
+	 * reading through this matrix may keep seeing the old buffer; hand them a new matrix instead.
+	 *
+	 * @param base
+	 */
+	public void rebase(double[] base) {
+		this.base = base;
+		version++;
+	}
+
+	/**
+	 * @return number of changes so far
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Marks the matrix changed, after writing into its buffer without going through it
+	 */
+	public void touch() {
+		version++;
+	}
+
+	public double[] getBase() {
+		return base;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int size() {
+		return majors * minors;
+	}
+
+	/**
+	 * @return position of (r, c) in the buffer
+	 */
+	private int index(int r, int c) {
+		return orientation == ROW_COL ? offset + r * minors + c : offset + c * minors + r;
+	}
+
+	@Override
+	public void set(int r, int c, Double val) {
+		base[index(r, c)] = val;
+		version++;
+	}
+
+	public void set(int r, int c, double val) {
+		base[index(r, c)] = val;
+		version++;
+	}
+
+	@Override
+	public Double get(int r, int c) {
+		return base[index(r, c)];
+	}
+
+	public double getDouble(int r, int c) {
+		return base[index(r, c)];
+	}
+
+	@Override
+	public int numRows() {
+		return orientation == ROW_COL ? majors : minors;
+	}
+
+	@Override
+	public int numCols() {
+		return orientation == ROW_COL ? minors : majors;
+	}
+
+	@Override
+	public int maxMajorLen() {
+		return minors;
+	}
+
+	@Override
+	public int maxMinorLen() {
+		return majors;
+	}
+
+	@Override
+	public void addTo(int r, int c, Number x) {
+		base[index(r, c)] += x.doubleValue();
+		version++;
+	}
+
+	/**
+	 * Dot product of each major vector with {@code x}
+	 */
+	private double[] majorDots(double[] x) {
+		double[] ans = new double[majors];
+		for (int i = 0, major = offset; i < majors; i++, major += minors) {
+			double sum = 0;
+			for (int j = 0; j < minors; j++) {
+				sum += base[major + j] * x[j];
+			}
+			ans[i] = sum;
+		}
+		return ans;
+	}
+
+	/**
+	 * Sum of the major vectors, each scaled by its element of {@code x}
+	 */
+	private double[] majorSums(double[] x) {
+		double[] sums = new double[minors];
+		for (int i = 0, major = offset; i < majors; i++, major += minors) {
+			double xi = x[i];
+			for (int j = 0; j < minors; j++) {
+				sums[j] += base[major + j] * xi;
+			}
+		}
+		return sums;
+	}
+
+	private static double[] unbox(Number[] vector) {
+		double[] x = new double[vector.length];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = vector[i].doubleValue();
+		}
+		return x;
+	}
+
+	@Override
+	protected double[] dots(Number[] vector) {
+		if (vector.length != numCols())
+			throw new DifferentLengthsException("Vector lengths differ");
+		double[] x = unbox(vector);
+		return orientation == ROW_COL ? majorDots(x) : majorSums(x);
+	}
+
+	@Override
+	public Double[] mult(VectorView vector) {
+		if (vector.length() != numCols())
+			throw new DifferentLengthsException("Vector lengths differ");
+		double[] x = new double[vector.length()];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = vector.getDouble(i);
+		}
+		return box(orientation == ROW_COL ? majorDots(x) : majorSums(x));
+	}
+
+	@Override
+	public Double[] transposeMult(Number[] vector) {
+		if (vector.length != numRows())
+			throw new DifferentLengthsException("Vector lengths differ");
+		double[] x = unbox(vector);
+		return box(orientation == ROW_COL ? majorSums(x) : majorDots(x));
+	}
+
+	private static Double[] box(double[] x) {
+		Double[] ans = new Double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			ans[i] = x[i];
+		}
+		return ans;
+	}
+
+	@Override
+	public void setRow(int r, Double[] row) {
+		if (row.length != numCols())
+			throw new DifferentLengthsException("Row length differs from number of cols");
+		for (int c = 0; c < row.length; c++) {
+			base[index(r, c)] = row[c];
+		}
+		version++;
+	}
+
+	@Override
+	public void setCol(int c, Double[] col) {
+		if (col.length != numRows())
+			throw new DifferentLengthsException("Col length differs from number of rows");
+		for (int r = 0; r < col.length; r++) {
+			base[index(r, c)] = col[r];
+		}
+		version++;
+	}
+
+	@Override
+	public void setMajorVector(int major, Double[] majorVector) {
+		if (majorVector.length != minors)
+			throw new DifferentLengthsException("Major vector length differs from the matrix's");
+		for (int j = 0; j < minors; j++) {
+			base[offset + major * minors + j] = majorVector[j];
+		}
+		version++;
+	}
+
+	@Override
+	public void setMinorVector(int minor, Double[] minorVector) {
+		if (minorVector.length != majors)
+			throw new DifferentLengthsException("Minor vector length differs from the matrix's");
+		for (int i = 0; i < majors; i++) {
+			base[offset + i * minors + minor] = minorVector[i];
+		}
+		version++;
+	}
+
+	@Override
+	public Double[] getRow(int r) {
+		Double[] row = new Double[numCols()];
+		for (int c = 0; c < row.length; c++) {
+			row[c] = base[index(r, c)];
+		}
+		return row;
+	}
+
+	@Override
+	public Double[] getCol(int c) {
+		Double[] col = new Double[numRows()];
+		for (int r = 0; r < col.length; r++) {
+			col[r] = base[index(r, c)];
+		}
+		return col;
+	}
+
+	@Override
+	public Double[] getMajorVector(int major) {
+		return majorView(major).toArray();
+	}
+
+	@Override
+	public Double[] getMinorVector(int minor) {
+		return minorView(minor).toArray();
+	}
+
+	/**
+	 * View of major vector {@code major}: consecutive doubles in the buffer
+	 */
+	@Override
+	public VectorView<Double> majorView(int major) {
+		return new FlatView(offset + major * minors, 1, minors);
+	}
+
+	/**
+	 * View of minor vector {@code minor}: every {@code minors}-th double in the block
+	 */
+	@Override
+	public VectorView<Double> minorView(int minor) {
+		return new FlatView(offset + minor, minors, majors);
+	}
+
+	/**
+	 * Logical transpose: flips the orientation, so rows become cols, without touching the buffer
+	 */
+	@Override
+	public void transpose() {
+		super.transpose();
+		version++;
+	}
+
+	/**
+	 * Moves the block to the other orientation, keeping its rows and cols. Square blocks are transposed in
+	 * place, others through a copy of the block.
+	 */
+	@Override
+	public void reorient() {
+		if (majors == minors) {
+			for (int i = 0; i < majors; i++) {
+				for (int j = i + 1; j < minors; j++) {
+					int a = offset + i * minors + j, b = offset + j * minors + i;
+					double t = base[a];
+					base[a] = base[b];
+					base[b] = t;
+				}
+			}
+		} else {
+			double[] block = new double[size()];
+			System.arraycopy(base, offset, block, 0, block.length);
+			for (int i = 0; i < majors; i++) {
+				for (int j = 0; j < minors; j++) {
+					base[offset + j * majors + i] = block[i * minors + j];
+				}
+			}
+		}
+		int majors = this.majors;
+		this.majors = minors;
+		this.minors = majors;
+		orientation = orientation.flip();
+		version++;
+	}
+
+	/**
+	 * Strided window onto the block: element i is {@code base[start + i * stride]}. Writes bump the matrix's
+	 * version.
+	 */
+	private class FlatView extends VectorView<Double> {
+		private final int start, stride;
+
+		FlatView(int start, int stride, int length) {
+			super(null, 0, false, 0, 0, length);
+			this.start = start;
+			this.stride = stride;
+		}
+
+		@Override
+		public Double get(int i) {
+			return base[start + i * stride];
+		}
+
+		@Override
+		public double getDouble(int i) {
+			return base[start + i * stride];
+		}
+
+		@Override
+		public void set(int i, Double val) {
+			base[start + i * stride] = val;
+			version++;
+		}
+
+		@Override
+		public VectorView<Double> slice(int from, int step, int len) {
+			return new FlatView(start + from * stride, stride * step, len);
+		}
+	}
+
+	@Override
+	public Spliterator.OfDouble doubleSpliterator() {
+		return Spliterators.spliterator(base, offset, offset + size(), Spliterator.ORDERED);
+	}
+
+	@Override
+	public Iterator<Double> iterator() {
+		return new Iterator<Double>() {
+			private int i = offset;
+
+			@Override
+			public boolean hasNext() {
+				return i < offset + size();
+			}
+
+			@Override
+			public Double next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return base[i++];
+			}
+		};
+	}
+
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+		for (int r = 0; r < numRows(); r++) {
+			for (int c = 0; c < numCols(); c++) {
+				ret.append(base[index(r, c)]);
+				ret.append("  ");
+			}
+			ret.append("\n");
+		}
+		return ret.toString();
+	}
+
+	public static void test() {
+		System.out.println("Testing FlatMatrix");
+		System.out.println("------------------");
+		double[] buffer = { -1, 1, 2, 3, 4, 5, 6, -1 };
+		FlatMatrix M = new FlatMatrix(buffer, 1, 2, 3);
+		System.out.println(M.getOrientation() + "\n" + M);
+		System.out.println("Col 1 through a view: " + M.getColView(1));
+		M.getColView(1).set(1, 50.);
+		M.transpose();
+		System.out.println("Transposed, " + M.numRows() + " by " + M.numCols() + ":\n" + M);
+		M.transpose();
+		Number[] product = M.mult(new Double[] { 1., 1., 1. });
+		System.out.println("Reorienting to COL_ROW, should print the same");
+		M.reorient();
+		System.out.println(M.getOrientation() + "\n" + M);
+		Number[] reoriented = M.mult(new Double[] { 1., 1., 1. });
+		if (!Arrays.equals(product, reoriented) || M.get(1, 1) != 50.
+				|| buffer[0] != -1 || buffer[7] != -1)
+			throw new AssertionError("Reorienting changed the matrix");
+	}
+}
@@ -1,311 +1,527 @@
-package math;
-
-import java.util.Iterator;
-
-import math.exceptions.InvalidOrientationException;
-import math.exceptions.LongMinorVectorException;
-import math.exceptions.MinorVectorException;
-import math.exceptions.ShortMinorVectorException;
-
-/**
- * JaggedMatrix
- * 
- * Convenient class for manipulating jagged 2D arrays
- * Not as mathematically functional as child class Matrix
- * 
- * Orientations
- * Has two possible orientations which determine its internal and external structure:
- * ROW_COL: 
- * matrix is created as Number[rows][cols]
- * It is easy and efficient to access rows, with matrix[row]
- * COL_ROW:
- * matrix is created as Number[cols][rows]
- * It is easy and efficient to access cols, with matrix[col]
- * 
- * All the internals of JaggedMatrix work the same regardless of orientation. No switch statements are needed
- * except in constructors to set the orientation, and in methods specific to rows or cols, which should contain 
- * no actual code of their own, but defer to the more general axis based methods. Axes are described below.
- * 
- * Axes
- * Some methods in this class refer to a major axis and a minor axis. These depend on the orientation.
- * In ROW_COL, the major axis is the rows
- * In COL_ROW, the major axis is the cols
- * 
- * Warning: Initializing values is the programmer's responsibility! 
- * Will write convenient methods to initialize everything to 0 or "" 
- * 
- * @author Benito
- *
- * @param <E>
- */
-public class JaggedMatrix<E extends Number> implements Iterable<E> { // E may not need to extend Number
-	protected Number[][] matrix; // This may make more sense as Object[][]
-	private String orientation;
-
-	// possible orientations
-	public static final String ROW_COL = "row.col";
-	public static final String COL_ROW = "col.row";
-
-	/**
-	 * Constructs empty JaggedMatrix. Does not initialize matrix. Default
-	 * orientation is ROW_COL
-	 */
-	public JaggedMatrix() {
-		orientation = ROW_COL;
-	}
-
-	/**
-	 * Constructs JaggedMatrix and partially initializes matrix to store
-	 * {@code majors} major vectors. Does not initialize each row.
-	 * 
-	 * @param majors
-	 */
-	public JaggedMatrix(int majors) {
-		this();
-		initMajorAxis(majors);
-	}
-
-	/**
-	 * Constructs JaggedMatrix and partially initializes matrix to store
-	 * {@code majors} major vector. Sets orientation to given value. Does not
-	 * initialize each major vector.
-	 * 
-	 * @param majors
-	 * @param orientation
-	 */
-	public JaggedMatrix(int majors, String orientation) {
-		this(majors);
-		this.orientation = orientation;
-	}
-
-	/**
-	 * Initializes matrix to store {@code majors} major vectors (either row or
-	 * column vectors). Does not initialize each major vector.
-	 * 
-	 * @param majors
-	 */
-	private void initMajorAxis(int majors) {
-		matrix = new Number[majors][];
-	}
-
-	/** 
-	 * Sets major axis vector {@code majorNum} to the given array {@code majorVector}
-	 * 
-	 * @param majorNum
-	 * @param majorVector
-	 */
-	public void setMajorVector(int majorNum, E[] majorVector) {
-		matrix[majorNum] = majorVector;
-	}
-
-	/**
-	 * Sets minor axis {@code minorNum} vector to the given array {@code minorVector}
-	 * 
-	 * @param minorNum
-	 * @param minorVector
-	 * @throws MinorVectorException
-	 */
-	public void setMinorVector(int minorNum, E[] minorVector) throws MinorVectorException {
-		if (minorVector.length > matrix.length)
-			throw new LongMinorVectorException();
-		for (int majorNum = 0; majorNum < matrix.length; majorNum++) {
-			if (majorNum >= minorVector.length) {
-				throw new ShortMinorVectorException();
-			}
-			if (minorNum >= matrix[majorNum].length) {
-				throw new LongMinorVectorException();
-			}
-			matrix[majorNum][minorNum] = minorVector[majorNum];
-		}
-	}
-
-	/**
-	 * Sets row {@code r} to the given array {@code row}
-	 * 
-	 * @param r
-	 * @param row
-	 * @throws MinorVectorException
-	 */
-	public void setRow(int r, E[] row) throws MinorVectorException {
-		switch (orientation) {
-		case ROW_COL:
-			setMajorVector(r, row);
-			break;
-		case COL_ROW:
-			setMinorVector(r, row);
-			break;
-		default:
-			throw new InvalidOrientationException();
-		}
-	}
-
-	/**
-	 * Sets column {@code c} to the given array {@code row}
-	 * 
-	 * @param c
-	 * @param col
-	 * @throws MinorVectorException
-	 */
-	public void setCol(int c, E[] col) throws MinorVectorException {
-		switch (orientation) {
-		case ROW_COL:
-			setMinorVector(c, col);
-			break;
-		case COL_ROW:
-			setMajorVector(c, col);
-			break;
-		default:
-			throw new InvalidOrientationException();
-		}
-	}
-
-	public E[] getMajorVector(int major) {
-		return (E[]) matrix[major];
-	}
-
-	public E[] getMinorVector(int minor) {
-		int minorVectorLen = 0;
-		for (int majorNum = 0; majorNum < matrix.length; majorNum++) {
-			if (minor >= matrix[majorNum].length)
-				break;
-			minorVectorLen++;
-		}
-		Object[] minorVector = new Object[minorVectorLen];
-		for (int majorNum = 0; majorNum < minorVectorLen; majorNum++) {
-			minorVector[majorNum] = matrix[majorNum][minor];
-		}
-		return (E[]) minorVector;
-	}
-
-	public E[] getRow(int r) {
-		switch (orientation) {
-		case ROW_COL:
-			return getMajorVector(r);
-		case COL_ROW:
-			return getMinorVector(r);
-		default:
-			throw new InvalidOrientationException();
-		}
-	}
-
-	public E[] getCol(int c) {
-		switch (orientation) {
-		case ROW_COL:
-			return getMinorVector(c);
-		case COL_ROW:
-			return getMajorVector(c);
-		default:
-			throw new InvalidOrientationException();
-		}
-	}
-
-	/**
-	 * 
-	 * @return length of the longest major axis vector
-	 */
-	public int maxMajorLen() {
-		int max = 0;
-		for (int major = 0; major < matrix.length; major++) {
-			int len = matrix[major].length;
-			if (len > max)
-				max = len;
-		}
-		return max;
-	}
-
-	/**
-	 * 
-	 * @return length of the longest minor axis vector (which is just the number of major axis vectors)
-	 */
-	public int maxMinorLen() {
-		return matrix.length;
-	}
-
-	public int maxRowLen() {
-		switch (orientation) {
-		case ROW_COL:
-			return maxMajorLen();
-		case COL_ROW:
-			return maxMinorLen();
-		default:
-			throw new InvalidOrientationException();
-		}
-	}
-
-	public int maxColLen() {
-		switch (orientation) {
-		case ROW_COL:
-			return maxMinorLen();
-		case COL_ROW:
-			return maxMajorLen();
-		default:
-			throw new InvalidOrientationException();
-		}
-	}
-
-	/**
-	 * Returns a String representation of matrix from top to bottom, accounting for
-	 * the orientation
-	 */
-	public String toString() {
-		StringBuilder ret = new StringBuilder();
-		// to print nicely, toString has to loop over rows
-		int maxCol = maxColLen();
-		for (int row = 0; row < maxCol; row++) {
-			ret.append(rowStringBuilder(row));
-		}
-		return ret.toString();
-	}
-
-	/**
-	 * Builds String for row {@code row}
-	 * @param row
-	 * @return
-	 */
-	private StringBuilder rowStringBuilder(int row) {
-		StringBuilder ret = new StringBuilder(); // should calculate size of ret 
-		switch (orientation) {
-		case ROW_COL:
-			for (int col = 0; col < matrix[row].length; col++) {
-				ret.append(matrix[row][col]);
-				ret.append("  ");
-			}
-			break;
-		case COL_ROW:
-			for (int col = 0; col < matrix.length; col++) {
-				if (row < matrix[col].length)
-					ret.append(matrix[col][row]);
-				else
-					ret.append("   "); // generalize formatting
-				ret.append("  ");
-			}
-			break;
-		default:
-			throw new InvalidOrientationException();
-		}
-		return ret.append("\n");
-	}
-
-	/**
-	 * Simple tests to see JaggedMatrix functionality
-	 */
-	public static void test() {
-		System.out.println("Testing JaggedMatrix");
-		System.out.println("--------------------");
-		System.out.println("Creating ROW_COL JaggedMatrix");
-		JaggedMatrix<Double> M = new JaggedMatrix<>(3);
-		Double[][] doubles = new Double[3][];
-		doubles[0] = new Double[] { 0., 1., 2. };
-		doubles[1] = new Double[] { 3., 4. };
-		doubles[2] = new Double[] { 5., 6., 7., 8. };
-		for (int i = 0; i < doubles.length; i++) {
-			M.setMajorVector(i, doubles[i]); // setMajorVector is recommended over setRow and setCol because it is
-												// always safe
-		}
-	}
-
-	@Override
-	public Iterator<E> iterator() {
-		return new JaggedMatrixIterator<E>(matrix);
-	}
-}
+package math;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+import math.exceptions.DifferentLengthsException;
+import math.exceptions.InvalidOrientationException;
+import math.exceptions.LongMinorVectorException;
+import math.exceptions.MinorVectorException;
+import math.exceptions.ShortMinorVectorException;
+
+/**
+ * JaggedMatrix
+ * 
+ * Convenient class for manipulating jagged 2D arrays
+ * Not as mathematically functional as child class Matrix
+ * 
+ * Orientations
+ * Has two possible orientations which determine its internal and external structure:
+ * ROW_COL: 
+ * matrix is created as Number[rows][cols]
+ * It is easy and efficient to access rows, with matrix[row]
+ * COL_ROW:
+ * matrix is created as Number[cols][rows]
+ * It is easy and efficient to access cols, with matrix[col]
+ * 
+ * All the internals of JaggedMatrix work the same regardless of orientation. No switch statements are needed
+ * except in constructors to set the orientation, and in methods specific to rows or cols, which should contain 
+ * no actual code of their own, but defer to the more general axis based methods. Axes are described below.
+ * The orientation is an Orientation enum, so those switches are cheap.
+ * 
+ * A rectangular matrix can be converted between orientations with reorient(), which moves the data, while
+ * transpose() swaps rows and cols by flipping the orientation alone.
+ * 
+ * Axes
+ * Some methods in this class refer to a major axis and a minor axis. These depend on the orientation.
+ * In ROW_COL, the major axis is the rows
+ * In COL_ROW, the major axis is the cols
+ * 
+ * Warning: Initializing values is the programmer's responsibility! 
+ * Will write convenient methods to initialize everything to 0 or "" 
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class JaggedMatrix<E extends Number> implements Iterable<E> { // E may not need to extend Number
+	protected Number[][] matrix; // This may make more sense as Object[][]
+	protected Orientation orientation;
+
+	// possible orientations, kept here so subclasses can keep writing ROW_COL and COL_ROW
+	public static final Orientation ROW_COL = Orientation.ROW_COL;
+	public static final Orientation COL_ROW = Orientation.COL_ROW;
+
+	// side length under which the recursive transpose stops splitting and just loops
+	private static final int TRANSPOSE_BLOCK = 16;
+
+	/**
+	 * Constructs empty JaggedMatrix. Does not initialize matrix. Default
+	 * orientation is ROW_COL
+	 */
+	public JaggedMatrix() {
+		orientation = ROW_COL;
+	}
+
+	/**
+	 * Constructs JaggedMatrix and partially initializes matrix to store
+	 * {@code majors} major vectors. Does not initialize each row.
+	 * 
+	 * @param majors
+	 */
+	public JaggedMatrix(int majors) {
+		this();
+		initMajorAxis(majors);
+	}
+
+	/**
+	 * Constructs JaggedMatrix and partially initializes matrix to store
+	 * {@code majors} major vector. Sets orientation to given value. Does not
+	 * initialize each major vector.
+	 * 
+	 * @param majors
+	 * @param orientation
+	 */
+	public JaggedMatrix(int majors, Orientation orientation) {
+		this(majors);
+		this.orientation = orientation;
+	}
+
+	/**
+	 * Initializes matrix to store {@code majors} major vectors (either row or
+	 * column vectors). Does not initialize each major vector.
+	 * 
+	 * @param majors
+	 */
+	private void initMajorAxis(int majors) {
+		matrix = new Number[majors][];
+	}
+
+	/** 
+	 * Sets major axis vector {@code majorNum} to the given array {@code majorVector}
+	 * 
+	 * @param majorNum
+	 * @param majorVector
+	 */
+	public void setMajorVector(int majorNum, E[] majorVector) {
+		matrix[majorNum] = majorVector;
+	}
+
+	/**
+	 * Sets minor axis {@code minorNum} vector to the given array {@code minorVector}
+	 * 
+	 * @param minorNum
+	 * @param minorVector
+	 * @throws MinorVectorException
+	 */
+	public void setMinorVector(int minorNum, E[] minorVector) throws MinorVectorException {
+		// check everything up front, so a bad minor vector never leaves the matrix half written
+		if (minorVector.length > matrix.length)
+			throw new LongMinorVectorException();
+		if (minorVector.length < matrix.length)
+			throw new ShortMinorVectorException();
+		for (int majorNum = 0; majorNum < matrix.length; majorNum++) {
+			if (minorNum >= matrix[majorNum].length)
+				throw new LongMinorVectorException();
+		}
+		for (int majorNum = 0; majorNum < matrix.length; majorNum++) {
+			matrix[majorNum][minorNum] = minorVector[majorNum];
+		}
+	}
+
+	/**
+	 * Sets row {@code r} to the given array {@code row}
+	 * 
+	 * @param r
+	 * @param row
+	 * @throws MinorVectorException
+	 */
+	public void setRow(int r, E[] row) throws MinorVectorException {
+		switch (orientation) {
+		case ROW_COL:
+			setMajorVector(r, row);
+			break;
+		case COL_ROW:
+			setMinorVector(r, row);
+			break;
+		default:
+			throw new InvalidOrientationException();
+		}
+	}
+
+	/**
+	 * Sets column {@code c} to the given array {@code row}
+	 * 
+	 * @param c
+	 * @param col
+	 * @throws MinorVectorException
+	 */
+	public void setCol(int c, E[] col) throws MinorVectorException {
+		switch (orientation) {
+		case ROW_COL:
+			setMinorVector(c, col);
+			break;
+		case COL_ROW:
+			setMajorVector(c, col);
+			break;
+		default:
+			throw new InvalidOrientationException();
+		}
+	}
+
+	public Orientation getOrientation() {
+		return orientation;
+	}
+
+	/**
+	 * Logical transpose: rows become cols and cols become rows. Since the orientation only decides how the
+	 * major and minor axes are read, this just flips it and doesn't touch any data.
+	 */
+	public void transpose() {
+		orientation = orientation.flip();
+	}
+
+	/**
+	 * Physically converts a rectangular matrix to the other orientation, keeping its rows and cols. Use it to
+	 * store a matrix in whichever layout the code reading it goes through sequentially.
+	 * 
+	 * Uses a cache-oblivious recursive transpose: blocks are halved along their longer side until they fit in
+	 * cache, whatever the cache size. Square matrices are transposed in place.
+	 * 
+	 * @throws DifferentLengthsException if the major vectors are not all the same length
+	 */
+	public void reorient() {
+		int majors = matrix.length;
+		int minors = majors == 0 ? 0 : matrix[0].length;
+		for (int major = 0; major < majors; major++) {
+			if (matrix[major].length != minors)
+				throw new DifferentLengthsException("Can only reorient a rectangular matrix");
+		}
+		if (majors == minors) {
+			transposeDiagonal(0, majors);
+		} else {
+			Number[][] transposed = new Number[minors][majors];
+			transposeInto(transposed, 0, majors, 0, minors);
+			matrix = transposed;
+		}
+		orientation = orientation.flip();
+	}
+
+	/**
+	 * Copies the block [r0, r1) x [c0, c1) of matrix, transposed, into {@code dst}
+	 */
+	private void transposeInto(Number[][] dst, int r0, int r1, int c0, int c1) {
+		int rows = r1 - r0, cols = c1 - c0;
+		if (rows <= TRANSPOSE_BLOCK && cols <= TRANSPOSE_BLOCK) {
+			for (int r = r0; r < r1; r++) {
+				for (int c = c0; c < c1; c++) {
+					dst[c][r] = matrix[r][c];
+				}
+			}
+		} else if (rows >= cols) {
+			int mid = r0 + rows / 2;
+			transposeInto(dst, r0, mid, c0, c1);
+			transposeInto(dst, mid, r1, c0, c1);
+		} else {
+			int mid = c0 + cols / 2;
+			transposeInto(dst, r0, r1, c0, mid);
+			transposeInto(dst, r0, r1, mid, c1);
+		}
+	}
+
+	/**
+	 * Transposes the square block [d0, d1) x [d0, d1), which sits on the diagonal, in place
+	 */
+	private void transposeDiagonal(int d0, int d1) {
+		int size = d1 - d0;
+		if (size <= TRANSPOSE_BLOCK) {
+			for (int r = d0; r < d1; r++) {
+				for (int c = r + 1; c < d1; c++) {
+					swap(r, c);
+				}
+			}
+			return;
+		}
+		int mid = d0 + size / 2;
+		transposeDiagonal(d0, mid);
+		transposeDiagonal(mid, d1);
+		transposeSwap(d0, mid, mid, d1);
+	}
+
+	/**
+	 * Swaps the block [r0, r1) x [c0, c1), which lies entirely above the diagonal, with its mirror below it
+	 */
+	private void transposeSwap(int r0, int r1, int c0, int c1) {
+		int rows = r1 - r0, cols = c1 - c0;
+		if (rows <= TRANSPOSE_BLOCK && cols <= TRANSPOSE_BLOCK) {
+			for (int r = r0; r < r1; r++) {
+				for (int c = c0; c < c1; c++) {
+					swap(r, c);
+				}
+			}
+		} else if (rows >= cols) {
+			int mid = r0 + rows / 2;
+			transposeSwap(r0, mid, c0, c1);
+			transposeSwap(mid, r1, c0, c1);
+		} else {
+			int mid = c0 + cols / 2;
+			transposeSwap(r0, r1, c0, mid);
+			transposeSwap(r0, r1, mid, c1);
+		}
+	}
+
+	private void swap(int r, int c) {
+		Number tmp = matrix[r][c];
+		matrix[r][c] = matrix[c][r];
+		matrix[c][r] = tmp;
+	}
+
+	public E[] getMajorVector(int major) {
+		return (E[]) matrix[major];
+	}
+
+	/**
+	 * Copies minor vector {@code minor} into a new array. Prefer minorView when a copy isn't needed.
+	 * 
+	 * @param minor
+	 * @return
+	 */
+	public E[] getMinorVector(int minor) {
+		int minorVectorLen = 0;
+		for (int majorNum = 0; majorNum < matrix.length; majorNum++) {
+			if (minor >= matrix[majorNum].length)
+				break;
+			minorVectorLen++;
+		}
+		Object[] minorVector = new Object[minorVectorLen];
+		for (int majorNum = 0; majorNum < minorVectorLen; majorNum++) {
+			minorVector[majorNum] = matrix[majorNum][minor];
+		}
+		return (E[]) minorVector;
+	}
+
+	public E[] getRow(int r) {
+		switch (orientation) {
+		case ROW_COL:
+			return getMajorVector(r);
+		case COL_ROW:
+			return getMinorVector(r);
+		default:
+			throw new InvalidOrientationException();
+		}
+	}
+
+	public E[] getCol(int c) {
+		switch (orientation) {
+		case ROW_COL:
+			return getMinorVector(c);
+		case COL_ROW:
+			return getMajorVector(c);
+		default:
+			throw new InvalidOrientationException();
+		}
+	}
+
+	/**
+	 * View of major vector {@code major}. Reads and writes go straight to the matrix.
+	 * 
+	 * @param major
+	 * @return
+	 */
+	public VectorView<E> majorView(int major) {
+		return VectorView.major(matrix, major);
+	}
+
+	/**
+	 * View of minor vector {@code minor}, without copying it like getMinorVector does
+	 * 
+	 * @param minor
+	 * @return
+	 */
+	public VectorView<E> minorView(int minor) {
+		return VectorView.minor(matrix, minor);
+	}
+
+	public VectorView<E> getRowView(int r) {
+		switch (orientation) {
+		case ROW_COL:
+			return majorView(r);
+		case COL_ROW:
+			return minorView(r);
+		default:
+			throw new InvalidOrientationException();
+		}
+	}
+
+	public VectorView<E> getColView(int c) {
+		switch (orientation) {
+		case ROW_COL:
+			return minorView(c);
+		case COL_ROW:
+			return majorView(c);
+		default:
+			throw new InvalidOrientationException();
+		}
+	}
+
+	/**
+	 * 
+	 * @return length of the longest major axis vector
+	 */
+	public int maxMajorLen() {
+		int max = 0;
+		for (int major = 0; major < matrix.length; major++) {
+			int len = matrix[major].length;
+			if (len > max)
+				max = len;
+		}
+		return max;
+	}
+
+	/**
+	 * 
+	 * @return length of the longest minor axis vector (which is just the number of major axis vectors)
+	 */
+	public int maxMinorLen() {
+		return matrix.length;
+	}
+
+	public int maxRowLen() {
+		switch (orientation) {
+		case ROW_COL:
+			return maxMajorLen();
+		case COL_ROW:
+			return maxMinorLen();
+		default:
+			throw new InvalidOrientationException();
+		}
+	}
+
+	public int maxColLen() {
+		switch (orientation) {
+		case ROW_COL:
+			return maxMinorLen();
+		case COL_ROW:
+			return maxMajorLen();
+		default:
+			throw new InvalidOrientationException();
+		}
+	}
+
+	/**
+	 * Returns a String representation of matrix from top to bottom, accounting for
+	 * the orientation
+	 */
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+		// to print nicely, toString has to loop over rows
+		int maxCol = maxColLen();
+		for (int row = 0; row < maxCol; row++) {
+			ret.append(rowStringBuilder(row));
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * Builds String for row {@code row}
+	 * @param row
+	 * @return
+	 */
+	private StringBuilder rowStringBuilder(int row) {
+		StringBuilder ret = new StringBuilder(); // should calculate size of ret 
+		switch (orientation) {
+		case ROW_COL:
+			for (int col = 0; col < matrix[row].length; col++) {
+				ret.append(matrix[row][col]);
+				ret.append("  ");
+			}
+			break;
+		case COL_ROW:
+			for (int col = 0; col < matrix.length; col++) {
+				if (row < matrix[col].length)
+					ret.append(matrix[col][row]);
+				else
+					ret.append("   "); // generalize formatting
+				ret.append("  ");
+			}
+			break;
+		default:
+			throw new InvalidOrientationException();
+		}
+		return ret.append("\n");
+	}
+
+	/**
+	 * Simple tests to see JaggedMatrix functionality
+	 */
+	public static void test() {
+		System.out.println("Testing JaggedMatrix");
+		System.out.println("--------------------");
+		System.out.println("Creating ROW_COL JaggedMatrix");
+		JaggedMatrix<Double> M = new JaggedMatrix<>(3);
+		Double[][] doubles = new Double[3][];
+		doubles[0] = new Double[] { 0., 1., 2. };
+		doubles[1] = new Double[] { 3., 4. };
+		doubles[2] = new Double[] { 5., 6., 7., 8. };
+		for (int i = 0; i < doubles.length; i++) {
+			M.setMajorVector(i, doubles[i]); // setMajorVector is recommended over setRow and setCol because it is
+												// always safe
+		}
+		System.out.println(M);
+		System.out.println("Viewing col 1 without copying");
+		System.out.println(M.getColView(1));
+		M.getColView(1).set(0, 10.);
+		System.out.println(M);
+		System.out.println("Statistics: " + M.statistics());
+		System.out.println("Norm: " + M.norm());
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new JaggedMatrixIterator<E>(matrix);
+	}
+
+	/**
+	 * Spliterator over every element as a primitive double, splitting along major vectors
+	 * 
+	 * @return
+	 */
+	public Spliterator.OfDouble doubleSpliterator() {
+		return new JaggedMatrixSpliterator(matrix);
+	}
+
+	/**
+	 * @return sequential stream of every element, unboxed
+	 */
+	public DoubleStream doubleStream() {
+		return StreamSupport.doubleStream(doubleSpliterator(), false);
+	}
+
+	/**
+	 * @return parallel stream of every element, unboxed. Major vectors are spread across threads.
+	 */
+	public DoubleStream parallelDoubleStream() {
+		return StreamSupport.doubleStream(doubleSpliterator(), true);
+	}
+
+	/**
+	 * Count, sum, min, max and average of every element, computed in parallel
+	 * 
+	 * @return
+	 */
+	public DoubleSummaryStatistics statistics() {
+		return parallelDoubleStream().summaryStatistics();
+	}
+
+	/**
+	 * Euclidean (Frobenius) norm of all elements, computed in parallel
+	 * 
+	 * @return
+	 */
+	public double norm() {
+		return Math.sqrt(parallelDoubleStream().map(x -> x * x).sum());
+	}
+}
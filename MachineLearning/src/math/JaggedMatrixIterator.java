@@ -1,41 +1,40 @@
-package math;
-
-import java.util.Iterator;
-
-/**
- * Iterator for JaggedMatrix
- * 
- * Iterates along each major axis vector
- * 
- * Warning: not tested
- * 
- * @author Benito
- *
- * @param <E>
- */
-public class JaggedMatrixIterator<E> implements Iterator<E> {
-	private Object[][] matrix;
-	private int currentMajor, currentMinor;
-	
-	public JaggedMatrixIterator(Object[][] matrix) {
-		this.matrix = matrix;
-		currentMajor = currentMinor = 0;
-	}
-
-	@Override
-	public boolean hasNext() {
-		if(currentMajor < matrix.length) return true;
-		return false;
-	}
-
-	@Override
-	public E next() {
-		Object ret = matrix[currentMajor][currentMinor++];
-		if(currentMinor >= matrix[currentMajor].length) {
-			currentMinor = 0;
-			currentMajor++;
-		}
-		return (E) ret;
-	}
-
-}
+package math;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator for JaggedMatrix
+ * 
+ * Iterates along each major axis vector, skipping empty ones
+ * For bulk numeric work use JaggedMatrix.doubleStream instead, which doesn't box
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class JaggedMatrixIterator<E> implements Iterator<E> {
+	private Object[][] matrix;
+	private int currentMajor, currentMinor;
+	
+	public JaggedMatrixIterator(Object[][] matrix) {
+		this.matrix = matrix;
+		currentMajor = currentMinor = 0;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while(currentMajor < matrix.length && currentMinor >= matrix[currentMajor].length) {
+			currentMinor = 0;
+			currentMajor++;
+		}
+		return currentMajor < matrix.length;
+	}
+
+	@Override
+	public E next() {
+		if(!hasNext()) throw new NoSuchElementException();
+		return (E) matrix[currentMajor][currentMinor++];
+	}
+
+}
@@ -0,0 +1,102 @@
+package math;
+
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Primitive Spliterator for JaggedMatrix
+ *
+ * Walks each major axis vector in turn, handing out doubles without boxing. Splits along major vectors, so
+ * every split covers whole major vectors and parallel streams never share one. Empty major vectors are skipped.
+ *
+ * @author Benito
+ *
+ */
+public class JaggedMatrixSpliterator implements Spliterator.OfDouble {
+	private final Number[][] matrix;
+	private int currentMajor, currentMinor;
+	private final int fence; // one past the last major vector covered
+	private long remaining;
+
+	public JaggedMatrixSpliterator(Number[][] matrix) {
+		this(matrix, 0, matrix.length);
+	}
+
+	/**
+	 * Covers major vectors [origin, fence)
+	 *
+	 * @param matrix
+	 * @param origin
+	 * @param fence
+	 */
+	public JaggedMatrixSpliterator(Number[][] matrix, int origin, int fence) {
+		this.matrix = matrix;
+		this.currentMajor = origin;
+		this.currentMinor = 0;
+		this.fence = fence;
+		this.remaining = count(origin, fence);
+	}
+
+	private long count(int from, int to) {
+		long count = 0;
+		for (int major = from; major < to; major++) {
+			count += matrix[major].length;
+		}
+		return count;
+	}
+
+	@Override
+	public boolean tryAdvance(DoubleConsumer action) {
+		while (currentMajor < fence) {
+			Number[] major = matrix[currentMajor];
+			if (currentMinor < major.length) {
+				action.accept(major[currentMinor++].doubleValue());
+				remaining--;
+				return true;
+			}
+			currentMajor++;
+			currentMinor = 0;
+		}
+		return false;
+	}
+
+	@Override
+	public void forEachRemaining(DoubleConsumer action) {
+		for (; currentMajor < fence; currentMajor++) {
+			Number[] major = matrix[currentMajor];
+			for (; currentMinor < major.length; currentMinor++) {
+				action.accept(major[currentMinor].doubleValue());
+			}
+			currentMinor = 0;
+		}
+		remaining = 0;
+	}
+
+	/**
+	 * Hands off the first half of the major vectors that haven't been started yet
+	 */
+	@Override
+	public Spliterator.OfDouble trySplit() {
+		int start = currentMinor == 0 ? currentMajor : currentMajor + 1;
+		int mid = (start + fence) >>> 1;
+		if (mid <= start)
+			return null;
+		JaggedMatrixSpliterator prefix = new JaggedMatrixSpliterator(matrix, currentMajor, mid);
+		prefix.currentMinor = currentMinor;
+		prefix.remaining -= currentMinor;
+		remaining -= prefix.remaining;
+		currentMajor = mid;
+		currentMinor = 0;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return remaining;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | NONNULL;
+	}
+}
@@ -1,30 +1,49 @@
-package math;
-
-/**
- * Useful methods for testing algorithms against the Logical AND operation
- * 
- * @author Benito
- *
- */
-public class LogicalAND {
-	public static final Number[][] possibleInputs = { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 1, 1 } };
-
-	public static Number[] randomInputs() {
-		return new Number[] { (int) (Math.random() * 2), (int) (Math.random() * 2) };
-	}
-
-	/**
-	 * Output expected for given {@code inputs}
-	 * 0.05 wiggle room for floats and doubles
-	 * 
-	 * @param inputs
-	 * @return
+package math;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Useful methods for testing algorithms against the Logical AND operation
+ * 
+ * @author Benito
+ *
+ */
+public class LogicalAND {
+	public static final Number[][] possibleInputs = { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 1, 1 } };
+
+	/**
+	 * Random inputs from this thread's own generator, so threads generating data don't contend on one
+	 * 
+	 * @return
 	 */
-	public static Number[] output(Number[] inputs) {
-		if (inputs[0].doubleValue() < 1.05 && inputs[0].doubleValue() > 0.95 && inputs[1].doubleValue() < 1.05
-				&& inputs[1].doubleValue() > 0.95)
-			return new Number[] { 1 };
-		else
-			return new Number[] { 0 };
-	}
-}
+	public static Number[] randomInputs() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return new Number[] { random.nextInt(2), random.nextInt(2) };
+	}
+
+	/**
+	 * Random inputs from the given generator, for reproducible data. Give each thread its own split().
+	 * 
+	 * @param random
+	 * @return
+	 */
+	public static Number[] randomInputs(SplittableRandom random) {
+		return new Number[] { random.nextInt(2), random.nextInt(2) };
+	}
+
+	/**
+	 * Output expected for given {@code inputs}
+	 * 0.05 wiggle room for floats and doubles
+	 * 
+	 * @param inputs
+	 * @return
+	 */
+	public static Number[] output(Number[] inputs) {
+		if (inputs[0].doubleValue() < 1.05 && inputs[0].doubleValue() > 0.95 && inputs[1].doubleValue() < 1.05
+				&& inputs[1].doubleValue() > 0.95)
+			return new Number[] { 1 };
+		else
+			return new Number[] { 0 };
+	}
+}
@@ -1,141 +1,240 @@
-package math;
-
-import ann.ActivationFunction;
-import math.exceptions.MinorVectorException;
-
-/**
- * Rectangular implementation of JaggedMatrix
- * Good for math n' stuff
- * 
- * @author Benito
- *
- * @param <E>
- */
-public class Matrix<E extends Number> extends JaggedMatrix<E> {
-	
-	/**
-	 * Creates {@code rows} by {@code cols} Matrix
-	 * Initializes all values to 0
-	 * 
-	 * @param rows
-	 * @param cols
-	 */
-	public Matrix(int rows, int cols) {
-		matrix = new Number[rows][cols];
-		for(int r = 0; r < rows; r++) {
-			matrix[r] = new Number[cols];
-			for(int c = 0; c < cols; c++) {
-				matrix[r][c] = 0; // TODO: don't do this here, provide separate init method
-			}
-		}
-	}
-	
-	@Override
-	public void setRow(int r, E[] row) {
-		try {
-			super.setRow(r, row);
-		} catch (MinorVectorException e) {
-			// Since all MajorVectors are the same length and all MinorVectors are the same length in a Matrix, setRow should never actually throw a MinorVectorException
-			e.printStackTrace(); // if it somehow does happen, something went horribly wrong, crash the program
-		}
-	}
-	@Override
-	public void setCol(int c, E[] col) {
-		try {
-			super.setCol(c, col);
-		} catch (MinorVectorException e) {
-			// Since all MajorVectors are the same length and all MinorVectors are the same length in a Matrix, setCol should never actually throw a MinorVectorException
-			e.printStackTrace(); // if it somehow does happen, something went horribly wrong, crash the program
-		}
-	}
-	
-	public void set(int r, int c, E val) {
-		matrix[r][c] = val;
-	}
-	public E get(int r, int c) {
-		return (E) matrix[r][c];
-	}
-	
-	public int numRows() {
-		return matrix.length;
-	}
-	public int numCols() {
-		return matrix[0].length;
-	}
-	
-	/**
-	 * Add {@code x} to the element at row {@code r}, column {@code c}
-	 * @param r
-	 * @param c
-	 * @param x
-	 */
-	public void addTo(int r, int c, Number x) {
-		matrix[r][c] = matrix[r][c].doubleValue() + x.doubleValue();
-	}
-	
-	/**
-	 * Matrix multiplication of this matrix with a {@code vector}
-	 * @param vector
-	 * @return
-	 */
-	public E[] mult(E[] vector) {
-		Number[] ans = new Number[matrix.length];
-		for(int r = 0; r < matrix.length; r++) {
-			ans[r] = (E) VectorUtils.dot(matrix[r], vector);
-		}
-		return (E[]) ans;
-	}
-	/**
-	 * Matrix multiplication of this matrix with a {@code vector}, then add {@code bias} to each element of the result
-	 * @param vector
-	 * @param bias
-	 * @return
-	 */
-	public E[] multAdd(Number[] vector, Number bias) {
-		Number[] ans = new Number[matrix.length];
-		for(int r = 0; r < matrix.length; r++) {
-			ans[r] = VectorUtils.dot(matrix[r], vector).doubleValue() + bias.doubleValue();
-		}
-		return (E[]) ans;
-	}
-	/**
-	 * Matrix multiplication of this matrix with a {@code vector}, then run a function {@code func} on each 
-	 * element of the result
-	 * @param vector
-	 * @param bias
-	 * @return
-	 */
-	public E[] multFunc(E[] vector, ActivationFunction func) {
-		Number[] ans = new Number[matrix.length];
-		for(int r = 0; r < matrix.length; r++) {
-			ans[r] = func.func(VectorUtils.dot(matrix[r], vector));
-		}
-		return (E[]) ans;
-	}
-	/**
-	 * Matrix multiplication of this matrix with a {@code vector}, then add {@code bias} to each element,
-	 * then run a function {@code func} on each element of the result
-	 * @param vector
-	 * @param bias
-	 * @return
-	 */
-	public E[] multFunc(E[] vector, E bias, ActivationFunction func) {
-		Number[] ans = new Number[matrix.length];
-		for(int r = 0; r < matrix.length; r++) {
-			ans[r] = func.func(VectorUtils.dot(matrix[r], vector).doubleValue() + bias.doubleValue());
-			//if(ans[r] > 1) ans[r] = 1 / 0;
-		}
-		return (E[]) ans;
-	}
-
-	public static void test() {
-		System.out.println("Testing Matrix");
-		System.out.println("--------------");
-		Matrix M = new Matrix(3, 4);
-		System.out.println(M);
-		Number[] inputs = {1, 2, 3};
-		M.setCol(0, inputs);
-		System.out.println(M);
-	}
-	
-}
+package math;
+
+import ann.ActivationFunction;
+import math.exceptions.DifferentLengthsException;
+import math.exceptions.MinorVectorException;
+
+/**
+ * Rectangular implementation of JaggedMatrix
+ * Good for math n' stuff
+ * 
+ * Works in either orientation. The multiplication kernels read whichever way is sequential for the current
+ * orientation: dot products along the rows for ROW_COL, scaled sums of the cols for COL_ROW.
+ * 
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class Matrix<E extends Number> extends JaggedMatrix<E> {
+	
+	/**
+	 * For subclasses that keep their elements somewhere other than matrix
+	 */
+	protected Matrix() {
+	}
+	
+	/**
+	 * Creates {@code rows} by {@code cols} Matrix
+	 * Initializes all values to 0
+	 * 
+	 * @param rows
+	 * @param cols
+	 */
+	public Matrix(int rows, int cols) {
+		this(rows, cols, ROW_COL);
+	}
+	
+	/**
+	 * Creates {@code rows} by {@code cols} Matrix stored in the given {@code orientation}
+	 * Initializes all values to 0
+	 * 
+	 * @param rows
+	 * @param cols
+	 * @param orientation
+	 */
+	public Matrix(int rows, int cols, Orientation orientation) {
+		this.orientation = orientation;
+		int majors = orientation == ROW_COL ? rows : cols;
+		int minors = orientation == ROW_COL ? cols : rows;
+		matrix = new Number[majors][minors];
+		for(int major = 0; major < majors; major++) {
+			matrix[major] = new Number[minors];
+			for(int minor = 0; minor < minors; minor++) {
+				matrix[major][minor] = 0; // TODO: don't do this here, provide separate init method
+			}
+		}
+	}
+	
+	@Override
+	public void setRow(int r, E[] row) {
+		try {
+			super.setRow(r, row);
+		} catch (MinorVectorException e) {
+			// Since all MajorVectors are the same length and all MinorVectors are the same length in a Matrix, setRow should never actually throw a MinorVectorException
+			e.printStackTrace(); // if it somehow does happen, something went horribly wrong, crash the program
+		}
+	}
+	@Override
+	public void setCol(int c, E[] col) {
+		try {
+			super.setCol(c, col);
+		} catch (MinorVectorException e) {
+			// Since all MajorVectors are the same length and all MinorVectors are the same length in a Matrix, setCol should never actually throw a MinorVectorException
+			e.printStackTrace(); // if it somehow does happen, something went horribly wrong, crash the program
+		}
+	}
+	
+	public void set(int r, int c, E val) {
+		if(orientation == ROW_COL) matrix[r][c] = val;
+		else matrix[c][r] = val;
+	}
+	public E get(int r, int c) {
+		return (E) (orientation == ROW_COL ? matrix[r][c] : matrix[c][r]);
+	}
+	
+	public int numRows() {
+		return orientation == ROW_COL ? matrix.length : matrix[0].length;
+	}
+	public int numCols() {
+		return orientation == ROW_COL ? matrix[0].length : matrix.length;
+	}
+	
+	/**
+	 * Add {@code x} to the element at row {@code r}, column {@code c}
+	 * @param r
+	 * @param c
+	 * @param x
+	 */
+	public void addTo(int r, int c, Number x) {
+		if(orientation == ROW_COL) matrix[r][c] = matrix[r][c].doubleValue() + x.doubleValue();
+		else matrix[c][r] = matrix[c][r].doubleValue() + x.doubleValue();
+	}
+	
+	/**
+	 * Matrix multiplication of this matrix with a {@code vector}, as primitive doubles
+	 * Reads the matrix sequentially in either orientation
+	 * @param vector
+	 * @return
+	 */
+	protected double[] dots(Number[] vector) {
+		if(vector.length != numCols()) throw new DifferentLengthsException("Vector lengths differ");
+		double[] ans = new double[numRows()];
+		if(orientation == ROW_COL) {
+			for(int r = 0; r < ans.length; r++) {
+				Number[] row = matrix[r];
+				double sum = 0;
+				for(int c = 0; c < row.length; c++) {
+					sum += row[c].doubleValue()*vector[c].doubleValue();
+				}
+				ans[r] = sum;
+			}
+		} else {
+			for(int c = 0; c < matrix.length; c++) {
+				Number[] col = matrix[c];
+				double x = vector[c].doubleValue();
+				for(int r = 0; r < ans.length; r++) {
+					ans[r] += col[r].doubleValue()*x;
+				}
+			}
+		}
+		return ans;
+	}
+	
+	/**
+	 * Matrix multiplication of this matrix with a {@code vector}
+	 * @param vector
+	 * @return
+	 */
+	public E[] mult(E[] vector) {
+		double[] dots = dots(vector);
+		Number[] ans = new Number[dots.length];
+		for(int r = 0; r < dots.length; r++) {
+			ans[r] = dots[r];
+		}
+		return (E[]) ans;
+	}
+	/**
+	 * Matrix multiplication of this matrix with a {@code vector} view, e.g. a column of another matrix, without
+	 * copying the view out first
+	 * @param vector
+	 * @return
+	 */
+	public E[] mult(VectorView vector) {
+		Number[] ans = new Number[numRows()];
+		for(int r = 0; r < ans.length; r++) {
+			ans[r] = VectorUtils.dot(vector, getRowView(r));
+		}
+		return (E[]) ans;
+	}
+	/**
+	 * Multiplication of the transpose of this matrix with a {@code vector}, reading the columns through views
+	 * instead of building the transpose. This is what backward-style computations need.
+	 * @param vector
+	 * @return
+	 */
+	public E[] transposeMult(Number[] vector) {
+		Number[] ans = new Number[numCols()];
+		for(int c = 0; c < ans.length; c++) {
+			ans[c] = VectorUtils.dot(getColView(c), vector);
+		}
+		return (E[]) ans;
+	}
+	/**
+	 * Matrix multiplication of this matrix with a {@code vector}, then add {@code bias} to each element of the result
+	 * @param vector
+	 * @param bias
+	 * @return
+	 */
+	public E[] multAdd(Number[] vector, Number bias) {
+		double[] dots = dots(vector);
+		Number[] ans = new Number[dots.length];
+		for(int r = 0; r < dots.length; r++) {
+			ans[r] = dots[r] + bias.doubleValue();
+		}
+		return (E[]) ans;
+	}
+	/**
+	 * Matrix multiplication of this matrix with a {@code vector}, then run a function {@code func} on each 
+	 * element of the result
+	 * @param vector
+	 * @param bias
+	 * @return
+	 */
+	public E[] multFunc(E[] vector, ActivationFunction func) {
+		double[] dots = dots(vector);
+		Number[] ans = new Number[dots.length];
+		for(int r = 0; r < dots.length; r++) {
+			ans[r] = func.func(dots[r]);
+		}
+		return (E[]) ans;
+	}
+	/**
+	 * Matrix multiplication of this matrix with a {@code vector}, then add {@code bias} to each element,
+	 * then run a function {@code func} on each element of the result
+	 * @param vector
+	 * @param bias
+	 * @return
+	 */
+	public E[] multFunc(E[] vector, E bias, ActivationFunction func) {
+		double[] dots = dots(vector);
+		Number[] ans = new Number[dots.length];
+		for(int r = 0; r < dots.length; r++) {
+			ans[r] = func.func(dots[r] + bias.doubleValue());
+			//if(ans[r] > 1) ans[r] = 1 / 0;
+		}
+		return (E[]) ans;
+	}
+
+	public static void test() {
+		System.out.println("Testing Matrix");
+		System.out.println("--------------");
+		Matrix M = new Matrix(3, 4);
+		System.out.println(M);
+		Number[] inputs = {1, 2, 3};
+		M.setCol(0, inputs);
+		System.out.println(M);
+		System.out.println("Reorienting to COL_ROW, should print the same");
+		M.reorient();
+		System.out.println(M);
+		System.out.println("Multiplying by {1, 1, 1, 1}");
+		printArr(M.mult(new Number[] {1, 1, 1, 1}));
+	}
+	
+	private static void printArr(Number[] arr) {
+		for(int i = 0; i < arr.length; i++) {
+			System.out.print(arr[i] + "  ");
+		}
+		System.out.println();
+	}
+	
+}
@@ -0,0 +1,23 @@
+package math;
+
+/**
+ * Orientation of a JaggedMatrix, which determines its internal structure
+ *
+ * ROW_COL: matrix is stored as Number[rows][cols], the major axis is the rows
+ * COL_ROW: matrix is stored as Number[cols][rows], the major axis is the cols
+ *
+ * An enum rather than a String so that the row/col methods switch on an int instead of hashing strings.
+ *
+ * @author Benito
+ *
+ */
+public enum Orientation {
+	ROW_COL, COL_ROW;
+
+	/**
+	 * @return the other orientation
+	 */
+	public Orientation flip() {
+		return this == ROW_COL ? COL_ROW : ROW_COL;
+	}
+}
@@ -1,22 +1,40 @@
-package math;
-
-import math.exceptions.DifferentLengthsException;
-
-/**
- * Vector math
- * 
- * @author Benito
- *
- */
-public class VectorUtils {
-
-	public static Number dot(Number[] a, Number[] b) {
+package math;
+
+import math.exceptions.DifferentLengthsException;
+
+/**
+ * Vector math
+ * 
+ * @author Benito
+ *
+ */
+public class VectorUtils {
+
+	public static Number dot(Number[] a, Number[] b) {
 		if(a.length != b.length) throw new DifferentLengthsException("Vector lengths differ");
-		Number ans = 0;
-		for(int i = 0; i < a.length; i++) {
-			ans = ans.doubleValue() + a[i].doubleValue()*b[i].doubleValue();
-		}
-		return ans;
-	}
-	
-}
+		Number ans = 0;
+		for(int i = 0; i < a.length; i++) {
+			ans = ans.doubleValue() + a[i].doubleValue()*b[i].doubleValue();
+		}
+		return ans;
+	}
+
+	public static double dot(VectorView a, Number[] b) {
+		if(a.length() != b.length) throw new DifferentLengthsException("Vector lengths differ");
+		double ans = 0;
+		for(int i = 0; i < b.length; i++) {
+			ans += a.getDouble(i)*b[i].doubleValue();
+		}
+		return ans;
+	}
+
+	public static double dot(VectorView a, VectorView b) {
+		if(a.length() != b.length()) throw new DifferentLengthsException("Vector lengths differ");
+		double ans = 0;
+		for(int i = 0; i < a.length(); i++) {
+			ans += a.getDouble(i)*b.getDouble(i);
+		}
+		return ans;
+	}
+	
+}
@@ -0,0 +1,125 @@
+package math;
+
+/**
+ * VectorView
+ *
+ * Lightweight window onto one vector of a JaggedMatrix, without copying it.
+ *
+ * A view is described by its base (the matrix's Number[][]), the fixed index it runs along, an offset, a stride
+ * and a length. Element {@code i} of the view lives at position {@code offset + i * stride} along the vector.
+ *
+ * Major views run along a major vector: element i is {@code base[fixed][offset + i * stride]}
+ * Minor views run across the major vectors: element i is {@code base[offset + i * stride][fixed]}
+ *
+ * Writes through a view change the underlying matrix. Reading a column of a ROW_COL matrix (or a row of a
+ * COL_ROW matrix) this way costs nothing up front, unlike getMinorVector which allocates and copies.
+ *
+ * @author Benito
+ *
+ * @param <E>
+ */
+public class VectorView<E extends Number> {
+	private final Number[][] base;
+	private final int fixed;
+	private final boolean minor;
+	private final int offset, stride, length;
+
+	/**
+	 * @param base matrix the view looks into
+	 * @param fixed major index for a major view, minor index for a minor view
+	 * @param minor true if the view runs across major vectors
+	 * @param offset position of element 0 along the vector
+	 * @param stride distance between consecutive elements
+	 * @param length number of elements in the view
+	 */
+	public VectorView(Number[][] base, int fixed, boolean minor, int offset, int stride, int length) {
+		this.base = base;
+		this.fixed = fixed;
+		this.minor = minor;
+		this.offset = offset;
+		this.stride = stride;
+		this.length = length;
+	}
+
+	/**
+	 * View of a whole major vector
+	 *
+	 * @param base
+	 * @param major
+	 * @return
+	 */
+	public static <E extends Number> VectorView<E> major(Number[][] base, int major) {
+		return new VectorView<>(base, major, false, 0, 1, base[major].length);
+	}
+
+	/**
+	 * View of minor vector {@code minor}. Like getMinorVector, it stops at the first major vector too short to
+	 * contain it.
+	 *
+	 * @param base
+	 * @param minor
+	 * @return
+	 */
+	public static <E extends Number> VectorView<E> minor(Number[][] base, int minor) {
+		int len = 0;
+		while (len < base.length && minor < base[len].length)
+			len++;
+		return new VectorView<>(base, minor, true, 0, 1, len);
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public E get(int i) {
+		int pos = offset + i * stride;
+		return (E) (minor ? base[pos][fixed] : base[fixed][pos]);
+	}
+
+	public double getDouble(int i) {
+		int pos = offset + i * stride;
+		return (minor ? base[pos][fixed] : base[fixed][pos]).doubleValue();
+	}
+
+	public void set(int i, E val) {
+		int pos = offset + i * stride;
+		if (minor)
+			base[pos][fixed] = val;
+		else
+			base[fixed][pos] = val;
+	}
+
+	/**
+	 * View of every {@code step}-th element of this view, starting at element {@code from}
+	 *
+	 * @param from
+	 * @param step
+	 * @param len
+	 * @return
+	 */
+	public VectorView<E> slice(int from, int step, int len) {
+		return new VectorView<>(base, fixed, minor, offset + from * stride, stride * step, len);
+	}
+
+	/**
+	 * Copies the view out into a new array. Only use this when a real array is required.
+	 *
+	 * @return
+	 */
+	public E[] toArray() {
+		Number[] ret = new Number[length];
+		for (int i = 0; i < length; i++) {
+			ret[i] = get(i);
+		}
+		return (E[]) ret;
+	}
+
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			ret.append(get(i));
+			ret.append("  ");
+		}
+		return ret.toString();
+	}
+}
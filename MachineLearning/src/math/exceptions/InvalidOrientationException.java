@@ -1,11 +1,11 @@
-package math.exceptions;
-
-/**
- * Thrown if a JaggedMatrix has an orientation which is not defined among the possible orientations
- * 
- * @author Benito
- *
- */
-public class InvalidOrientationException extends RuntimeException {
-
-}
+package math.exceptions;
+
+/**
+ * Thrown if a JaggedMatrix has an orientation which is not defined among the possible orientations
+ * 
+ * @author Benito
+ *
+ */
+public class InvalidOrientationException extends RuntimeException {
+
+}